@@ -1,7 +1,9 @@
 package io.github.xtherk.bytehook;
 
 
+import io.github.xtherk.bytehook.metrics.AgentMetrics;
 import io.github.xtherk.bytehook.transformer.HookTransformer;
+import io.github.xtherk.bytehook.util.ModuleWatcher;
 import io.github.xtherk.bytehook.util.Reloader;
 
 import java.lang.instrument.Instrumentation;
@@ -19,7 +21,7 @@ public class Agent {
     public static void agentmain(String args, Instrumentation inst) {
         Modules.initialize();
         inst.addTransformer(new HookTransformer(), true);
-        new Thread(new Reloader(inst)).start();
+        startReloader(inst);
     }
 
     public static void premain(String args, Instrumentation inst) {
@@ -28,6 +30,27 @@ public class Agent {
             Modules.initialize();
         }
         inst.addTransformer(new HookTransformer(), true);
-        new Thread(new Reloader(inst)).start();
+        startReloader(inst);
+    }
+
+    /**
+     * The reloader and the watcher wait for the modules to be initialized, they must not keep the JVM alive.
+     */
+    private static void startReloader(Instrumentation inst) {
+        if (AgentMetrics.isJmxEnabled()) {
+            // Not in premain, starting the platform MBean server takes a while
+            startDaemon(AgentMetrics::register, "bytehook-metrics");
+        }
+        Reloader reloader = new Reloader(inst);
+        startDaemon(reloader, "bytehook-reloader");
+        if (ModuleWatcher.isEnabled()) {
+            startDaemon(new ModuleWatcher(inst, reloader), "bytehook-module-watcher");
+        }
+    }
+
+    private static void startDaemon(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
     }
 }
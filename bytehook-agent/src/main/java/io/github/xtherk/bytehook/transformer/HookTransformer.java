@@ -1,25 +1,93 @@
 package io.github.xtherk.bytehook.transformer;
 
 
-import io.github.xtherk.bytehook.Endpoint;
+import io.github.xtherk.bytehook.ClassEndpoints;
+import io.github.xtherk.bytehook.EndpointRegistry;
 import io.github.xtherk.bytehook.Modules;
+import io.github.xtherk.bytehook.metrics.AgentMetrics;
 import io.github.xtherk.bytehook.util.TransformUtil;
+import io.github.xtherk.bytehook.weaver.ClassHierarchy;
+import io.github.xtherk.bytehook.weaver.WeaveOptions;
+import io.github.xtherk.bytehook.weaver.WovenClassCache;
+import org.objectweb.asm.ClassReader;
 
 import java.lang.instrument.ClassFileTransformer;
 import java.security.ProtectionDomain;
-import java.util.List;
 
 /**
  * @author xtherk
  */
 public class HookTransformer implements ClassFileTransformer {
 
+    private final WeaveOptions options = WeaveOptions.fromSystemProperties();
+    private final WovenClassCache cache = WovenClassCache.fromSystemProperties(options);
+    private final AgentMetrics metrics = AgentMetrics.get();
+
     @Override
     public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
                             ProtectionDomain protectionDomain, byte[] classfileBuffer) {
-        List<Endpoint> endpoints = Modules.getEndpoints(className);
+        // Almost every class ends here: unless call sites or subtypes are hooked,
+        // keep this path free of allocations and hashing
+        metrics.classInspected();
+        // A single snapshot, the filter and the endpoints agree even while modules are reloaded
+        EndpointRegistry registry = Modules.registry();
+        byte[] redirected = registry.callSites().isEmpty() || null == className ? null
+                : redirectCallSites(loader, className, classfileBuffer, registry);
+        byte[] bytes = null == redirected ? classfileBuffer : redirected;
+        String[] supertypes = registry.hasSupertypes() ?
+                supertypesOf(loader, className, classBeingRedefined, bytes, registry) : ClassHierarchy.NO_SUPERTYPES;
+        if (supertypes.length == 0 && !registry.mayBeHooked(className))
+            return redirected;
+        ClassEndpoints endpoints = registry.get(className, supertypes);
         if (null == endpoints)
-            return null;
-        return TransformUtil.transform(className, classfileBuffer);
+            return redirected;
+        byte[] cached = cache.get(className, endpoints, bytes);
+        if (null != cached) {
+            metrics.cacheHit();
+            return cached;
+        }
+        long start = System.nanoTime();
+        byte[] woven = TransformUtil.transform(loader, className, bytes, endpoints, options);
+        metrics.classWoven(System.nanoTime() - start, bytes.length, woven.length);
+        cache.put(className, endpoints, bytes, woven);
+        return woven;
+    }
+
+    /**
+     * Only the classes whose constant pool references a redirected method are parsed.
+     *
+     * @return class with its calls redirected, {@code null} if it does not call a redirected method
+     */
+    private byte[] redirectCallSites(ClassLoader loader, String className, byte[] classfileBuffer,
+                                     EndpointRegistry registry) {
+        long start = System.nanoTime();
+        byte[] redirected = TransformUtil.redirectCallSites(loader, className, classfileBuffer, registry.callSites(),
+                options);
+        if (null != redirected) {
+            metrics.callSitesRedirected(System.nanoTime() - start);
+        }
+        return redirected;
+    }
+
+    /**
+     * Reads the header of the class, its hooked supertypes are then found by looking up its direct super class
+     * and interfaces, whose supertypes were memoized the same way or are read from their class files.
+     *
+     * @return hooked supertypes of the class
+     */
+    private static String[] supertypesOf(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                                         byte[] classfileBuffer, EndpointRegistry registry) {
+        if (null == className)
+            return ClassHierarchy.NO_SUPERTYPES;
+        if (null != classBeingRedefined)
+            return ClassHierarchy.supertypesAmong(classBeingRedefined, registry.supertypes());
+        ClassReader reader;
+        try {
+            reader = new ClassReader(classfileBuffer);
+        } catch (RuntimeException e) {
+            // Class file version unknown to ASM, it can't be woven anyway
+            return ClassHierarchy.NO_SUPERTYPES;
+        }
+        return ClassHierarchy.of(loader).supertypesAmong(reader, registry.supertypes());
     }
 }
@@ -0,0 +1,12 @@
+package io.github.xtherk.bytehook.benchmark;
+
+/**
+ * Calling contract shared by the plain and the woven {@link Calculator},
+ * so that benchmarks can invoke both without reflection.
+ *
+ * @author xtherk
+ */
+public interface Adder {
+
+    int add(int a, int b);
+}
@@ -0,0 +1,133 @@
+package io.github.xtherk.bytehook.benchmark;
+
+import io.github.xtherk.bytehook.Behavior;
+import io.github.xtherk.bytehook.Endpoint;
+import io.github.xtherk.bytehook.util.IOUtil;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Class files and endpoints shared by the benchmarks.
+ *
+ * @author xtherk
+ */
+public final class BenchmarkClasses {
+
+    /**
+     * Name of the hooked method of every synthetic class.
+     */
+    public static final String HOOKED_METHOD = "method0";
+    public static final String HOOKED_METHOD_DESC = "(I)I";
+    public static final String FAKE_CLASS = "io/github/xtherk/bytehook/benchmark/SyntheticHooks";
+
+    private BenchmarkClasses() {
+    }
+
+    /**
+     * Generates a class with {@code methodCount} methods that each contain a loop and a branch,
+     * so that their frames are not trivial to recompute.
+     *
+     * @param internalName internal name of the generated class
+     * @param methodCount  number of methods
+     * @return class bytecode
+     */
+    public static byte[] syntheticClass(String internalName, int methodCount) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, internalName, null, "java/lang/Object", null);
+        MethodVisitor init = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+        for (int i = 0; i < methodCount; i++) {
+            MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "method" + i, HOOKED_METHOD_DESC, null, null);
+            mv.visitCode();
+            Label loop = new Label();
+            Label exit = new Label();
+            Label odd = new Label();
+            mv.visitInsn(Opcodes.ICONST_0);
+            mv.visitVarInsn(Opcodes.ISTORE, 2);
+            mv.visitLabel(loop);
+            mv.visitVarInsn(Opcodes.ILOAD, 1);
+            mv.visitJumpInsn(Opcodes.IFLE, exit);
+            mv.visitVarInsn(Opcodes.ILOAD, 1);
+            mv.visitInsn(Opcodes.ICONST_1);
+            mv.visitInsn(Opcodes.IAND);
+            mv.visitJumpInsn(Opcodes.IFNE, odd);
+            mv.visitLdcInsn("even-" + i);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/String", "length", "()I", false);
+            mv.visitVarInsn(Opcodes.ILOAD, 2);
+            mv.visitInsn(Opcodes.IADD);
+            mv.visitVarInsn(Opcodes.ISTORE, 2);
+            mv.visitLabel(odd);
+            mv.visitIincInsn(1, -1);
+            mv.visitJumpInsn(Opcodes.GOTO, loop);
+            mv.visitLabel(exit);
+            mv.visitVarInsn(Opcodes.ILOAD, 2);
+            mv.visitInsn(Opcodes.IRETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * @param internalName synthetic class to hook
+     * @return endpoint replacing {@link #HOOKED_METHOD} of the synthetic class
+     */
+    public static Endpoint syntheticEndpoint(String internalName) {
+        return new Endpoint(internalName, HOOKED_METHOD, HOOKED_METHOD_DESC,
+                FAKE_CLASS, HOOKED_METHOD, "(L" + internalName + ";I)I",
+                true, false, false, Behavior.SET);
+    }
+
+    /**
+     * @param behavior behavior of the endpoint
+     * @return endpoint hooking {@link Calculator#add(int, int)} with the method of {@link CalculatorHooks}
+     * matching the behavior
+     */
+    public static Endpoint calculatorEndpoint(Behavior behavior) {
+        String target = Type.getInternalName(Calculator.class);
+        String fakeClass = Type.getInternalName(CalculatorHooks.class);
+        switch (behavior) {
+            case INSERT_BEFORE:
+                return new Endpoint(target, "add", "(II)", fakeClass, "enter", "(L" + target + ";II)V",
+                        true, false, false, behavior);
+            case INSERT_AFTER:
+                return new Endpoint(target, "add", "(II)", fakeClass, "exit", "(L" + target + ";III)I",
+                        true, false, false, behavior, true, false);
+            case TIMED:
+                return new Endpoint(target, "add", "(II)", fakeClass, "timed", "(II)V",
+                        false, false, false, behavior);
+            default:
+                return new Endpoint(target, "add", "(II)I", fakeClass, "add", "(L" + target + ";II)I",
+                        true, false, false, behavior);
+        }
+    }
+
+    /**
+     * @param klass a class of this module
+     * @return bytecode of the class as found on the classpath
+     */
+    public static byte[] bytecodeOf(Class<?> klass) {
+        String resource = Type.getInternalName(klass) + ".class";
+        try (InputStream in = klass.getClassLoader().getResourceAsStream(resource)) {
+            if (null == in) {
+                throw new IllegalStateException("Missing class resource " + resource);
+            }
+            return IOUtil.toByteArray(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package io.github.xtherk.bytehook.benchmark;
+
+/**
+ * Target class of {@link HookedCallBenchmark}.
+ *
+ * @author xtherk
+ */
+public class Calculator implements Adder {
+
+    @Override
+    public int add(int a, int b) {
+        return a + b;
+    }
+}
@@ -0,0 +1,35 @@
+package io.github.xtherk.bytehook.benchmark;
+
+import io.github.xtherk.bytehook.Behavior;
+import io.github.xtherk.bytehook.HookClass;
+import io.github.xtherk.bytehook.HookMethod;
+import io.github.xtherk.bytehook.ReturnValue;
+import io.github.xtherk.bytehook.TargetClass;
+
+/**
+ * Fake class of {@link Calculator}, doing the same work as the target method
+ * so that only the cost added by the hook is measured.
+ *
+ * @author xtherk
+ */
+@HookClass("io.github.xtherk.bytehook.benchmark.Calculator")
+public class CalculatorHooks {
+
+    @HookMethod
+    public static int add(@TargetClass Calculator self, int a, int b) {
+        return a + b;
+    }
+
+    @HookMethod(methodName = "add", behavior = Behavior.INSERT_BEFORE)
+    public static void enter(@TargetClass Calculator self, int a, int b) {
+    }
+
+    @HookMethod(methodName = "add", behavior = Behavior.TIMED)
+    public static void timed(int a, int b) {
+    }
+
+    @HookMethod(methodName = "add", behavior = Behavior.INSERT_AFTER)
+    public static int exit(@TargetClass Calculator self, int a, int b, @ReturnValue int sum) {
+        return sum;
+    }
+}
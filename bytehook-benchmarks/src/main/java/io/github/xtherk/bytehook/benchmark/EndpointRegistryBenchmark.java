@@ -0,0 +1,127 @@
+package io.github.xtherk.bytehook.benchmark;
+
+import io.github.xtherk.bytehook.Behavior;
+import io.github.xtherk.bytehook.ClassEndpoints;
+import io.github.xtherk.bytehook.Endpoint;
+import io.github.xtherk.bytehook.EndpointRegistry;
+import io.github.xtherk.bytehook.EndpointTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Build time of the endpoint registry for mechanically generated hooks, such as tracing every public method
+ * of a vendor SDK: {@link #groupedEndpoints()} is the map of {@link ClassEndpoints} built for every class,
+ * {@link #table()} the {@link EndpointTable} and {@link #registry()} the snapshot published by the modules.
+ * <p>
+ * {@link #main(String[])} prints the retained heap of each storage.
+ *
+ * @author xtherk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndpointRegistryBenchmark {
+
+    private static final int METHODS_PER_CLASS = 25;
+    private static final String[] DESCRIPTORS = {
+            "()V", "()Ljava/lang/String;", "(Ljava/lang/String;)Ljava/lang/Object;", "(J)Ljava/util/Optional;",
+            "(Ljava/lang/String;I)Ljava/util/List;", "(Ljava/util/Map;)V", "()Z", "(Ljava/lang/Object;)I",
+    };
+
+    @Param({"1000", "10000", "100000"})
+    public int endpointCount;
+
+    /**
+     * Storage being measured by {@link #retainedBytes(int, Function)}, reachable until the heap is measured
+     */
+    private static Object retained;
+
+    private List<Endpoint> endpoints;
+
+    @Setup
+    public void setup() {
+        endpoints = generate(endpointCount);
+    }
+
+    @Benchmark
+    public Map<String, ClassEndpoints> groupedEndpoints() {
+        return group(endpoints);
+    }
+
+    @Benchmark
+    public EndpointTable table() {
+        return EndpointTable.of(endpoints);
+    }
+
+    @Benchmark
+    public EndpointRegistry registry() {
+        return EndpointRegistry.EMPTY.with(endpoints.stream().collect(Collectors.groupingBy(Endpoint::getTargetClass)));
+    }
+
+    /**
+     * Endpoints as read from the fake classes, every string is a distinct instance as if parsed from its own class file.
+     *
+     * @param count number of endpoints
+     * @return endpoints of {@code count / 25} target classes
+     */
+    static List<Endpoint> generate(int count) {
+        List<Endpoint> endpoints = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int targetClass = i / METHODS_PER_CLASS;
+            String method = "operation" + i % METHODS_PER_CLASS;
+            String descriptor = DESCRIPTORS[i % DESCRIPTORS.length];
+            String target = "com/vendor/sdk/service" + targetClass % 16 + "/Client" + targetClass;
+            String fakeDescriptor = "(L" + target + ";" + descriptor.substring(1);
+            endpoints.add(new Endpoint(new String(target), new String(method), new String(descriptor),
+                    "com/example/tracing/Client" + targetClass + "Hooks", new String(method), fakeDescriptor,
+                    true, false, false, Behavior.SET));
+        }
+        return endpoints;
+    }
+
+    private static Map<String, ClassEndpoints> group(List<Endpoint> endpoints) {
+        Map<String, ClassEndpoints> grouped = new HashMap<>();
+        endpoints.stream().collect(Collectors.groupingBy(Endpoint::getTargetClass))
+                .forEach((targetClass, classEndpoints) ->
+                        grouped.put(targetClass, new ClassEndpoints(targetClass, classEndpoints)));
+        return grouped;
+    }
+
+    /**
+     * Prints the heap retained by each storage, measured after full collections.
+     */
+    public static void main(String[] args) {
+        System.out.printf("%10s %16s %16s %16s%n", "endpoints", "list (KiB)", "grouped (KiB)", "table (KiB)");
+        for (int count : new int[]{1_000, 10_000, 100_000}) {
+            long list = retainedBytes(count, endpoints -> endpoints);
+            long grouped = retainedBytes(count, EndpointRegistryBenchmark::group);
+            long table = retainedBytes(count, EndpointTable::of);
+            System.out.printf("%10d %16d %16d %16d%n", count, list / 1024, grouped / 1024, table / 1024);
+        }
+    }
+
+    private static long retainedBytes(int count, Function<List<Endpoint>, Object> storage) {
+        long before = usedHeap();
+        retained = storage.apply(generate(count));
+        long after = usedHeap();
+        retained = null;
+        return after - before;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
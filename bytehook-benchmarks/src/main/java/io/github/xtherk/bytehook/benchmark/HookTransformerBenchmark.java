@@ -0,0 +1,118 @@
+package io.github.xtherk.bytehook.benchmark;
+
+import io.github.xtherk.bytehook.Endpoint;
+import io.github.xtherk.bytehook.HookClass;
+import io.github.xtherk.bytehook.Modules;
+import io.github.xtherk.bytehook.transformer.HookTransformer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link HookTransformer#transform} as seen by the JVM on every class load.
+ * <p>
+ * {@link #unhooked()} is the common case: a class without any endpoint,
+ * {@link #hooked()} weaves a small hooked class.
+ * <p>
+ * Registered class patterns are checked along with the target class names, for every class.
+ * When subtypes of a class are hooked, the header of every class is read to record it in the hierarchy.
+ *
+ * @author xtherk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HookTransformerBenchmark {
+
+    private static final String HOOKED_CLASS = "io/github/xtherk/bytehook/benchmark/SyntheticHooked";
+
+    /**
+     * Names of classes that are loaded by a typical application and are never hooked.
+     */
+    private static final String[] UNHOOKED_CLASS_NAMES = {
+            "java/lang/invoke/LambdaForm$MH",
+            "java/util/concurrent/ConcurrentHashMap$TreeBin",
+            "sun/nio/cs/UTF_8$Decoder",
+            "com/fasterxml/jackson/databind/ObjectMapper",
+            "com/fasterxml/jackson/core/JsonFactory",
+            "org/springframework/context/support/AbstractApplicationContext",
+            "org/springframework/beans/factory/support/DefaultListableBeanFactory",
+            "org/springframework/core/annotation/AnnotationUtils",
+            "org/apache/catalina/core/StandardContext",
+            "org/hibernate/internal/SessionImpl",
+            "io/netty/channel/nio/NioEventLoop",
+            "io/netty/buffer/PooledByteBufAllocator",
+            "ch/qos/logback/classic/Logger",
+            "org/slf4j/LoggerFactory",
+            "com/example/app/OrderService",
+            "com/example/app/OrderService$$EnhancerBySpringCGLIB$$5f1c2d3e",
+    };
+
+    /**
+     * Number of registered endpoints, each one for a distinct target class.
+     */
+    @Param({"1", "1000"})
+    public int endpointCount;
+
+    /**
+     * Number of registered wildcard class patterns, none matching the unhooked classes.
+     */
+    @Param({"0", "1000"})
+    public int patternCount;
+
+    /**
+     * Whether the subtypes of a supertype are hooked, none of the unhooked classes being one.
+     */
+    @Param({"false", "true"})
+    public boolean subtypes;
+
+    private final HookTransformer transformer = new HookTransformer();
+    private ClassLoader loader;
+    private byte[] unhookedBytecode;
+    private byte[] hookedBytecode;
+    /**
+     * The JVM hands a freshly created name to the transformer, whose hash code is not cached yet.
+     */
+    private char[][] unhookedClasses;
+    private int index;
+
+    @Setup
+    public void setup() {
+        loader = getClass().getClassLoader();
+        unhookedBytecode = BenchmarkClasses.bytecodeOf(Calculator.class);
+        hookedBytecode = BenchmarkClasses.syntheticClass(HOOKED_CLASS, 10);
+        unhookedClasses = new char[UNHOOKED_CLASS_NAMES.length][];
+        for (int i = 0; i < UNHOOKED_CLASS_NAMES.length; i++) {
+            unhookedClasses[i] = UNHOOKED_CLASS_NAMES[i].toCharArray();
+        }
+        List<Endpoint> endpoints = new ArrayList<>();
+        endpoints.add(BenchmarkClasses.syntheticEndpoint(HOOKED_CLASS));
+        for (int i = 1; i < endpointCount; i++) {
+            endpoints.add(BenchmarkClasses.syntheticEndpoint("com/example/hooked/Target" + i));
+        }
+        for (int i = 0; i < patternCount; i++) {
+            String pattern = i % 2 == 0 ? "com/vendor/lib" + i + "/client/*Service" : "org/vendor" + i + "/**Client";
+            endpoints.add(BenchmarkClasses.syntheticEndpoint(pattern));
+        }
+        if (subtypes) {
+            endpoints.add(BenchmarkClasses.syntheticEndpoint("javax/sql/DataSource" + HookClass.SUBTYPES));
+        }
+        Modules.register(endpoints);
+    }
+
+    @Benchmark
+    public byte[] unhooked() {
+        String className = new String(unhookedClasses[index++ & (unhookedClasses.length - 1)]);
+        return transformer.transform(loader, className, null, null, unhookedBytecode);
+    }
+
+    @Benchmark
+    public byte[] hooked() {
+        return transformer.transform(loader, HOOKED_CLASS, null, null, hookedBytecode);
+    }
+}
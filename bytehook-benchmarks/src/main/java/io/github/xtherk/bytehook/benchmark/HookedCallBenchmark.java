@@ -0,0 +1,57 @@
+package io.github.xtherk.bytehook.benchmark;
+
+import io.github.xtherk.bytehook.Behavior;
+import io.github.xtherk.bytehook.Modules;
+import io.github.xtherk.bytehook.util.TransformUtil;
+import org.objectweb.asm.Type;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call cost of a hooked method compared to a direct call of the same method.
+ *
+ * @author xtherk
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HookedCallBenchmark {
+
+    @Param({"SET", "INSERT_BEFORE", "INSERT_AFTER", "TIMED"})
+    public Behavior behavior;
+
+    private Adder direct;
+    private Adder hooked;
+    private int a = 17;
+    private int b = 25;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        Modules.register(Collections.singletonList(BenchmarkClasses.calculatorEndpoint(behavior)));
+        byte[] woven = TransformUtil.transform(Type.getInternalName(Calculator.class),
+                BenchmarkClasses.bytecodeOf(Calculator.class));
+        Map<String, byte[]> classes = new HashMap<>();
+        classes.put(Calculator.class.getName(), woven);
+        classes.put(CalculatorHooks.class.getName(), BenchmarkClasses.bytecodeOf(CalculatorHooks.class));
+        ClassLoader loader = new WovenClassLoader(getClass().getClassLoader(), classes);
+        direct = new Calculator();
+        hooked = (Adder) loader.loadClass(Calculator.class.getName()).getDeclaredConstructor().newInstance();
+    }
+
+    @Benchmark
+    public int direct() {
+        return direct.add(a, b);
+    }
+
+    @Benchmark
+    public int hooked() {
+        return hooked.add(a, b);
+    }
+}
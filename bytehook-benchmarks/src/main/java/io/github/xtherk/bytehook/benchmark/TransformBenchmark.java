@@ -0,0 +1,44 @@
+package io.github.xtherk.bytehook.benchmark;
+
+import io.github.xtherk.bytehook.Modules;
+import io.github.xtherk.bytehook.util.TransformUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of weaving a hooked class with {@link TransformUtil#transform(String, byte[])},
+ * for a small class and for a large class where a single method is hooked.
+ *
+ * @author xtherk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformBenchmark {
+
+    /**
+     * Number of methods of the hooked class.
+     */
+    @Param({"10", "2000"})
+    public int methodCount;
+
+    private String className;
+    private byte[] bytecode;
+
+    @Setup
+    public void setup() {
+        className = "io/github/xtherk/bytehook/benchmark/Synthetic" + methodCount;
+        bytecode = BenchmarkClasses.syntheticClass(className, methodCount);
+        Modules.register(Collections.singletonList(BenchmarkClasses.syntheticEndpoint(className)));
+    }
+
+    @Benchmark
+    public byte[] transform() {
+        return TransformUtil.transform(className, bytecode);
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.xtherk.bytehook.benchmark;
+
+import java.util.Map;
+
+/**
+ * Defines the given classes itself and delegates everything else to the parent.
+ * The fake class has to be defined next to the woven target class,
+ * otherwise both loaders would see different target types in the fake method signature.
+ *
+ * @author xtherk
+ */
+public class WovenClassLoader extends ClassLoader {
+
+    /**
+     * key: binary class name, value: class bytecode
+     */
+    private final Map<String, byte[]> classes;
+
+    public WovenClassLoader(ClassLoader parent, Map<String, byte[]> classes) {
+        super(parent);
+        this.classes = classes;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        byte[] bytecode = classes.get(name);
+        if (null == bytecode) {
+            return super.loadClass(name, resolve);
+        }
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> klass = findLoadedClass(name);
+            if (null == klass) {
+                klass = defineClass(name, bytecode, 0, bytecode.length);
+            }
+            if (resolve) {
+                resolveClass(klass);
+            }
+            return klass;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package io.github.xtherk.bytehook.cli;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Command line entry of the {@link OfflineWeaver}.
+ *
+ * <pre>
+ * java -jar bytehook-cli.jar --input app.jar --modules modules --output app-hooked.jar [--threads 8]
+ * </pre>
+ *
+ * @author xtherk
+ */
+public class Main {
+
+    private static final String USAGE = "Usage: java -jar bytehook-cli.jar --input <jar|directory> "
+            + "--modules <directory> --output <jar> [--threads <count>]";
+
+    public static void main(String[] args) throws IOException {
+        Path input = null;
+        Path modules = null;
+        Path output = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--input":
+                    input = Paths.get(require(value));
+                    break;
+                case "--modules":
+                    modules = Paths.get(require(value));
+                    break;
+                case "--output":
+                    output = Paths.get(require(value));
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(require(value));
+                    break;
+                default:
+                    exit("Unknown option " + args[i]);
+            }
+            i++;
+        }
+        if (null == input || null == modules || null == output) {
+            exit(USAGE);
+        }
+        if (!Files.exists(input)) {
+            exit("The input " + input + " does not exist");
+        }
+        new OfflineWeaver(input, listModules(modules), output, threads).weave();
+    }
+
+    private static List<Path> listModules(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            exit("The module directory " + directory + " does not exist");
+        }
+        List<Path> modules = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
+            paths.forEach(modules::add);
+        }
+        Collections.sort(modules);
+        return modules;
+    }
+
+    private static String require(String value) {
+        if (null == value) {
+            exit(USAGE);
+        }
+        return value;
+    }
+
+    private static void exit(String message) {
+        System.err.println(message);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,226 @@
+package io.github.xtherk.bytehook.cli;
+
+import io.github.xtherk.bytehook.Behavior;
+import io.github.xtherk.bytehook.ClassEndpoints;
+import io.github.xtherk.bytehook.Endpoint;
+import io.github.xtherk.bytehook.EndpointRegistry;
+import io.github.xtherk.bytehook.Modules;
+import io.github.xtherk.bytehook.processor.EndpointIndex;
+import io.github.xtherk.bytehook.util.IOUtil;
+import io.github.xtherk.bytehook.util.TransformUtil;
+import io.github.xtherk.bytehook.weaver.ClassHierarchy;
+import io.github.xtherk.bytehook.weaver.WeaveOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Ahead-of-time weaver.
+ * <p>
+ * Discovers the endpoints of the modules exactly like the agent does, weaves the hooked classes
+ * of an application jar or classes directory and writes a patched jar that also contains the module classes,
+ * so that the application runs hooked without {@code -javaagent}.
+ * <p>
+ * The patched jar does not contain bytehook itself, so {@link Behavior#TIMED} endpoints, which record
+ * into the histograms of bytehook, are not woven.
+ *
+ * @author xtherk
+ */
+public class OfflineWeaver {
+
+    private static final Logger logger = LoggerFactory.getLogger(OfflineWeaver.class);
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+    private final Path input;
+    private final List<Path> modules;
+    private final Path output;
+    private final int parallelism;
+
+    /**
+     * @param input       application jar or classes directory
+     * @param modules     module jars or directories
+     * @param output      patched jar to write
+     * @param parallelism number of weaving threads
+     */
+    public OfflineWeaver(Path input, List<Path> modules, Path output, int parallelism) {
+        this.input = input;
+        this.modules = modules;
+        this.output = output;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return number of woven classes
+     * @throws IOException if an I/O error occurs
+     */
+    public int weave() throws IOException {
+        long start = System.nanoTime();
+        for (Path module : modules) {
+            Modules.addModuleResource(module);
+        }
+        Modules.loadModules();
+
+        Map<String, byte[]> entries = new LinkedHashMap<>(read(input));
+        for (Path module : modules) {
+            read(module).forEach((name, content) -> {
+                // The hooks are already woven, the index would only make the output look like a module
+                if (!MANIFEST.equals(name) && !EndpointIndex.LOCATION.equals(name) && !isSignature(name)) {
+                    entries.putIfAbsent(name, content);
+                }
+            });
+        }
+
+        AtomicInteger woven = new AtomicInteger();
+        try (URLClassLoader hierarchyLoader = newHierarchyLoader()) {
+            List<Map.Entry<String, byte[]>> weaved = weaveAll(entries, hierarchyLoader, woven);
+            if (woven.get() > 0) {
+                // Woven classes would break the signatures of a signed jar
+                weaved.removeIf(entry -> isSignature(entry.getKey()));
+            }
+            write(weaved);
+        }
+        logger.info("Woven {} of {} entries into {} in {} ms", woven.get(), entries.size(), output,
+                (System.nanoTime() - start) / 1_000_000);
+        return woven.get();
+    }
+
+    private List<Map.Entry<String, byte[]>> weaveAll(Map<String, byte[]> entries, ClassLoader hierarchyLoader,
+                                                     AtomicInteger woven) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            // The parallel stream runs in the pool it is submitted to, and keeps the entry order
+            return pool.submit(() -> entries.entrySet().parallelStream()
+                    .map(entry -> weave(entry, hierarchyLoader, woven))
+                    .collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while weaving", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to weave " + input, e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Map.Entry<String, byte[]> weave(Map.Entry<String, byte[]> entry, ClassLoader hierarchyLoader,
+                                                   AtomicInteger woven) {
+        String name = entry.getKey();
+        if (!name.endsWith(CLASS_SUFFIX) || null == entry.getValue())
+            return entry;
+        String className = name.substring(0, name.length() - CLASS_SUFFIX.length());
+        EndpointRegistry registry = Modules.registry();
+        // The woven application does not ship the dispatcher, calls are always direct
+        byte[] redirected = TransformUtil.redirectCallSites(hierarchyLoader, className, entry.getValue(),
+                registry.callSites(), WeaveOptions.DEFAULT);
+        String[] supertypes = registry.hasSupertypes() ? ClassHierarchy.of(hierarchyLoader)
+                .supertypesAmong(className, registry.supertypes()) : ClassHierarchy.NO_SUPERTYPES;
+        ClassEndpoints endpoints = withoutTimers(registry.get(className, supertypes));
+        if (null == endpoints && null == redirected)
+            return entry;
+        byte[] bytes = null == redirected ? entry.getValue() : redirected;
+        if (null != endpoints) {
+            bytes = TransformUtil.transform(hierarchyLoader, className, bytes, endpoints, WeaveOptions.DEFAULT);
+        }
+        woven.incrementAndGet();
+        return new AbstractMap.SimpleImmutableEntry<>(name, bytes);
+    }
+
+    private static ClassEndpoints withoutTimers(ClassEndpoints endpoints) {
+        if (null == endpoints)
+            return null;
+        ClassEndpoints withoutTimers = endpoints.without(Behavior.TIMED);
+        if (withoutTimers == endpoints)
+            return endpoints;
+        for (Endpoint endpoint : endpoints.getEndpoints()) {
+            if (endpoint.getBehavior() == Behavior.TIMED) {
+                logger.warn("{}.{}{} is not timed, TIMED endpoints need the bytehook runtime, use the agent instead",
+                        endpoints.getTargetClass(), endpoint.getTargetMethod(), endpoint.getTargetMethodDesc());
+            }
+        }
+        return withoutTimers.getEndpoints().isEmpty() ? null : withoutTimers;
+    }
+
+    /**
+     * Frames of the woven methods are computed against the application and the modules,
+     * their class files are only read, never loaded.
+     */
+    private URLClassLoader newHierarchyLoader() throws IOException {
+        List<URL> urls = new ArrayList<>();
+        urls.add(input.toUri().toURL());
+        for (Path module : modules) {
+            urls.add(module.toUri().toURL());
+        }
+        return new URLClassLoader(urls.toArray(new URL[0]), ClassLoader.getSystemClassLoader().getParent());
+    }
+
+    /**
+     * @return key: entry name, value: entry content or {@code null} for directories
+     */
+    private static Map<String, byte[]> read(Path source) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        if (Files.isDirectory(source)) {
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(source)) {
+                files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                String name = source.relativize(file).toString().replace(source.getFileSystem().getSeparator(), "/");
+                entries.put(name, Files.readAllBytes(file));
+            }
+            return entries;
+        }
+        try (ZipFile zip = new ZipFile(source.toFile())) {
+            Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry entry = zipEntries.nextElement();
+                if (entry.isDirectory()) {
+                    entries.put(entry.getName(), null);
+                    continue;
+                }
+                try (InputStream in = zip.getInputStream(entry)) {
+                    entries.put(entry.getName(), IOUtil.toByteArray(in));
+                }
+            }
+        }
+        return entries;
+    }
+
+    private void write(List<Map.Entry<String, byte[]>> entries) throws IOException {
+        Path parent = output.toAbsolutePath().getParent();
+        if (null != parent) {
+            Files.createDirectories(parent);
+        }
+        try (OutputStream out = Files.newOutputStream(output);
+             JarOutputStream jar = new JarOutputStream(out)) {
+            for (Map.Entry<String, byte[]> entry : entries) {
+                jar.putNextEntry(new ZipEntry(entry.getKey()));
+                if (null != entry.getValue()) {
+                    jar.write(entry.getValue());
+                }
+                jar.closeEntry();
+            }
+        }
+    }
+
+    private static boolean isSignature(String name) {
+        if (!name.startsWith("META-INF/") || name.indexOf('/', "META-INF/".length()) >= 0)
+            return false;
+        return name.endsWith(".SF") || name.endsWith(".RSA") || name.endsWith(".DSA") || name.endsWith(".EC");
+    }
+}
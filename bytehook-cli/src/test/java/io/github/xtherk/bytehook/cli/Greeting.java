@@ -0,0 +1,17 @@
+package io.github.xtherk.bytehook.cli;
+
+/**
+ * Application class of {@link OfflineWeaverTests}.
+ *
+ * @author xtherk
+ */
+public class Greeting {
+
+    public String greet(String name) {
+        return "Hello " + name;
+    }
+
+    public String farewell(String name) {
+        return "Bye " + name;
+    }
+}
@@ -0,0 +1,24 @@
+package io.github.xtherk.bytehook.cli;
+
+import io.github.xtherk.bytehook.Behavior;
+import io.github.xtherk.bytehook.HookClass;
+import io.github.xtherk.bytehook.HookMethod;
+import io.github.xtherk.bytehook.TargetClass;
+
+/**
+ * Fake class of {@link Greeting}, merged into the patched jar by {@link OfflineWeaverTests}.
+ *
+ * @author xtherk
+ */
+@HookClass("io.github.xtherk.bytehook.cli.Greeting")
+public class GreetingHooks {
+
+    @HookMethod
+    public static String greet(@TargetClass Greeting self, String name) {
+        return "Hooked " + name;
+    }
+
+    @HookMethod(desc = HookMethod.ANY_DESCRIPTOR, behavior = Behavior.TIMED)
+    public static void farewell() {
+    }
+}
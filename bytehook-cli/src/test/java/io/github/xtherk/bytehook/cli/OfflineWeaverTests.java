@@ -0,0 +1,113 @@
+package io.github.xtherk.bytehook.cli;
+
+import io.github.xtherk.bytehook.processor.EndpointIndex;
+import io.github.xtherk.bytehook.util.IOUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * @author xtherk
+ */
+public class OfflineWeaverTests {
+
+    private static final String GREETING = Greeting.class.getName().replace('.', '/') + ".class";
+    private static final String GREETING_HOOKS = GreetingHooks.class.getName().replace('.', '/') + ".class";
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testWeave() throws Exception {
+        Map<String, byte[]> app = new LinkedHashMap<>();
+        app.put(MANIFEST, "Manifest-Version: 1.0\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+        app.put("META-INF/APP.SF", new byte[]{1});
+        app.put("META-INF/APP.RSA", new byte[]{2});
+        app.put("io/", null);
+        app.put(GREETING, bytecodeOf(GREETING));
+        app.put("greeting.properties", "greeting=Hello".getBytes(StandardCharsets.UTF_8));
+        Path appJar = jar("app.jar", app);
+
+        byte[] index = bytecodeOf(EndpointIndex.LOCATION);
+        Assertions.assertNotNull(index);
+        Map<String, byte[]> module = new LinkedHashMap<>();
+        module.put(MANIFEST, "Manifest-Version: 1.0\r\nCreated-By: module\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+        module.put("META-INF/MODULE.SF", new byte[]{3});
+        module.put(EndpointIndex.LOCATION, index);
+        module.put(GREETING_HOOKS, bytecodeOf(GREETING_HOOKS));
+        Path moduleJar = jar("module.jar", module);
+
+        Path output = tempDir.resolve("out").resolve("app-woven.jar");
+        int woven = new OfflineWeaver(appJar, Collections.singletonList(moduleJar), output, 2).weave();
+        Assertions.assertEquals(1, woven);
+
+        // Application entries first, in their order, then the module classes. No signature nor index
+        Map<String, byte[]> entries = read(output);
+        Assertions.assertEquals(Arrays.asList(MANIFEST, "io/", GREETING, "greeting.properties", GREETING_HOOKS),
+                new ArrayList<>(entries.keySet()));
+        Assertions.assertArrayEquals(app.get(MANIFEST), entries.get(MANIFEST));
+        Assertions.assertArrayEquals(module.get(GREETING_HOOKS), entries.get(GREETING_HOOKS));
+        Assertions.assertFalse(Arrays.equals(app.get(GREETING), entries.get(GREETING)));
+        // TIMED endpoints are skipped, the patched jar does not contain bytehook
+        String constants = new String(entries.get(GREETING), StandardCharsets.ISO_8859_1);
+        Assertions.assertFalse(constants.contains("io/github/xtherk/bytehook/metrics/"), constants);
+
+        // Runs hooked without the agent, nor bytehook on the classpath
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{output.toUri().toURL()},
+                ClassLoader.getSystemClassLoader().getParent())) {
+            Class<?> klass = loader.loadClass(Greeting.class.getName());
+            Object greeting = klass.getDeclaredConstructor().newInstance();
+            Assertions.assertEquals("Hooked bytehook", klass.getMethod("greet", String.class).invoke(greeting, "bytehook"));
+            Assertions.assertEquals("Bye bytehook", klass.getMethod("farewell", String.class).invoke(greeting, "bytehook"));
+        }
+    }
+
+    private static byte[] bytecodeOf(String resource) throws IOException {
+        try (InputStream in = OfflineWeaverTests.class.getClassLoader().getResourceAsStream(resource)) {
+            return null == in ? null : IOUtil.toByteArray(in);
+        }
+    }
+
+    private Path jar(String name, Map<String, byte[]> entries) throws IOException {
+        Path jar = tempDir.resolve(name);
+        try (OutputStream out = Files.newOutputStream(jar);
+             JarOutputStream jarOut = new JarOutputStream(out)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                jarOut.putNextEntry(new ZipEntry(entry.getKey()));
+                if (null != entry.getValue()) {
+                    jarOut.write(entry.getValue());
+                }
+                jarOut.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private static Map<String, byte[]> read(Path jar) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry entry = zipEntries.nextElement();
+                try (InputStream in = zip.getInputStream(entry)) {
+                    entries.put(entry.getName(), entry.isDirectory() ? null : IOUtil.toByteArray(in));
+                }
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,111 @@
+package io.github.xtherk.bytehook;
+
+import io.github.xtherk.bytehook.util.ConstantPoolScreen;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Endpoints whose {@link Endpoint#isReplaceFlag()} is set: the calls to their target method
+ * are redirected to the fake method in the calling classes, the target class is left as is.
+ * <p>
+ * This reaches methods whose class can't be woven, such as the JDK classes loaded before the agent.
+ * A call is matched by the owner written in the calling class, a call through a subclass is not redirected.
+ * Every class passing through the transformer is first screened by {@link #isReferencedBy(byte[])},
+ * which reads its constant pool without parsing the class.
+ *
+ * @author xtherk
+ */
+public final class CallSites {
+
+    public static final CallSites EMPTY = of(Collections.emptyList());
+
+    private static final Logger logger = LoggerFactory.getLogger(CallSites.class);
+
+    /**
+     * key: owner, value: endpoints by method name and descriptor
+     */
+    private final Map<String, Map<String, Map<String, Endpoint>>> index = new HashMap<>();
+    private final Set<String> fakeClasses = new HashSet<>();
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    private final ConstantPoolScreen screen;
+
+    private CallSites(Collection<Endpoint> endpoints) {
+        List<String> owners = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<String> descriptors = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.getBehavior() != Behavior.SET) {
+                logger.warn("Calls to {}.{}{} can only be replaced, the {} endpoint {}.{} is ignored",
+                        endpoint.getTargetClass(), endpoint.getTargetMethod(), endpoint.getTargetMethodDesc(),
+                        endpoint.getBehavior(), endpoint.getFakeClass(), endpoint.getFakeMethod());
+                continue;
+            }
+            Endpoint previous = index.computeIfAbsent(endpoint.getTargetClass(), k -> new HashMap<>())
+                    .computeIfAbsent(endpoint.getTargetMethod(), k -> new HashMap<>(2))
+                    .putIfAbsent(endpoint.getTargetMethodDesc(), endpoint);
+            if (null != previous) {
+                logger.warn("Calls to {}.{}{} are redirected to both {}.{} and {}.{}, the latter is ignored",
+                        endpoint.getTargetClass(), endpoint.getTargetMethod(), endpoint.getTargetMethodDesc(),
+                        previous.getFakeClass(), previous.getFakeMethod(), endpoint.getFakeClass(), endpoint.getFakeMethod());
+                continue;
+            }
+            this.endpoints.add(endpoint);
+            fakeClasses.add(endpoint.getFakeClass());
+            owners.add(endpoint.getTargetClass());
+            names.add(endpoint.getTargetMethod());
+            descriptors.add(endpoint.getTargetMethodDesc());
+        }
+        this.screen = ConstantPoolScreen.of(owners, names, descriptors);
+    }
+
+    /**
+     * @param endpoints endpoints whose replace flag is set
+     * @return call sites of the endpoints, the first endpoint of a method wins
+     */
+    public static CallSites of(Collection<Endpoint> endpoints) {
+        return new CallSites(endpoints);
+    }
+
+    public boolean isEmpty() {
+        return endpoints.isEmpty();
+    }
+
+    /**
+     * @return endpoints of the redirected methods
+     */
+    public List<Endpoint> getEndpoints() {
+        return Collections.unmodifiableList(endpoints);
+    }
+
+    /**
+     * @param classfile bytes of a class file
+     * @return whether the class references a redirected method
+     */
+    public boolean isReferencedBy(byte[] classfile) {
+        return screen.isReferencedBy(classfile);
+    }
+
+    /**
+     * The fake classes call the target methods themselves, their calls are never redirected.
+     *
+     * @param className internal name of a class
+     * @return whether the class is a fake class of a redirected method
+     */
+    public boolean isFakeClass(String className) {
+        return fakeClasses.contains(className);
+    }
+
+    /**
+     * @param owner      owner of the called method
+     * @param name       name of the called method
+     * @param descriptor descriptor of the called method
+     * @return endpoint redirecting the call, {@code null} if the call is left as is
+     */
+    public Endpoint find(String owner, String name, String descriptor) {
+        Map<String, Map<String, Endpoint>> byName = index.get(owner);
+        Map<String, Endpoint> byDescriptor = null == byName ? null : byName.get(name);
+        return null == byDescriptor ? null : byDescriptor.get(descriptor);
+    }
+}
@@ -0,0 +1,242 @@
+package io.github.xtherk.bytehook;
+
+import io.github.xtherk.bytehook.util.Wildcards;
+import lombok.Getter;
+import org.objectweb.asm.Opcodes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Endpoints of a single target class, indexed by method name and descriptor
+ * when the registry is built, so weaving a class is a single pass over its methods.
+ * <p>
+ * Endpoints whose target method is a {@link Wildcards} pattern, and the endpoints of class patterns,
+ * only hook methods with a body that are neither constructors nor generated by the compiler,
+ * and are not reported when they match no method.
+ *
+ * @author xtherk
+ */
+public class ClassEndpoints {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClassEndpoints.class);
+
+    /**
+     * Internal name of the target class
+     */
+    @Getter
+    private final String targetClass;
+
+    @Getter
+    private final List<Endpoint> endpoints;
+
+    /**
+     * key: method name, value: endpoints by method descriptor.
+     * Two levels so that a lookup does not concatenate name and descriptor.
+     */
+    private final Map<String, Map<String, List<Endpoint>>> index = new HashMap<>();
+
+    /**
+     * key: method name, value: endpoints matching the method by its arguments only
+     */
+    private final Map<String, List<Endpoint>> argumentsOnlyIndex = new HashMap<>();
+
+    /**
+     * Endpoints whose target method is a pattern, matched against every method
+     */
+    private final List<Endpoint> methodPatterns = new ArrayList<>();
+
+    /**
+     * Endpoints that are not reported when they match no method
+     */
+    private final Set<Endpoint> patternEndpoints = new HashSet<>();
+
+    /**
+     * Number of indexed endpoints
+     */
+    private final int endpointCount;
+
+    /**
+     * Endpoints whose target method was not found, only reported on the first miss.
+     * Shared by the instances of every snapshot of a registry, see {@link EndpointRegistry}.
+     */
+    private final Set<Endpoint> reportedMisses;
+
+    public ClassEndpoints(String targetClass, List<Endpoint> endpoints) {
+        this(targetClass, endpoints, Collections.emptyList());
+    }
+
+    /**
+     * @param targetClass      internal name of the target class
+     * @param endpoints        endpoints of the class
+     * @param patternEndpoints endpoints of the class patterns matching the class, rebased on the class
+     */
+    public ClassEndpoints(String targetClass, List<Endpoint> endpoints, List<Endpoint> patternEndpoints) {
+        this(targetClass, endpoints, patternEndpoints, ConcurrentHashMap.newKeySet());
+    }
+
+    /**
+     * @param reportedMisses endpoints already reported as missing, updated by {@link #reportMisses(Collection)}
+     */
+    ClassEndpoints(String targetClass, List<Endpoint> endpoints, List<Endpoint> patternEndpoints,
+                   Set<Endpoint> reportedMisses) {
+        this.targetClass = targetClass;
+        this.reportedMisses = reportedMisses;
+        List<Endpoint> all = new ArrayList<>(endpoints.size() + patternEndpoints.size());
+        all.addAll(endpoints);
+        all.addAll(patternEndpoints);
+        this.endpoints = Collections.unmodifiableList(all);
+        this.patternEndpoints.addAll(patternEndpoints);
+        int count = 0;
+        for (Endpoint endpoint : all) {
+            if (endpoint.isReplaceFlag()) {
+                // Woven at the call sites, see CallSites
+                continue;
+            }
+            if (Wildcards.isPattern(endpoint.getTargetMethod())) {
+                methodPatterns.add(endpoint);
+                this.patternEndpoints.add(endpoint);
+                count++;
+                continue;
+            }
+            if (endpoint.isArgumentsOnly() || Endpoint.ANY_DESCRIPTOR.equals(endpoint.getTargetMethodDesc())) {
+                argumentsOnlyIndex.computeIfAbsent(endpoint.getTargetMethod(), k -> new ArrayList<>(2)).add(endpoint);
+                count++;
+                continue;
+            }
+            List<Endpoint> byDescriptor = index.computeIfAbsent(endpoint.getTargetMethod(), k -> new HashMap<>(4))
+                    .computeIfAbsent(endpoint.getTargetMethodDesc(), k -> new ArrayList<>(1));
+            Endpoint previous = endpoint.getBehavior() == Behavior.SET ? findSet(byDescriptor) : null;
+            if (null != previous) {
+                // Advice can be stacked, a method can only be replaced once
+                logger.warn("{}.{}{} is hooked by both {}.{} and {}.{}, the latter is ignored",
+                        targetClass, endpoint.getTargetMethod(), endpoint.getTargetMethodDesc(),
+                        previous.getFakeClass(), previous.getFakeMethod(), endpoint.getFakeClass(), endpoint.getFakeMethod());
+                continue;
+            }
+            byDescriptor.add(endpoint);
+            count++;
+        }
+        this.endpointCount = count;
+    }
+
+    /**
+     * @param behavior behavior of the endpoints to drop
+     * @return endpoints of the class without the endpoints of the behavior, this instance if it has none
+     */
+    public ClassEndpoints without(Behavior behavior) {
+        List<Endpoint> kept = new ArrayList<>(endpoints.size());
+        List<Endpoint> keptPatterns = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.getBehavior() == behavior)
+                continue;
+            // Method patterns are recognized again by the constructor
+            boolean classPattern = patternEndpoints.contains(endpoint) && !methodPatterns.contains(endpoint);
+            (classPattern ? keptPatterns : kept).add(endpoint);
+        }
+        if (kept.size() + keptPatterns.size() == endpoints.size())
+            return this;
+        return new ClassEndpoints(targetClass, kept, keptPatterns, reportedMisses);
+    }
+
+    private static Endpoint findSet(List<Endpoint> endpoints) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.getBehavior() == Behavior.SET) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param name       method name
+     * @param descriptor method descriptor
+     * @return endpoints of the method in registration order, empty if the method is not hooked
+     */
+    public List<Endpoint> find(String name, String descriptor) {
+        Map<String, List<Endpoint>> byDescriptor = index.get(name);
+        List<Endpoint> exact = null == byDescriptor ? null : byDescriptor.get(descriptor);
+        List<Endpoint> argumentsOnly = argumentsOnlyIndex.get(name);
+        if (null == argumentsOnly) {
+            return null == exact ? Collections.emptyList() : exact;
+        }
+        List<Endpoint> found = null == exact ? new ArrayList<>() : new ArrayList<>(exact);
+        for (Endpoint endpoint : argumentsOnly) {
+            if (endpoint.matches(descriptor)) {
+                found.add(endpoint);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Like {@link #find(String, String)}, pattern endpoints are dropped for the methods they may not hook.
+     *
+     * @param access     method access flags
+     * @param name       method name
+     * @param descriptor method descriptor
+     * @return endpoints of the method, empty if the method is not hooked
+     */
+    public List<Endpoint> find(int access, String name, String descriptor) {
+        List<Endpoint> found = find(name, descriptor);
+        if (patternEndpoints.isEmpty())
+            return found;
+        boolean hookable = name.charAt(0) != '<' && (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE
+                | Opcodes.ACC_SYNTHETIC | Opcodes.ACC_BRIDGE)) == 0;
+        if (!hookable) {
+            found = new ArrayList<>(found);
+            found.removeAll(patternEndpoints);
+            return found;
+        }
+        List<Endpoint> withPatterns = null;
+        for (Endpoint endpoint : methodPatterns) {
+            if (Wildcards.matches(endpoint.getTargetMethod(), name) && endpoint.matches(descriptor)) {
+                if (null == withPatterns) {
+                    withPatterns = new ArrayList<>(found);
+                }
+                withPatterns.add(endpoint);
+            }
+        }
+        return null == withPatterns ? found : withPatterns;
+    }
+
+    /**
+     * @return number of indexed endpoints
+     */
+    public int endpointCount() {
+        return endpointCount;
+    }
+
+    /**
+     * Report the endpoints that did not match any method of the woven class.
+     * Each endpoint is only reported once, not on every load of the class.
+     *
+     * @param matched endpoints that matched a method
+     * @return endpoints reported by this call
+     */
+    public List<Endpoint> reportMisses(Collection<Endpoint> matched) {
+        List<Endpoint> reported = new ArrayList<>(0);
+        for (Map<String, List<Endpoint>> byDescriptor : index.values()) {
+            for (List<Endpoint> endpoints : byDescriptor.values()) {
+                reportMisses(endpoints, matched, reported);
+            }
+        }
+        for (List<Endpoint> endpoints : argumentsOnlyIndex.values()) {
+            reportMisses(endpoints, matched, reported);
+        }
+        return reported;
+    }
+
+    private void reportMisses(List<Endpoint> endpoints, Collection<Endpoint> matched, List<Endpoint> reported) {
+        for (Endpoint endpoint : endpoints) {
+            if (!matched.contains(endpoint) && !patternEndpoints.contains(endpoint) && reportedMisses.add(endpoint)) {
+                reported.add(endpoint);
+                logger.warn("The target method {}.{}{} of {}.{} does not exist",
+                        targetClass, endpoint.getTargetMethod(), endpoint.getTargetMethodDesc(),
+                        endpoint.getFakeClass(), endpoint.getFakeMethod());
+            }
+        }
+    }
+}
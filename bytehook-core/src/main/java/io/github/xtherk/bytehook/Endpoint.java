@@ -1,6 +1,7 @@
 package io.github.xtherk.bytehook;
 
 
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -12,8 +13,14 @@ import lombok.Setter;
  */
 
 @Getter
+@EqualsAndHashCode
 public class Endpoint {
 
+    /**
+     * Target method descriptor matching every descriptor, see {@link HookMethod#ANY_DESCRIPTOR}
+     */
+    public static final String ANY_DESCRIPTOR = HookMethod.ANY_DESCRIPTOR;
+
     /**
      * Class that needs to be hooked.
      */
@@ -33,6 +40,7 @@ public class Endpoint {
      * Method access that needs to be hooked.
      */
     @Setter
+    @EqualsAndHashCode.Exclude
     private int targetAccess = -1;
 
     /**
@@ -64,7 +72,8 @@ public class Endpoint {
     private final boolean copyTargetMethod;
 
     /**
-     * Flag to replace method call
+     * Flag to replace method call: the calls to the target method are redirected to the fake method
+     * in the calling classes, see {@link CallSites}
      */
     private final boolean replaceFlag;
 
@@ -72,10 +81,26 @@ public class Endpoint {
      * Hook target method behavior
      */
     private final Behavior behavior;
+    /**
+     * The fake method of an {@link Behavior#INSERT_AFTER} endpoint receives the returned value
+     */
+    private final boolean passReturnValue;
+    /**
+     * The fake method of an {@link Behavior#INSERT_AFTER} endpoint receives the thrown exception
+     */
+    private final boolean passThrown;
 
     public Endpoint(String targetClass, String targetMethod, String targetMethodDesc,
                     String fakeClass, String fakeMethod, String fakeMethodDesc,
                     boolean requireInstance, boolean copyTargetMethod, boolean replaceFlag, Behavior behavior) {
+        this(targetClass, targetMethod, targetMethodDesc, fakeClass, fakeMethod, fakeMethodDesc,
+                requireInstance, copyTargetMethod, replaceFlag, behavior, false, false);
+    }
+
+    public Endpoint(String targetClass, String targetMethod, String targetMethodDesc,
+                    String fakeClass, String fakeMethod, String fakeMethodDesc,
+                    boolean requireInstance, boolean copyTargetMethod, boolean replaceFlag, Behavior behavior,
+                    boolean passReturnValue, boolean passThrown) {
 
         this.targetClass = targetClass;
         this.targetMethod = targetMethod;
@@ -89,5 +114,33 @@ public class Endpoint {
         this.copyTargetMethod = copyTargetMethod;
         this.replaceFlag = replaceFlag;
         this.behavior = behavior;
+        this.passReturnValue = passReturnValue;
+        this.passThrown = passThrown;
+    }
+
+    /**
+     * @param targetClass internal name of a class matched by the wildcard pattern of this endpoint
+     * @return copy of this endpoint hooking the class
+     */
+    public Endpoint withTargetClass(String targetClass) {
+        return new Endpoint(targetClass, targetMethod, targetMethodDesc, fakeClass, fakeMethod, fakeMethodDesc,
+                requireInstance, copyTargetMethod, replaceFlag, behavior, passReturnValue, passThrown);
+    }
+
+    /**
+     * @return whether the target method descriptor only holds the arguments, see {@link #matches(String)}
+     */
+    public boolean isArgumentsOnly() {
+        return targetMethodDesc.endsWith(")");
+    }
+
+    /**
+     * @param descriptor descriptor of a method named {@link #targetMethod}
+     * @return whether this endpoint applies to the method
+     */
+    public boolean matches(String descriptor) {
+        if (ANY_DESCRIPTOR.equals(targetMethodDesc))
+            return true;
+        return isArgumentsOnly() ? descriptor.startsWith(targetMethodDesc) : descriptor.equals(targetMethodDesc);
     }
 }
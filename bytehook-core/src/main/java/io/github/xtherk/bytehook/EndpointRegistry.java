@@ -0,0 +1,251 @@
+package io.github.xtherk.bytehook;
+
+import io.github.xtherk.bytehook.util.ClassPatternMatcher;
+import io.github.xtherk.bytehook.util.TargetClassFilter;
+import io.github.xtherk.bytehook.util.Wildcards;
+import io.github.xtherk.bytehook.weaver.ClassHierarchy;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Immutable snapshot of the endpoints of every target class, published by {@link Modules} as a whole.
+ * <p>
+ * A change builds a new snapshot with a higher version instead of mutating the current one,
+ * so a reader holding a snapshot sees its endpoints and its {@link TargetClassFilter} in a consistent state
+ * without taking a lock.
+ * <p>
+ * Endpoints are stored in an {@link EndpointTable}, the indexed {@link ClassEndpoints} of a class
+ * are only built when the class is loaded.
+ * <p>
+ * Target classes that are {@link Wildcards} patterns are compiled into a single {@link ClassPatternMatcher},
+ * a class matched by patterns gets their endpoints in addition to its own.
+ * <p>
+ * Target classes ending with {@link HookClass#SUBTYPES} also hook the subtypes of the class, a caller finds
+ * the {@link #supertypes()} of a class in its hierarchy and passes them to {@link #get(String, String[])}.
+ * <p>
+ * Endpoints whose {@link Endpoint#isReplaceFlag()} is set are woven into the calling classes,
+ * they are gathered in the {@link #callSites()}.
+ *
+ * @author xtherk
+ */
+public final class EndpointRegistry {
+
+    public static final EndpointRegistry EMPTY = new EndpointRegistry(0, EndpointTable.EMPTY, ConcurrentHashMap.newKeySet());
+
+    private final long version;
+    private final EndpointTable table;
+    /**
+     * By class index of the table, built on first use
+     */
+    private final AtomicReferenceArray<ClassEndpoints> classes;
+    private final TargetClassFilter filter;
+    private final ClassPatternMatcher patterns;
+    /**
+     * Class index of each pattern of {@link #patterns}
+     */
+    private final int[] patternClasses;
+    /**
+     * key: internal name of a hooked supertype, value: class index of its endpoints
+     */
+    private final Map<String, Integer> supertypeClasses = new HashMap<>();
+    private final Set<String> supertypes = Collections.unmodifiableSet(supertypeClasses.keySet());
+    private final CallSites callSites;
+    /**
+     * Class indexes of the classes whose endpoints are all woven at the call sites
+     */
+    private final BitSet callSitesOnly = new BitSet();
+    /**
+     * Endpoints reported as missing, carried over to the next snapshots so that a miss is reported once
+     * whatever the number of publications and of {@link ClassEndpoints} built for the class
+     */
+    private final Set<Endpoint> reportedMisses;
+
+    private EndpointRegistry(long version, EndpointTable table, Set<Endpoint> reportedMisses) {
+        this.version = version;
+        this.table = table;
+        this.reportedMisses = reportedMisses;
+        this.classes = new AtomicReferenceArray<>(table.classCount());
+        List<String> classNames = new ArrayList<>(table.classCount());
+        List<String> classPatterns = new ArrayList<>();
+        List<Endpoint> callSiteEndpoints = new ArrayList<>();
+        int[] patternClasses = new int[table.classCount()];
+        for (int i = 0; i < table.classCount(); i++) {
+            String className = table.className(i);
+            String supertype = supertypeOf(className);
+            if (null != supertype) {
+                supertypeClasses.put(supertype, i);
+                // The supertype itself is hooked too
+                classNames.add(supertype);
+            } else if (Wildcards.isPattern(className)) {
+                patternClasses[classPatterns.size()] = i;
+                classPatterns.add(className);
+            } else if (table.replaceFlagCount(i) > 0) {
+                for (Endpoint endpoint : table.endpoints(i)) {
+                    if (endpoint.isReplaceFlag()) {
+                        callSiteEndpoints.add(endpoint);
+                    }
+                }
+                if (table.replaceFlagCount(i) < table.size(i)) {
+                    classNames.add(className);
+                } else {
+                    callSitesOnly.set(i);
+                }
+            } else {
+                classNames.add(className);
+            }
+        }
+        this.callSites = CallSites.of(callSiteEndpoints);
+        this.filter = TargetClassFilter.of(classNames);
+        this.patterns = ClassPatternMatcher.of(classPatterns);
+        this.patternClasses = patternClasses;
+    }
+
+    /**
+     * @param targetClass target class of an endpoint
+     * @return internal name of the supertype whose subtypes are hooked, {@code null} if it only hooks the class
+     */
+    public static String supertypeOf(String targetClass) {
+        return targetClass.endsWith(HookClass.SUBTYPES) ?
+                targetClass.substring(0, targetClass.length() - HookClass.SUBTYPES.length()) : null;
+    }
+
+    /**
+     * @param changes merged endpoints of the changed target classes, an empty list removes the class
+     * @return next version of the registry, this one is left as is
+     */
+    public EndpointRegistry with(Map<String, List<Endpoint>> changes) {
+        EndpointTable.Builder builder = new EndpointTable.Builder();
+        for (int i = 0; i < table.classCount(); i++) {
+            if (!changes.containsKey(table.className(i))) {
+                builder.addClass(table, i);
+            }
+        }
+        for (List<Endpoint> endpoints : changes.values()) {
+            for (Endpoint endpoint : endpoints) {
+                builder.add(endpoint);
+            }
+        }
+        return new EndpointRegistry(version + 1, builder.build(), reportedMisses);
+    }
+
+    /**
+     * @return number of publications before this snapshot
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return endpoints of this snapshot
+     */
+    public EndpointTable getTable() {
+        return table;
+    }
+
+    /**
+     * Cheap check for the class loading path, see {@link TargetClassFilter} and {@link ClassPatternMatcher}.
+     *
+     * @param className internal name of the class
+     * @return {@code false} if the class has no endpoint for sure
+     */
+    public boolean mayBeHooked(String className) {
+        return filter.mightContain(className) || patterns.matches(className);
+    }
+
+    /**
+     * @return internal names of the hooked supertypes, the same instance for the lifetime of this snapshot
+     */
+    public Set<String> supertypes() {
+        return supertypes;
+    }
+
+    /**
+     * @return methods whose calls are redirected
+     */
+    public CallSites callSites() {
+        return callSites;
+    }
+
+    /**
+     * @return whether a class may be hooked through one of its supertypes
+     */
+    public boolean hasSupertypes() {
+        return !supertypeClasses.isEmpty();
+    }
+
+    /**
+     * @param className internal name of the class
+     * @return endpoints of the class, {@code null} if it is not a target class
+     */
+    public ClassEndpoints get(String className) {
+        return get(className, ClassHierarchy.NO_SUPERTYPES);
+    }
+
+    /**
+     * @param className  internal name of the class
+     * @param supertypes {@link #supertypes()} that the class extends or implements
+     * @return endpoints of the class, {@code null} if it is not a target class
+     */
+    public ClassEndpoints get(String className, String[] supertypes) {
+        int classIndex = table.classIndex(className);
+        if (classIndex >= 0 && callSitesOnly.get(classIndex)) {
+            classIndex = -1;
+        }
+        int[] matched = patterns.match(className);
+        Integer self = supertypeClasses.isEmpty() ? null : supertypeClasses.get(className);
+        if (matched.length > 0 || supertypes.length > 0 || null != self) {
+            // Not cached, a class is matched by patterns or supertypes once per load
+            List<Endpoint> inherited = new ArrayList<>();
+            for (int pattern : matched) {
+                rebase(patternClasses[pattern], className, inherited);
+            }
+            if (null != self) {
+                rebase(self, className, inherited);
+            }
+            for (String supertype : supertypes) {
+                Integer supertypeClass = supertypeClasses.get(supertype);
+                if (null != supertypeClass) {
+                    rebase(supertypeClass, className, inherited);
+                }
+            }
+            if (inherited.isEmpty() && classIndex < 0)
+                return null;
+            return new ClassEndpoints(className,
+                    classIndex < 0 ? Collections.emptyList() : table.endpoints(classIndex), inherited, reportedMisses);
+        }
+        if (classIndex < 0)
+            return null;
+        ClassEndpoints endpoints = classes.get(classIndex);
+        if (null == endpoints) {
+            // Racing threads build equal instances, the first one is kept
+            classes.compareAndSet(classIndex, null, new ClassEndpoints(className, table.endpoints(classIndex),
+                    Collections.emptyList(), reportedMisses));
+            endpoints = classes.get(classIndex);
+        }
+        return endpoints;
+    }
+
+    private void rebase(int classIndex, String className, List<Endpoint> rebased) {
+        for (Endpoint endpoint : table.endpoints(classIndex)) {
+            rebased.add(endpoint.withTargetClass(className));
+        }
+    }
+
+    /**
+     * @return internal names of the target classes, including the class patterns and the hooked supertypes,
+     * excluding the classes whose calls are redirected in the calling classes
+     */
+    public Set<String> targetClasses() {
+        if (callSitesOnly.isEmpty())
+            return table.targetClasses();
+        Set<String> targetClasses = new HashSet<>();
+        for (int i = 0; i < table.classCount(); i++) {
+            if (!callSitesOnly.get(i)) {
+                targetClasses.add(table.className(i));
+            }
+        }
+        return targetClasses;
+    }
+}
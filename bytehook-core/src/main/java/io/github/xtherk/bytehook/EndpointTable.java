@@ -0,0 +1,317 @@
+package io.github.xtherk.bytehook;
+
+import java.util.*;
+
+/**
+ * Compact, immutable storage of many endpoints.
+ * <p>
+ * Every name and descriptor is stored once in a string pool, an endpoint is a row of pool indexes and flags
+ * in a single {@code int} array. Rows are sorted by target class, the endpoints of a class are the slice
+ * of rows between two offsets, found through an open addressing index over the target class names.
+ * {@link Endpoint} objects are only created for the classes that are asked for, and share the pooled strings.
+ * <p>
+ * Within a class, rows keep the order in which the endpoints were added.
+ *
+ * @author xtherk
+ */
+public final class EndpointTable {
+
+    public static final EndpointTable EMPTY = new Builder().build();
+
+    private static final int TARGET_CLASS = 0;
+    private static final int TARGET_METHOD = 1;
+    private static final int TARGET_METHOD_DESC = 2;
+    private static final int FAKE_CLASS = 3;
+    private static final int FAKE_METHOD = 4;
+    private static final int FAKE_METHOD_DESC = 5;
+    private static final int FLAGS = 6;
+    private static final int ROW_WIDTH = 7;
+
+    private static final int REQUIRE_INSTANCE = 1;
+    private static final int COPY_TARGET_METHOD = 1 << 1;
+    private static final int REPLACE_FLAG = 1 << 2;
+    private static final int PASS_RETURN_VALUE = 1 << 3;
+    private static final int PASS_THROWN = 1 << 4;
+    private static final int BEHAVIOR_SHIFT = 8;
+    private static final Behavior[] BEHAVIORS = Behavior.values();
+
+    private final String[] strings;
+    /**
+     * {@link #ROW_WIDTH} values per endpoint
+     */
+    private final int[] rows;
+    /**
+     * Pool index of the name of each target class
+     */
+    private final int[] classNames;
+    /**
+     * First row of each target class, followed by the row count
+     */
+    private final int[] classStarts;
+    /**
+     * Open addressing index, target class index plus one, 0 for a free slot
+     */
+    private final int[] classSlots;
+    private final int slotMask;
+
+    private EndpointTable(String[] strings, int[] rows, int[] classNames, int[] classStarts) {
+        this.strings = strings;
+        this.rows = rows;
+        this.classNames = classNames;
+        this.classStarts = classStarts;
+        int capacity = Integer.highestOneBit(Math.max(1, classNames.length) * 2 - 1) << 1;
+        this.classSlots = new int[capacity];
+        this.slotMask = capacity - 1;
+        for (int i = 0; i < classNames.length; i++) {
+            int slot = strings[classNames[i]].hashCode() & slotMask;
+            while (classSlots[slot] != 0) {
+                slot = (slot + 1) & slotMask;
+            }
+            classSlots[slot] = i + 1;
+        }
+    }
+
+    /**
+     * @param endpoints endpoints in any order
+     * @return table of the endpoints
+     */
+    public static EndpointTable of(Collection<Endpoint> endpoints) {
+        Builder builder = new Builder();
+        for (Endpoint endpoint : endpoints) {
+            builder.add(endpoint);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return number of endpoints
+     */
+    public int size() {
+        return rows.length / ROW_WIDTH;
+    }
+
+    /**
+     * @param classIndex index of a target class
+     * @return number of endpoints of the class
+     */
+    public int size(int classIndex) {
+        return classStarts[classIndex + 1] - classStarts[classIndex];
+    }
+
+    /**
+     * @param classIndex index of a target class
+     * @return number of endpoints of the class whose {@link Endpoint#isReplaceFlag()} is set
+     */
+    public int replaceFlagCount(int classIndex) {
+        int count = 0;
+        for (int row = classStarts[classIndex]; row < classStarts[classIndex + 1]; row++) {
+            if ((rows[row * ROW_WIDTH + FLAGS] & REPLACE_FLAG) != 0)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return number of target classes
+     */
+    public int classCount() {
+        return classNames.length;
+    }
+
+    /**
+     * @return number of distinct names and descriptors
+     */
+    public int stringCount() {
+        return strings.length;
+    }
+
+    /**
+     * @param className internal name of a class
+     * @return index of the class in this table, -1 if it has no endpoint
+     */
+    public int classIndex(String className) {
+        int slot = className.hashCode() & slotMask;
+        for (int entry; (entry = classSlots[slot]) != 0; slot = (slot + 1) & slotMask) {
+            if (strings[classNames[entry - 1]].equals(className))
+                return entry - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * @param classIndex index of a target class
+     * @return internal name of the class
+     */
+    public String className(int classIndex) {
+        return strings[classNames[classIndex]];
+    }
+
+    /**
+     * @param classIndex index of a target class
+     * @return new endpoints of the class, in the order they were added
+     */
+    public List<Endpoint> endpoints(int classIndex) {
+        int start = classStarts[classIndex];
+        int end = classStarts[classIndex + 1];
+        List<Endpoint> endpoints = new ArrayList<>(end - start);
+        for (int row = start; row < end; row++) {
+            endpoints.add(endpoint(row));
+        }
+        return endpoints;
+    }
+
+    /**
+     * @param className internal name of a class
+     * @return new endpoints of the class, empty if it has none
+     */
+    public List<Endpoint> endpoints(String className) {
+        int classIndex = classIndex(className);
+        return classIndex < 0 ? Collections.emptyList() : endpoints(classIndex);
+    }
+
+    /**
+     * @return internal names of the target classes
+     */
+    public Set<String> targetClasses() {
+        return new AbstractSet<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new Iterator<String>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < classNames.length;
+                    }
+
+                    @Override
+                    public String next() {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+                        return className(next++);
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof String && classIndex((String) o) >= 0;
+            }
+
+            @Override
+            public int size() {
+                return classNames.length;
+            }
+        };
+    }
+
+    private Endpoint endpoint(int row) {
+        int offset = row * ROW_WIDTH;
+        int flags = rows[offset + FLAGS];
+        return new Endpoint(strings[rows[offset + TARGET_CLASS]], strings[rows[offset + TARGET_METHOD]],
+                strings[rows[offset + TARGET_METHOD_DESC]], strings[rows[offset + FAKE_CLASS]],
+                strings[rows[offset + FAKE_METHOD]], strings[rows[offset + FAKE_METHOD_DESC]],
+                (flags & REQUIRE_INSTANCE) != 0, (flags & COPY_TARGET_METHOD) != 0, (flags & REPLACE_FLAG) != 0,
+                BEHAVIORS[flags >>> BEHAVIOR_SHIFT], (flags & PASS_RETURN_VALUE) != 0, (flags & PASS_THROWN) != 0);
+    }
+
+    /**
+     * Collects endpoints and pools their strings, not thread safe.
+     */
+    public static final class Builder {
+
+        private final Map<String, Integer> pool = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private int[] rows = new int[16 * ROW_WIDTH];
+        private int size;
+
+        public Builder add(Endpoint endpoint) {
+            int flags = endpoint.getBehavior().ordinal() << BEHAVIOR_SHIFT
+                    | (endpoint.isRequireInstance() ? REQUIRE_INSTANCE : 0)
+                    | (endpoint.isCopyTargetMethod() ? COPY_TARGET_METHOD : 0)
+                    | (endpoint.isReplaceFlag() ? REPLACE_FLAG : 0)
+                    | (endpoint.isPassReturnValue() ? PASS_RETURN_VALUE : 0)
+                    | (endpoint.isPassThrown() ? PASS_THROWN : 0);
+            addRow(intern(endpoint.getTargetClass()), intern(endpoint.getTargetMethod()),
+                    intern(endpoint.getTargetMethodDesc()), intern(endpoint.getFakeClass()),
+                    intern(endpoint.getFakeMethod()), intern(endpoint.getFakeMethodDesc()), flags);
+            return this;
+        }
+
+        /**
+         * Adds the endpoints of a class of another table, without creating {@link Endpoint} objects.
+         *
+         * @param table      table holding the class
+         * @param classIndex index of the class in the table
+         */
+        public Builder addClass(EndpointTable table, int classIndex) {
+            for (int row = table.classStarts[classIndex]; row < table.classStarts[classIndex + 1]; row++) {
+                int offset = row * ROW_WIDTH;
+                addRow(intern(table.strings[table.rows[offset + TARGET_CLASS]]),
+                        intern(table.strings[table.rows[offset + TARGET_METHOD]]),
+                        intern(table.strings[table.rows[offset + TARGET_METHOD_DESC]]),
+                        intern(table.strings[table.rows[offset + FAKE_CLASS]]),
+                        intern(table.strings[table.rows[offset + FAKE_METHOD]]),
+                        intern(table.strings[table.rows[offset + FAKE_METHOD_DESC]]),
+                        table.rows[offset + FLAGS]);
+            }
+            return this;
+        }
+
+        private void addRow(int targetClass, int targetMethod, int targetMethodDesc,
+                            int fakeClass, int fakeMethod, int fakeMethodDesc, int flags) {
+            int offset = size * ROW_WIDTH;
+            if (offset + ROW_WIDTH > rows.length) {
+                rows = Arrays.copyOf(rows, rows.length * 2);
+            }
+            rows[offset + TARGET_CLASS] = targetClass;
+            rows[offset + TARGET_METHOD] = targetMethod;
+            rows[offset + TARGET_METHOD_DESC] = targetMethodDesc;
+            rows[offset + FAKE_CLASS] = fakeClass;
+            rows[offset + FAKE_METHOD] = fakeMethod;
+            rows[offset + FAKE_METHOD_DESC] = fakeMethodDesc;
+            rows[offset + FLAGS] = flags;
+            size++;
+        }
+
+        private int intern(String value) {
+            Integer index = pool.get(value);
+            if (null != index)
+                return index;
+            pool.put(value, strings.size());
+            strings.add(value);
+            return strings.size() - 1;
+        }
+
+        public EndpointTable build() {
+            // Counting sort of the rows by target class, stable within a class
+            int[] classOfString = new int[strings.size()];
+            Arrays.fill(classOfString, -1);
+            int[] classNames = new int[Math.max(1, size)];
+            int classCount = 0;
+            int[] rowClasses = new int[size];
+            for (int row = 0; row < size; row++) {
+                int name = rows[row * ROW_WIDTH + TARGET_CLASS];
+                if (classOfString[name] < 0) {
+                    classNames[classCount] = name;
+                    classOfString[name] = classCount++;
+                }
+                rowClasses[row] = classOfString[name];
+            }
+            int[] classStarts = new int[classCount + 1];
+            for (int classIndex : rowClasses) {
+                classStarts[classIndex + 1]++;
+            }
+            for (int i = 0; i < classCount; i++) {
+                classStarts[i + 1] += classStarts[i];
+            }
+            int[] next = Arrays.copyOf(classStarts, classCount);
+            int[] sorted = new int[size * ROW_WIDTH];
+            for (int row = 0; row < size; row++) {
+                System.arraycopy(rows, row * ROW_WIDTH, sorted, next[rowClasses[row]]++ * ROW_WIDTH, ROW_WIDTH);
+            }
+            return new EndpointTable(strings.toArray(new String[0]), sorted,
+                    Arrays.copyOf(classNames, classCount), classStarts);
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package io.github.xtherk.bytehook;
 
+import io.github.xtherk.bytehook.loader.ModuleClassLoader;
+import io.github.xtherk.bytehook.metrics.AgentMetrics;
 import io.github.xtherk.bytehook.util.ClassLoaderInternals;
+import io.github.xtherk.bytehook.util.TargetClassFilter;
+import io.github.xtherk.bytehook.weaver.WeaveOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,6 +16,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 /**
@@ -19,14 +26,47 @@ import java.util.stream.Collectors;
  */
 public class Modules {
 
+    /**
+     * Load each module with its own {@link ModuleClassLoader}, disabled by default.
+     * When disabled the modules are appended to the application classpath and can't be unloaded.
+     * Isolated modules are always reached through {@link io.github.xtherk.bytehook.dispatch.HookDispatcher},
+     * which must be visible from the woven classes.
+     */
+    public static final String ISOLATION_PROPERTY_NAME = "bh.module.isolation";
+    private static final boolean ISOLATED = Boolean.getBoolean(ISOLATION_PROPERTY_NAME);
+
     public static volatile boolean initialized = false;
+    /**
+     * Released once {@link #initialized} is set
+     */
+    private static final CountDownLatch INITIALIZATION = new CountDownLatch(1);
     private static final Path DEFAULT_MODULE_DIR = Paths.get(System.getProperty("user.dir"), "modules");
     /**
      * Scan all resources in the module directory into {@link #moduleResourcePaths}
      */
     private static final List<Path> MODULE_DIRECTORIES = new ArrayList<>();
     private static final Logger logger = LoggerFactory.getLogger(Modules.class);
-    private static final Map<String, List<Endpoint>> ENDPOINT_MAPPING = new HashMap<>();
+    /**
+     * Current snapshot, read by the transforming threads without locking.
+     * Only replaced while holding the lock of this class, the sources below are guarded by it as well.
+     */
+    private static final AtomicReference<EndpointRegistry> REGISTRY = new AtomicReference<>(EndpointRegistry.EMPTY);
+    /**
+     * Endpoints of every loaded module, in module order. Kept as tables, a module may hook thousands of methods.
+     */
+    private static final Map<Path, EndpointTable> MODULE_ENDPOINTS = new LinkedHashMap<>();
+    /**
+     * Endpoints registered without a module, by target class
+     */
+    private static final Map<String, List<Endpoint>> REGISTERED_ENDPOINTS = new HashMap<>();
+    /**
+     * Module of each fake class, used to resolve fake classes when the modules are isolated
+     */
+    private static final Map<String, Path> FAKE_CLASS_MODULES = new ConcurrentHashMap<>();
+    /**
+     * Created on the first call of a fake method of the module
+     */
+    private static final Map<Path, ModuleClassLoader> MODULE_CLASS_LOADERS = new ConcurrentHashMap<>();
     /**
      * The final module resource to process
      */
@@ -43,10 +83,16 @@ public class Modules {
         if (!initialized) {
             logger.info("default module directory is {}", DEFAULT_MODULE_DIR);
             try {
+                long start = System.nanoTime();
                 scanModules();
+                long scanned = System.nanoTime();
+                AgentMetrics.get().modulesScanned(scanned - start);
+                int modules = moduleResourcePaths.size();
                 loadModules();
+                AgentMetrics.get().modulesLoaded(modules, System.nanoTime() - scanned);
                 release();
                 initialized = true;
+                INITIALIZATION.countDown();
             } catch (IOException e) {
                 logger.error("Please check the module directory", e);
             }
@@ -54,13 +100,38 @@ public class Modules {
     }
 
     /**
-     * All modules in the load module directory
+     * Blocks until the modules are initialized.
+     *
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public static void awaitInitialization() throws InterruptedException {
+        INITIALIZATION.await();
+    }
+
+    /**
+     * All modules in the load module directory.
+     * <p>
+     * Only appending to the classpath is ordered, the modules are parsed and scanned in parallel.
+     * Their endpoints are merged in module order, so the result does not depend on scheduling,
+     * and published as a single snapshot.
+     * Isolated modules are not appended to the classpath, see {@link #ISOLATION_PROPERTY_NAME}.
      */
     public static void loadModules() {
         if (moduleResourcePaths.isEmpty()) return;
-        for (Path modulePath : moduleResourcePaths) {
-            addToClasspath(modulePath);
-            load(modulePath);
+        if (!ISOLATED) {
+            for (Path modulePath : moduleResourcePaths) {
+                addToClasspath(modulePath);
+            }
+        }
+        List<List<Endpoint>> moduleEndpoints = moduleResourcePaths.parallelStream()
+                .map(Modules::read)
+                .collect(Collectors.toList());
+        synchronized (Modules.class) {
+            Set<String> targetClasses = new HashSet<>();
+            for (int i = 0; i < moduleEndpoints.size(); i++) {
+                targetClasses.addAll(addModule(moduleResourcePaths.get(i), moduleEndpoints.get(i)));
+            }
+            publish(targetClasses);
         }
     }
 
@@ -70,20 +141,218 @@ public class Modules {
      * @param path module path
      */
     public static void load(Path path) {
+        register(path, read(path));
+    }
+
+    private static synchronized void register(Path path, List<Endpoint> endpoints) {
+        publish(addModule(path, endpoints));
+    }
+
+    /**
+     * @return internal names of the target classes of the module, before and after
+     */
+    private static Set<String> addModule(Path path, List<Endpoint> endpoints) {
+        EndpointTable table = EndpointTable.of(endpoints);
+        EndpointTable previous = MODULE_ENDPOINTS.put(path, table);
+        mapFakeClasses(path, endpoints);
+        return null == previous ? table.targetClasses() : union(table.targetClasses(), previous.targetClasses());
+    }
+
+    /**
+     * Reads a module again after it was added, changed or removed, and updates the endpoints
+     * of the target classes whose endpoints differ. The other target classes are left untouched.
+     *
+     * @param path module path
+     * @return internal names of the target classes whose endpoints were added, removed or changed
+     * @see #reload(Path, boolean)
+     */
+    public static Set<String> reload(Path path) {
+        return reload(path, false);
+    }
+
+    /**
+     * Reads a module again after it was added, changed or removed.
+     * <p>
+     * When the classes of an isolated module changed, the module gets a new class loader and every target
+     * class it hooks is affected, the woven code must bind to the new classes. Target classes holding
+     * inlined copies of the fake methods are affected as well. A removed isolated module
+     * releases its class loader, its classes are collected once the target classes are restored.
+     *
+     * @param path           module path
+     * @param classesChanged whether the classes of the module changed
+     * @return internal names of the target classes to retransform
+     */
+    public static synchronized Set<String> reload(Path path, boolean classesChanged) {
+        EndpointTable previous = MODULE_ENDPOINTS.getOrDefault(path, EndpointTable.EMPTY);
+        boolean exists = Files.exists(path);
+        boolean replaceLoader = ISOLATED && (classesChanged || !exists);
+        if (replaceLoader) {
+            closeModuleClassLoader(path);
+        }
+        FAKE_CLASS_MODULES.values().removeIf(path::equals);
+        EndpointTable current;
+        if (exists) {
+            if (!ISOLATED && !MODULE_ENDPOINTS.containsKey(path)) {
+                addToClasspath(path);
+            }
+            List<Endpoint> endpoints = read(path);
+            current = EndpointTable.of(endpoints);
+            MODULE_ENDPOINTS.put(path, current);
+            mapFakeClasses(path, endpoints);
+        } else {
+            current = EndpointTable.EMPTY;
+            MODULE_ENDPOINTS.remove(path);
+        }
+
+        Map<String, Set<Endpoint>> before = groupByTargetClass(previous);
+        Map<String, Set<Endpoint>> after = groupByTargetClass(current);
+        Set<String> affected = new TreeSet<>();
+        for (String targetClass : union(before.keySet(), after.keySet())) {
+            if (replaceLoader || classesChanged && inlinesFakeMethods(after.get(targetClass))
+                    || !Objects.equals(before.get(targetClass), after.get(targetClass))) {
+                affected.add(targetClass);
+            }
+        }
+        if (!affected.isEmpty()) {
+            publish(affected);
+            logger.info("Module {} reloaded, endpoints of {} changed", path, affected);
+        }
+        return affected;
+    }
+
+    /**
+     * @param endpoints endpoints of a target class, may be {@code null}
+     * @return whether the woven class may hold copies of the fake methods, which are stale once the module changed
+     */
+    private static boolean inlinesFakeMethods(Set<Endpoint> endpoints) {
+        if (null == endpoints)
+            return false;
+        return WeaveOptions.isInlineEnabled() || endpoints.stream().anyMatch(Endpoint::isCopyTargetMethod);
+    }
+
+    private static void mapFakeClasses(Path path, List<Endpoint> endpoints) {
+        for (Endpoint endpoint : endpoints) {
+            FAKE_CLASS_MODULES.put(endpoint.getFakeClass(), path);
+        }
+    }
+
+    private static void closeModuleClassLoader(Path path) {
+        ModuleClassLoader loader = MODULE_CLASS_LOADERS.remove(path);
+        if (null != loader) {
+            try {
+                loader.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close {}", loader, e);
+            }
+        }
+    }
+
+    /**
+     * @param fakeClass internal name of a fake class
+     * @return class loader of the isolated module defining the fake class, {@code null} if it is not a module class
+     */
+    public static ModuleClassLoader moduleClassLoaderOf(String fakeClass) {
+        if (!ISOLATED)
+            return null;
+        Path module = FAKE_CLASS_MODULES.get(fakeClass);
+        return null == module ? null : MODULE_CLASS_LOADERS.computeIfAbsent(module, Modules::newModuleClassLoader);
+    }
+
+    private static ModuleClassLoader newModuleClassLoader(Path module) {
+        try {
+            return new ModuleClassLoader(module, ClassLoader.getSystemClassLoader());
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException("Failed to resolve module path " + module, e);
+        }
+    }
+
+    /**
+     * @return whether the modules are loaded by their own class loaders
+     */
+    public static boolean isIsolated() {
+        return ISOLATED;
+    }
+
+    private static Map<String, Set<Endpoint>> groupByTargetClass(EndpointTable endpoints) {
+        Map<String, Set<Endpoint>> grouped = new HashMap<>();
+        for (int i = 0; i < endpoints.classCount(); i++) {
+            grouped.put(endpoints.className(i), new HashSet<>(endpoints.endpoints(i)));
+        }
+        return grouped;
+    }
+
+    private static Set<String> union(Set<String> first, Set<String> second) {
+        Set<String> union = new HashSet<>(first);
+        union.addAll(second);
+        return union;
+    }
+
+    /**
+     * Read the endpoints of the module of the specified path, without registering them
+     *
+     * @param path module path
+     * @return endpoints of the module
+     */
+    private static List<Endpoint> read(Path path) {
         for (ModuleLoader loader : Loaders.getLoaders()) {
             if (loader.support(path)) {
                 try {
-                    List<Endpoint> endpoints = loader.load(path);
-                    Map<String, List<Endpoint>> endpointListMap =
-                            endpoints.stream().collect(Collectors.groupingBy(Endpoint::getTargetClass));
-                    ENDPOINT_MAPPING.putAll(endpointListMap);
-                    return;
+                    return loader.load(path);
                 } catch (IOException e) {
                     logger.error("Reading module failed", e);
                 }
             }
         }
         logger.warn("Unsupported module format with {}", path.toString());
+        return Collections.emptyList();
+    }
+
+    /**
+     * Register endpoints that were not read from a module path,
+     * e.g. endpoints built by tests or benchmarks.
+     * They replace the endpoints previously registered this way for the same target classes,
+     * and are merged after the endpoints of the modules.
+     *
+     * @param endpoints endpoints to register
+     */
+    public static synchronized void register(List<Endpoint> endpoints) {
+        Map<String, List<Endpoint>> endpointListMap =
+                endpoints.stream().collect(Collectors.groupingBy(Endpoint::getTargetClass));
+        REGISTERED_ENDPOINTS.putAll(endpointListMap);
+        publish(endpointListMap.keySet());
+    }
+
+    /**
+     * Remove the endpoints registered by {@link #register(List)} for the given target classes,
+     * the endpoints of the modules are left untouched.
+     *
+     * @param targetClasses internal names or patterns of the target classes
+     */
+    public static synchronized void unregister(Collection<String> targetClasses) {
+        REGISTERED_ENDPOINTS.keySet().removeAll(targetClasses);
+        publish(targetClasses);
+    }
+
+    /**
+     * Publishes a new snapshot in which the endpoints of the given target classes are merged again
+     * from every source: the modules in module order, then the endpoints registered without a module.
+     * A method replaced by several sources keeps the first replacement, see {@link ClassEndpoints}.
+     *
+     * @param targetClasses internal names of the target classes whose endpoints changed
+     */
+    private static void publish(Collection<String> targetClasses) {
+        if (targetClasses.isEmpty())
+            return;
+        Map<String, List<Endpoint>> merged = new HashMap<>();
+        for (String targetClass : targetClasses) {
+            List<Endpoint> classEndpoints = new ArrayList<>();
+            for (EndpointTable moduleEndpoints : MODULE_ENDPOINTS.values()) {
+                classEndpoints.addAll(moduleEndpoints.endpoints(targetClass));
+            }
+            classEndpoints.addAll(REGISTERED_ENDPOINTS.getOrDefault(targetClass, Collections.emptyList()));
+            merged.put(targetClass, classEndpoints);
+        }
+        REGISTRY.updateAndGet(registry -> registry.with(merged));
     }
 
     /**
@@ -114,9 +383,13 @@ public class Modules {
         for (Path modulePath : MODULE_DIRECTORIES) {
             if (!Files.isDirectory(modulePath)) return;
             // Close the directory handle
+            // Sorted, the directory order depends on the file system
+            List<Path> paths = new ArrayList<>();
             try (DirectoryStream<Path> modulePaths = Files.newDirectoryStream(modulePath)) {
-                modulePaths.forEach(moduleResourcePaths::add);
+                modulePaths.forEach(paths::add);
             }
+            Collections.sort(paths);
+            moduleResourcePaths.addAll(paths);
         }
     }
 
@@ -124,12 +397,48 @@ public class Modules {
         moduleResourcePaths.clear();
     }
 
+    /**
+     * Cheap check for the class loading path, see {@link TargetClassFilter}.
+     *
+     * @param className internal name of the class
+     * @return {@code false} if the class has no endpoint for sure
+     */
+    public static boolean mayBeHooked(String className) {
+        return REGISTRY.get().mayBeHooked(className);
+    }
+
+    /**
+     * @return current snapshot of the endpoints, a caller doing several lookups should keep it
+     */
+    public static EndpointRegistry registry() {
+        return REGISTRY.get();
+    }
+
     public static List<Endpoint> getEndpoints(String className) {
-        return ENDPOINT_MAPPING.get(className);
+        ClassEndpoints classEndpoints = REGISTRY.get().get(className);
+        return null == classEndpoints ? null : classEndpoints.getEndpoints();
+    }
+
+    public static ClassEndpoints getClassEndpoints(String className) {
+        return REGISTRY.get().get(className);
     }
 
     public static Set<String> endpointKeySets() {
-        return ENDPOINT_MAPPING.keySet();
+        return REGISTRY.get().targetClasses();
+    }
+
+    /**
+     * @return directories the modules are scanned from
+     */
+    public static List<Path> moduleDirectories() {
+        return Collections.unmodifiableList(MODULE_DIRECTORIES);
+    }
+
+    /**
+     * @return paths of the loaded modules, in module order
+     */
+    public static synchronized List<Path> modulePaths() {
+        return new ArrayList<>(MODULE_ENDPOINTS.keySet());
     }
 
     public static void addModuleDirectory(Path directory) {
@@ -0,0 +1,241 @@
+package io.github.xtherk.bytehook.dispatch;
+
+import io.github.xtherk.bytehook.Endpoint;
+
+import java.lang.invoke.*;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runtime switch of the hooks woven with {@link io.github.xtherk.bytehook.weaver.WeaveOptions.DispatchMode#INDY}.
+ * <p>
+ * A woven method starts with a guard call site returning whether the hook is enabled, followed by the hook
+ * call site and the untouched original body. Both are {@link MutableCallSite}s, the JIT treats their targets
+ * as constants: a disabled hook folds down to the original body. Switching a hook deoptimizes the dependent
+ * code once instead of retransforming the class.
+ * <p>
+ * Endpoints are identified by {@link #endpointId(String, String, String)}. The state of an endpoint can be
+ * changed before its class is loaded, the call sites bound later start in that state.
+ *
+ * @author xtherk
+ */
+public final class HookDispatcher {
+
+    /**
+     * Descriptor of {@link #bootstrapGuard(MethodHandles.Lookup, String, MethodType, String)}
+     */
+    public static final String BOOTSTRAP_GUARD_DESCRIPTOR = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;"
+            + "Ljava/lang/invoke/MethodType;Ljava/lang/String;)Ljava/lang/invoke/CallSite;";
+    /**
+     * Descriptor of {@link #bootstrap(MethodHandles.Lookup, String, MethodType, String, MethodHandle)}
+     */
+    public static final String BOOTSTRAP_DESCRIPTOR = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;"
+            + "Ljava/lang/invoke/MethodType;Ljava/lang/String;Ljava/lang/invoke/MethodHandle;)Ljava/lang/invoke/CallSite;";
+    /**
+     * Descriptor of {@link #bootstrapModule(MethodHandles.Lookup, String, MethodType, String, String, String, String)}
+     */
+    public static final String BOOTSTRAP_MODULE_DESCRIPTOR = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;"
+            + "Ljava/lang/invoke/MethodType;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;)"
+            + "Ljava/lang/invoke/CallSite;";
+
+    private static final Map<String, HookSwitch> SWITCHES = new ConcurrentHashMap<>();
+
+    private HookDispatcher() {
+    }
+
+    /**
+     * @param targetClass      internal name of the target class
+     * @param targetMethod     name of the target method
+     * @param targetMethodDesc descriptor of the target method
+     * @return identifier of the endpoint, such as {@code com/example/Foo.bar(I)V}
+     */
+    public static String endpointId(String targetClass, String targetMethod, String targetMethodDesc) {
+        return targetClass + '.' + targetMethod + targetMethodDesc;
+    }
+
+    public static String endpointId(Endpoint endpoint) {
+        return endpointId(endpoint.getTargetClass(), endpoint.getTargetMethod(), endpoint.getTargetMethodDesc());
+    }
+
+    /**
+     * Bootstrap method of the guards of the woven methods.
+     *
+     * @param lookup     lookup of the woven class
+     * @param name       name of the target method
+     * @param type       {@code ()Z}
+     * @param endpointId identifier of the endpoint
+     * @return call site returning whether the hook is enabled
+     */
+    public static CallSite bootstrapGuard(MethodHandles.Lookup lookup, String name, MethodType type, String endpointId) {
+        return switchOf(endpointId).bind(new GuardCallSite(type));
+    }
+
+    /**
+     * Bootstrap method of the hook calls of the woven methods.
+     *
+     * @param lookup     lookup of the woven class
+     * @param name       name of the target method
+     * @param type       type of the call site, the target instance comes first for instance methods
+     * @param endpointId identifier of the endpoint
+     * @param hook       fake method
+     * @return call site bound to the current hook of the endpoint
+     */
+    public static CallSite bootstrap(MethodHandles.Lookup lookup, String name, MethodType type,
+                                     String endpointId, MethodHandle hook) {
+        return switchOf(endpointId).bind(new HookCallSite(type, hook));
+    }
+
+    /**
+     * Bootstrap method of the hook calls woven for isolated modules, the woven class can't resolve the fake class
+     * itself, it is resolved through {@link ModuleBridge}.
+     *
+     * @param lookup     lookup of the woven class
+     * @param name       name of the target method
+     * @param type       type of the call site, the target instance comes first for instance methods
+     * @param endpointId identifier of the endpoint
+     * @param fakeClass  internal name of the fake class
+     * @param fakeMethod name of the fake method
+     * @param fakeDesc   descriptor of the fake method
+     * @return call site bound to the current hook of the endpoint
+     * @throws ReflectiveOperationException if the fake method can't be found
+     */
+    public static CallSite bootstrapModule(MethodHandles.Lookup lookup, String name, MethodType type, String endpointId,
+                                           String fakeClass, String fakeMethod, String fakeDesc)
+            throws ReflectiveOperationException {
+        MethodHandle hook = ModuleBridge.findHook(lookup.lookupClass().getClassLoader(), fakeClass, fakeMethod, fakeDesc);
+        return bootstrap(lookup, name, type, endpointId, hook);
+    }
+
+    /**
+     * Calls the fake method again, or the replacement set by {@link #retarget(String, MethodHandle)}.
+     *
+     * @param endpointId identifier of the endpoint
+     */
+    public static void enable(String endpointId) {
+        switchOf(endpointId).update(true, null, false);
+    }
+
+    /**
+     * Runs the original body, the hook costs nothing while disabled.
+     *
+     * @param endpointId identifier of the endpoint
+     */
+    public static void disable(String endpointId) {
+        switchOf(endpointId).update(false, null, false);
+    }
+
+    /**
+     * Replaces the fake method of an endpoint and enables it.
+     *
+     * @param endpointId identifier of the endpoint
+     * @param hook       method handle with the type of the fake method, {@code null} restores the fake method
+     * @throws WrongMethodTypeException if the handle can't be adapted to a call site of the endpoint,
+     *                                  the endpoint is left unchanged
+     */
+    public static void retarget(String endpointId, MethodHandle hook) {
+        switchOf(endpointId).update(true, hook, true);
+    }
+
+    /**
+     * @param endpointId identifier of the endpoint
+     * @return whether the endpoint calls its hook
+     */
+    public static boolean isEnabled(String endpointId) {
+        HookSwitch hookSwitch = SWITCHES.get(endpointId);
+        return null == hookSwitch || hookSwitch.enabled;
+    }
+
+    private static HookSwitch switchOf(String endpointId) {
+        return SWITCHES.computeIfAbsent(endpointId, id -> new HookSwitch());
+    }
+
+    /**
+     * State of an endpoint and the call sites bound to it.
+     * The call sites are only weakly referenced, they belong to the woven classes.
+     */
+    private static final class HookSwitch {
+        private final List<WeakReference<SwitchCallSite>> callSites = new ArrayList<>();
+        private volatile boolean enabled = true;
+        private MethodHandle replacement;
+
+        synchronized CallSite bind(SwitchCallSite callSite) {
+            callSite.setTarget(callSite.targetOf(enabled, replacement));
+            callSites.add(new WeakReference<>(callSite));
+            return callSite;
+        }
+
+        synchronized void update(boolean enabled, MethodHandle replacement, boolean replace) {
+            MethodHandle newReplacement = replace ? replacement : this.replacement;
+            List<SwitchCallSite> live = new ArrayList<>();
+            List<MethodHandle> targets = new ArrayList<>();
+            for (Iterator<WeakReference<SwitchCallSite>> it = callSites.iterator(); it.hasNext(); ) {
+                SwitchCallSite callSite = it.next().get();
+                if (null == callSite) {
+                    it.remove();
+                    continue;
+                }
+                // Adapt everything first, a bad replacement must not leave the endpoint half switched
+                live.add(callSite);
+                targets.add(callSite.targetOf(enabled, newReplacement));
+            }
+            this.enabled = enabled;
+            this.replacement = newReplacement;
+            for (int i = 0; i < live.size(); i++) {
+                live.get(i).setTarget(targets.get(i));
+            }
+            if (!live.isEmpty()) {
+                MutableCallSite.syncAll(live.toArray(new MutableCallSite[0]));
+            }
+        }
+    }
+
+    private abstract static class SwitchCallSite extends MutableCallSite {
+
+        SwitchCallSite(MethodType type) {
+            super(type);
+        }
+
+        /**
+         * @param enabled     whether the hook is enabled
+         * @param replacement replacement of the fake method, may be {@code null}
+         * @return target of the call site for the given state
+         */
+        abstract MethodHandle targetOf(boolean enabled, MethodHandle replacement);
+    }
+
+    private static final class GuardCallSite extends SwitchCallSite {
+
+        GuardCallSite(MethodType type) {
+            super(type);
+        }
+
+        @Override
+        MethodHandle targetOf(boolean enabled, MethodHandle replacement) {
+            return MethodHandles.constant(boolean.class, enabled);
+        }
+    }
+
+    private static final class HookCallSite extends SwitchCallSite {
+        private final MethodHandle hook;
+
+        HookCallSite(MethodType type, MethodHandle hook) {
+            super(type);
+            this.hook = hook;
+        }
+
+        @Override
+        MethodHandle targetOf(boolean enabled, MethodHandle replacement) {
+            // Unreachable while disabled, the guard skips it
+            MethodHandle target = null == replacement ? hook : replacement;
+            if (target.type().parameterCount() < type().parameterCount()) {
+                // The fake method does not take the target instance
+                target = MethodHandles.dropArguments(target, 0, type().parameterType(0));
+            }
+            return target.asType(type());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package io.github.xtherk.bytehook.dispatch;
+
+import io.github.xtherk.bytehook.Modules;
+import io.github.xtherk.bytehook.loader.ModuleClassLoader;
+
+import java.lang.invoke.*;
+
+/**
+ * Entry of woven code into the modules loaded by {@link ModuleClassLoader}.
+ * <p>
+ * A fake class is resolved by the loader of its module, or by the given loader when no module defines it.
+ * Woven classes that can't use {@code invokedynamic} call {@link #invoke(String, String, String, Object[])}
+ * with boxed arguments.
+ *
+ * @author xtherk
+ */
+public final class ModuleBridge {
+
+    /**
+     * Descriptor of {@link #invoke(String, String, String, Object[])}
+     */
+    public static final String INVOKE_DESCRIPTOR =
+            "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;[Ljava/lang/Object;)Ljava/lang/Object;";
+
+    /**
+     * Descriptor of {@link #bootstrap(MethodHandles.Lookup, String, MethodType, String, String, String)}
+     */
+    public static final String BOOTSTRAP_DESCRIPTOR = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;"
+            + "Ljava/lang/invoke/MethodType;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;)"
+            + "Ljava/lang/invoke/CallSite;";
+
+    private ModuleBridge() {
+    }
+
+    /**
+     * @param fallback   loader of the fake class when it is not a module class
+     * @param fakeClass  internal name of the fake class
+     * @param fakeMethod name of the fake method
+     * @param fakeDesc   descriptor of the fake method
+     * @return handle of the fake method
+     * @throws ReflectiveOperationException if the fake method can't be found
+     */
+    public static MethodHandle findHook(ClassLoader fallback, String fakeClass, String fakeMethod, String fakeDesc)
+            throws ReflectiveOperationException {
+        ModuleClassLoader module = Modules.moduleClassLoaderOf(fakeClass);
+        if (null != module)
+            return module.findHook(fakeClass, fakeMethod, fakeDesc);
+        return ModuleClassLoader.findHook(fallback, fakeClass, fakeMethod, fakeDesc);
+    }
+
+    /**
+     * Bootstrap method of the fixed calls of a fake method, such as advice calls.
+     *
+     * @param lookup     lookup of the woven class
+     * @param name       name of the fake method
+     * @param type       type of the call site, the descriptor of the fake method
+     * @param fakeClass  internal name of the fake class
+     * @param fakeMethod name of the fake method
+     * @param fakeDesc   descriptor of the fake method
+     * @return call site bound to the fake method
+     * @throws ReflectiveOperationException if the fake method can't be found
+     */
+    public static CallSite bootstrap(MethodHandles.Lookup lookup, String name, MethodType type,
+                                     String fakeClass, String fakeMethod, String fakeDesc)
+            throws ReflectiveOperationException {
+        MethodHandle hook = findHook(lookup.lookupClass().getClassLoader(), fakeClass, fakeMethod, fakeDesc);
+        return new ConstantCallSite(hook.asType(type));
+    }
+
+    /**
+     * Calls a fake method with boxed arguments.
+     *
+     * @param fakeClass  internal name of the fake class
+     * @param fakeMethod name of the fake method
+     * @param fakeDesc   descriptor of the fake method
+     * @param arguments  arguments of the fake method, the target instance first if it requires it
+     * @return boxed result, {@code null} for {@code void}
+     * @throws Throwable anything thrown by the fake method
+     */
+    public static Object invoke(String fakeClass, String fakeMethod, String fakeDesc, Object[] arguments) throws Throwable {
+        return findHook(ClassLoader.getSystemClassLoader(), fakeClass, fakeMethod, fakeDesc).invokeWithArguments(arguments);
+    }
+}
@@ -2,31 +2,41 @@ package io.github.xtherk.bytehook.loader;
 
 import io.github.xtherk.bytehook.*;
 import io.github.xtherk.bytehook.ex.IllegalEndpointException;
+import io.github.xtherk.bytehook.processor.EndpointIndex;
 import io.github.xtherk.bytehook.util.CancelSignal;
 import io.github.xtherk.bytehook.util.MethodTuple;
+import io.github.xtherk.bytehook.util.Wildcards;
 import org.objectweb.asm.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
-import java.lang.reflect.Parameter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.stream.Collectors;
 
 /**
- * Abstract implementation of module loader
+ * Abstract implementation of module loader.
+ * <p>
+ * Endpoints are built from the annotations in the class files, neither the hook classes
+ * nor the target classes are loaded: they are only loaded when they are actually used.
+ * Modules compiled with the sdk on the processor path carry an {@link EndpointIndex},
+ * in that case the endpoints are read from the index and no class file is parsed at all.
  *
  * @author xtherk
  */
 public abstract class AbstractModuleLoader implements ModuleLoader {
 
     private static final Logger logger = LoggerFactory.getLogger(AbstractModuleLoader.class);
+
     private static final String HOOK_CLASS_DESCRIPTOR = Type.getDescriptor(HookClass.class);
+    private static final String HOOK_METHOD_DESCRIPTOR = Type.getDescriptor(HookMethod.class);
+    private static final String TARGET_CLASS_DESCRIPTOR = Type.getDescriptor(TargetClass.class);
+    private static final String BEHAVIOR_DESCRIPTOR = Type.getDescriptor(Behavior.class);
+    private static final String RETURN_VALUE_DESCRIPTOR = Type.getDescriptor(ReturnValue.class);
+    private static final String THROWN_DESCRIPTOR = Type.getDescriptor(Thrown.class);
+    private static final Type THROWABLE_TYPE = Type.getType(Throwable.class);
 
     /**
      * @param path module file or directory
@@ -35,154 +45,316 @@ public abstract class AbstractModuleLoader implements ModuleLoader {
      */
     public abstract Map<String, byte[]> parse(Path path) throws IOException;
 
+    /**
+     * @param path module file or directory
+     * @param name resource name, separated by '/'
+     * @return content of the resource, null if the module does not contain it
+     * @throws IOException Io errors
+     */
+    protected byte[] getResource(Path path, String name) throws IOException {
+        return null;
+    }
+
     @Override
     public List<Endpoint> load(Path path) throws IOException {
-        Map<String, byte[]> content = parse(path);
-        List<String> endpointClasses = getHookClasses(content);
-        if (endpointClasses.isEmpty()) {
-            return Collections.emptyList();
-        }
-        List<Endpoint> allEndpoint = new ArrayList<>();
-        for (String endpointClass : endpointClasses) {
-            try {
-                // Class<?> entrypoint = classLoader.lookupClass(endpointClass);
-                Class<?> entrypoint = Class.forName(endpointClass);
-                List<Endpoint> endpoints = readEndpoints(entrypoint);
-                allEndpoint.addAll(endpoints);
-                // classLoader.register();
-            } catch (ClassNotFoundException e) {
-                logger.error("Class endpoint was not found: ", e);
+        byte[] index = getResource(path, EndpointIndex.LOCATION);
+        if (null != index) {
+            List<Endpoint> endpoints = readIndex(index);
+            if (null != endpoints) {
+                return endpoints;
             }
+            logger.warn("Unsupported endpoint index in {}, scanning the module", path);
         }
-        return allEndpoint;
+        Map<String, byte[]> content = parse(path);
+        // Sorted, so that the endpoint order does not depend on the archive layout
+        return new TreeMap<>(content).values().parallelStream()
+                .map(AbstractModuleLoader::readEndpoints)
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
     }
 
     /**
-     * Locates module endpoint class.
+     * Reads module endpoints from an {@link EndpointIndex}.
      *
-     * @param content {@link Map} containing archive data.
-     * @return located plugin entrypoint or {@code null},
-     * if not found.
+     * @param index content of the index
+     * @return endpoints, null if the index version is not supported
      */
-    private static List<String> getHookClasses(Map<String, byte[]> content) {
-        List<String> classes = new ArrayList<>();
-        ClassVisitor visitor = new HookClassAnnotationVisitor();
-        for (Map.Entry<String, byte[]> entry : content.entrySet()) {
-            String className = entry.getKey();
-            ClassReader cr = new ClassReader(entry.getValue());
-            try {
-                cr.accept(visitor, ClassReader.SKIP_FRAMES | ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG);
-            } catch (CancelSignal signal) {
-                classes.add(className);
-            }
+    static List<Endpoint> readIndex(byte[] index) {
+        String[] lines = new String(index, StandardCharsets.UTF_8).split("\n");
+        if (lines.length == 0 || !EndpointIndex.HEADER.equals(lines[0].trim())) {
+            return null;
         }
-        return classes;
-    }
-
-    /**
-     * Reads module endpoint from the class.
-     *
-     * @param fakeClass endpoint class.
-     * @return endpoints
-     */
-    private static List<Endpoint> readEndpoints(Class<?> fakeClass) {
         List<Endpoint> endpoints = new ArrayList<>();
-        HookClass targetClass = fakeClass.getAnnotation(HookClass.class);
-        if (targetClass == null) {
-            throw new IllegalStateException("@HookClass is missing on " + fakeClass);
-        }
-        for (Method fakeMethod : fakeClass.getDeclaredMethods()) {
-            HookMethod endpoint = fakeMethod.getAnnotation(HookMethod.class);
-            if (null != endpoint) {
-                if (!Modifier.isStatic(fakeMethod.getModifiers())) {
-                    throw new IllegalEndpointException("The endpoint must have static modifier.");
-                }
-                Endpoint ep = createEndpoint(targetClass, endpoint, fakeClass, fakeMethod);
-                endpoints.add(ep);
-                if (endpoint.original()) {
-                    Endpoint sourceMethodEndpoint = new Endpoint(ep.getFakeClass(), ep.getFakeMethod(), ep.getFakeMethodDesc(),
-                            ep.getTargetClass(), ep.getTargetMethod(), ep.getTargetMethodDesc(), ep.isRequireInstance(), false
-                            , true, Behavior.SET);
-                    endpoints.add(sourceMethodEndpoint);
-                }
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            String[] fields = line.split(String.valueOf(EndpointIndex.SEPARATOR));
+            if (fields.length != EndpointIndex.FIELD_COUNT) {
+                throw new IllegalEndpointException("Malformed endpoint index entry: " + line);
             }
+            int flags = Integer.parseInt(fields[6]);
+            endpoints.add(createEndpoint(fields[0], fields[1], fields[2], fields[3], fields[4], fields[5],
+                    (flags & EndpointIndex.FLAG_REQUIRE_INSTANCE) != 0, (flags & EndpointIndex.FLAG_ORIGINAL) != 0,
+                    Behavior.valueOf(fields[7]), (flags & EndpointIndex.FLAG_RETURN_VALUE) != 0,
+                    (flags & EndpointIndex.FLAG_THROWN) != 0, (flags & EndpointIndex.FLAG_REPLACE_CALL) != 0));
         }
         return endpoints;
     }
 
-    private static void earlyLoadClass(String className) {
-        className = className.replace("/", ".");
+    /**
+     * Reads module endpoints from the class file.
+     *
+     * @param bytecode class bytecode
+     * @return endpoints, empty if the class is not annotated with {@link HookClass}
+     */
+    private static List<Endpoint> readEndpoints(byte[] bytecode) {
+        EndpointClassVisitor visitor = new EndpointClassVisitor();
         try {
-            Class.forName(className);
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
+            new ClassReader(bytecode).accept(visitor, ClassReader.SKIP_FRAMES | ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG);
+        } catch (CancelSignal signal) {
+            // Not a hook class
+            return Collections.emptyList();
         }
+        return visitor.endpoints;
     }
 
-    private static Endpoint createEndpoint(HookClass targetClass, HookMethod endpoint, Class<?> fakeClass, Method fakeMethod) {
-        String targetClassName = targetClass.value().replace(".", "/");
-        if (endpoint.original()) {
-            earlyLoadClass(targetClassName);
-        }
-        String fakeMethodDesc = Type.getMethodDescriptor(fakeMethod);
-        MethodTuple tuple = getMethodTuple(fakeMethod, endpoint);
-        String fakeMethodName = fakeMethod.getName();
-        String targetMethod = getHookMethodName(endpoint, fakeMethod);
-        String fakeClassName = Type.getInternalName(fakeClass);
-        return new Endpoint(targetClassName, targetMethod, tuple.targetMethodDesc,
-                fakeClassName, fakeMethodName, fakeMethodDesc, tuple.requireInstance,
-                endpoint.original(), false, endpoint.behavior());
+    /**
+     * Creates the endpoint of a fake method.
+     *
+     * @param targetClass     internal name of the target class
+     * @param targetMethod    name of the target method
+     * @param targetDesc      descriptor of the target method
+     * @param fakeClass       internal name of the fake class
+     * @param fakeMethod      name of the fake method
+     * @param fakeDesc        descriptor of the fake method
+     * @param requireInstance whether the first parameter of the fake method is the target instance
+     * @param original        whether the fake method calls the original method
+     * @param behavior        hook target method behavior
+     * @param passReturnValue whether the fake method receives the returned value, see {@link ReturnValue}
+     * @param passThrown      whether the fake method receives the thrown exception, see {@link Thrown}
+     * @param replaceCall     whether the calls to the target method are replaced, see {@link HookMethod#replaceCall()}
+     * @return endpoint of the fake method
+     */
+    private static Endpoint createEndpoint(String targetClass, String targetMethod, String targetDesc,
+                                           String fakeClass, String fakeMethod, String fakeDesc,
+                                           boolean requireInstance, boolean original, Behavior behavior,
+                                           boolean passReturnValue, boolean passThrown, boolean replaceCall) {
+        // The original body is copied at the placeholders of the fake method, see MethodInliner
+        return new Endpoint(targetClass, targetMethod, targetDesc, fakeClass, fakeMethod, fakeDesc,
+                requireInstance, original, replaceCall, behavior, passReturnValue, passThrown);
     }
 
-    private static MethodTuple getMethodTuple(Method method, HookMethod endpoint) {
-        Parameter[] parameters = method.getParameters();
-        if (parameters.length > 0) {
-            Parameter first = parameters[0];
-            TargetClass targetClass = first.getAnnotation(TargetClass.class);
-            if (null != targetClass) {
-                // Exclude target class instance param
-                if (parameters.length - 1 == 0) {
-                    String desc = getDescOrDefault(endpoint, Type.getMethodDescriptor(Type.getType(method.getReturnType())));
-                    return MethodTuple.of(desc, true);
-                }
-                Type[] argumentTypes = new Type[parameters.length - 1];
-                for (int i = 1; i < parameters.length; i++) {
-                    argumentTypes[i - 1] = Type.getType(parameters[i].getType());
-                }
-                String desc = getDescOrDefault(endpoint, Type.getMethodDescriptor(Type.getType(method.getReturnType()), argumentTypes));
-                return MethodTuple.of(desc, true);
-            }
+    private static MethodTuple getMethodTuple(String fakeDesc, boolean firstIsTarget, String desc,
+                                              Behavior behavior, int trailing) {
+        if (behavior != Behavior.SET) {
+            // Advice does not tell the return type, only the arguments are matched
+            Type[] argumentTypes = Type.getArgumentTypes(fakeDesc);
+            String targetDesc = Type.getMethodDescriptor(Type.VOID_TYPE,
+                    Arrays.copyOfRange(argumentTypes, firstIsTarget ? 1 : 0, argumentTypes.length - trailing));
+            return MethodTuple.of(getDescOrDefault(desc, targetDesc.substring(0, targetDesc.indexOf(')') + 1)),
+                    firstIsTarget);
+        }
+        if (firstIsTarget) {
+            // Exclude target class instance param
+            Type[] argumentTypes = Type.getArgumentTypes(fakeDesc);
+            String targetDesc = Type.getMethodDescriptor(Type.getReturnType(fakeDesc),
+                    Arrays.copyOfRange(argumentTypes, 1, argumentTypes.length));
+            return MethodTuple.of(getDescOrDefault(desc, targetDesc), true);
         }
-        String desc = getDescOrDefault(endpoint, Type.getMethodDescriptor(method));
-        return MethodTuple.of(desc, false);
+        return MethodTuple.of(getDescOrDefault(desc, fakeDesc), false);
     }
 
-    private static String getDescOrDefault(HookMethod endpoint, String defaultDesc) {
+    private static String getDescOrDefault(String desc, String defaultDesc) {
         // Preferential use of annotations
-        return endpoint.desc().isEmpty() ? defaultDesc : endpoint.desc();
+        return null == desc || desc.isEmpty() ? defaultDesc : desc;
     }
 
-    private static String getHookMethodName(HookMethod targetMethod, Method method) {
-        String methodName = targetMethod.methodName();
-        return methodName.isEmpty() ? method.getName() : methodName;
-    }
+    /**
+     * Collects the endpoints of a class annotated with {@link HookClass},
+     * throws {@link CancelSignal} as soon as it is known that the class is not one.
+     */
+    private static final class EndpointClassVisitor extends ClassVisitor {
+        private final List<Endpoint> endpoints = new ArrayList<>();
+        private String fakeClass;
+        private String targetClass;
 
-    private static final class HookClassAnnotationVisitor extends ClassVisitor {
-        HookClassAnnotationVisitor() {
+        EndpointClassVisitor() {
             super(Opcodes.ASM8);
         }
 
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            fakeClass = name;
+        }
+
         @Override
         public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
-            if (HOOK_CLASS_DESCRIPTOR.equals(descriptor)) {
-                throw CancelSignal.get();
+            if (!HOOK_CLASS_DESCRIPTOR.equals(descriptor)) {
+                return null;
             }
+            return new AnnotationVisitor(api) {
+                @Override
+                public void visit(String name, Object value) {
+                    if ("value".equals(name)) {
+                        targetClass = ((String) value).replace('.', '/');
+                        if (null != EndpointRegistry.supertypeOf(targetClass) && Wildcards.isPattern(targetClass)) {
+                            throw new IllegalEndpointException("The subtypes of a class pattern can't be hooked.");
+                        }
+                    }
+                }
+            };
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+            // Class annotations are visited before any member
+            checkHookClass();
             return null;
         }
 
         @Override
         public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
-            return super.visitMethod(access, name, descriptor, signature, exceptions);
+            checkHookClass();
+            return new EndpointMethodVisitor(this, access, name, descriptor);
+        }
+
+        @Override
+        public void visitEnd() {
+            checkHookClass();
+        }
+
+        private void checkHookClass() {
+            if (null == targetClass) {
+                throw CancelSignal.get();
+            }
+        }
+    }
+
+    /**
+     * Reads {@link HookMethod} and {@link TargetClass} of a method of a hook class.
+     */
+    private static final class EndpointMethodVisitor extends MethodVisitor {
+        private final EndpointClassVisitor owner;
+        private final int access;
+        private final String name;
+        private final String descriptor;
+        private boolean hookMethod;
+        private boolean firstIsTarget;
+        private int returnValueIndex = -1;
+        private int thrownIndex = -1;
+        private String methodName = "";
+        private String desc = "";
+        private boolean original;
+        private boolean replaceCall;
+        private Behavior behavior = Behavior.SET;
+
+        EndpointMethodVisitor(EndpointClassVisitor owner, int access, String name, String descriptor) {
+            super(Opcodes.ASM8);
+            this.owner = owner;
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String annotationDescriptor, boolean visible) {
+            if (!HOOK_METHOD_DESCRIPTOR.equals(annotationDescriptor)) {
+                return null;
+            }
+            hookMethod = true;
+            return new AnnotationVisitor(api) {
+                @Override
+                public void visit(String attribute, Object value) {
+                    switch (attribute) {
+                        case "methodName":
+                            methodName = (String) value;
+                            break;
+                        case "desc":
+                            desc = (String) value;
+                            break;
+                        case "original":
+                            original = (Boolean) value;
+                            break;
+                        case "replaceCall":
+                            replaceCall = (Boolean) value;
+                            break;
+                        default:
+                            break;
+                    }
+                }
+
+                @Override
+                public void visitEnum(String attribute, String enumDescriptor, String value) {
+                    if ("behavior".equals(attribute) && BEHAVIOR_DESCRIPTOR.equals(enumDescriptor)) {
+                        behavior = Behavior.valueOf(value);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public AnnotationVisitor visitParameterAnnotation(int parameter, String annotationDescriptor, boolean visible) {
+            if (parameter == 0 && TARGET_CLASS_DESCRIPTOR.equals(annotationDescriptor)) {
+                firstIsTarget = true;
+            } else if (RETURN_VALUE_DESCRIPTOR.equals(annotationDescriptor)) {
+                returnValueIndex = parameter;
+            } else if (THROWN_DESCRIPTOR.equals(annotationDescriptor)) {
+                thrownIndex = parameter;
+            }
+            return null;
+        }
+
+        @Override
+        public void visitEnd() {
+            if (!hookMethod) {
+                return;
+            }
+            if ((access & Opcodes.ACC_STATIC) == 0) {
+                throw new IllegalEndpointException("The endpoint must have static modifier.");
+            }
+            checkAdvice();
+            if (Endpoint.ANY_DESCRIPTOR.equals(desc) && behavior != Behavior.TIMED) {
+                throw new IllegalEndpointException("Only TIMED endpoints may match any descriptor.");
+            }
+            boolean passReturnValue = returnValueIndex >= 0;
+            boolean passThrown = thrownIndex >= 0;
+            int trailing = (passReturnValue ? 1 : 0) + (passThrown ? 1 : 0);
+            MethodTuple tuple = getMethodTuple(descriptor, firstIsTarget, desc, behavior, trailing);
+            String targetMethod = methodName.isEmpty() ? name : methodName;
+            if (replaceCall && (behavior != Behavior.SET || original || Wildcards.isPattern(owner.targetClass)
+                    || null != EndpointRegistry.supertypeOf(owner.targetClass) || Wildcards.isPattern(targetMethod))) {
+                throw new IllegalEndpointException(
+                        "Only SET endpoints of a named class and method can replace calls, without original().");
+            }
+            owner.endpoints.add(createEndpoint(owner.targetClass, targetMethod, tuple.targetMethodDesc,
+                    owner.fakeClass, name, descriptor, tuple.requireInstance, original, behavior,
+                    passReturnValue, passThrown, replaceCall));
+        }
+
+        /**
+         * Same checks as the annotation processor, for modules built without it.
+         */
+        private void checkAdvice() {
+            if ((behavior == Behavior.INSERT_BEFORE || behavior == Behavior.TIMED)
+                    && Type.getReturnType(descriptor) != Type.VOID_TYPE) {
+                throw new IllegalEndpointException("An " + behavior + " endpoint must return void.");
+            }
+            if (behavior != Behavior.INSERT_AFTER && (thrownIndex >= 0 || returnValueIndex >= 0)) {
+                throw new IllegalEndpointException("@ReturnValue and @Thrown are only supported by INSERT_AFTER endpoints.");
+            }
+            Type[] argumentTypes = Type.getArgumentTypes(descriptor);
+            int last = argumentTypes.length - 1;
+            if (thrownIndex >= 0) {
+                if (thrownIndex != last || !THROWABLE_TYPE.equals(argumentTypes[thrownIndex])) {
+                    throw new IllegalEndpointException("@Thrown must mark the last parameter, of type Throwable.");
+                }
+                last--;
+            }
+            if (returnValueIndex >= 0 && returnValueIndex != last) {
+                throw new IllegalEndpointException("@ReturnValue must follow the arguments of the target method.");
+            }
         }
     }
 }
@@ -34,6 +34,12 @@ public class DirectoriesModuleLoader extends AbstractModuleLoader {
         return content;
     }
 
+    @Override
+    protected byte[] getResource(Path basedir, String name) throws IOException {
+        Path resource = basedir.resolve(name);
+        return Files.isRegularFile(resource) ? Files.readAllBytes(resource) : null;
+    }
+
     private static String toClassName(Path basedir, Path classpath) {
         Path path = classpath.subpath(basedir.getNameCount(), classpath.getNameCount());
         String name = path.toString();
@@ -0,0 +1,82 @@
+package io.github.xtherk.bytehook.loader;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class loader of a single module.
+ * <p>
+ * Module classes see the application classes through the parent, the application never sees the module:
+ * woven code reaches the fake methods through {@link io.github.xtherk.bytehook.dispatch.ModuleBridge}.
+ * Once the module is removed and the loader is closed, its classes can be collected with the loader.
+ *
+ * @author xtherk
+ */
+public class ModuleClassLoader extends URLClassLoader {
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    private final Path module;
+    /**
+     * Resolved fake methods, key: internal class name, method name and descriptor
+     */
+    private final Map<String, MethodHandle> hooks = new ConcurrentHashMap<>();
+
+    public ModuleClassLoader(Path module, ClassLoader parent) throws MalformedURLException {
+        super(new URL[]{module.toUri().toURL()}, parent);
+        this.module = module;
+    }
+
+    public Path getModule() {
+        return module;
+    }
+
+    /**
+     * @param fakeClass  internal name of the fake class
+     * @param fakeMethod name of the fake method
+     * @param fakeDesc   descriptor of the fake method
+     * @return handle of the fake method, resolved once per loader
+     * @throws ReflectiveOperationException if the fake method can't be found
+     */
+    public MethodHandle findHook(String fakeClass, String fakeMethod, String fakeDesc) throws ReflectiveOperationException {
+        String key = fakeClass + '.' + fakeMethod + fakeDesc;
+        MethodHandle hook = hooks.get(key);
+        if (null == hook) {
+            hook = findHook(this, fakeClass, fakeMethod, fakeDesc);
+            hooks.putIfAbsent(key, hook);
+        }
+        return hook;
+    }
+
+    /**
+     * @param loader     loader of the fake class
+     * @param fakeClass  internal name of the fake class
+     * @param fakeMethod name of the fake method
+     * @param fakeDesc   descriptor of the fake method
+     * @return handle of the fake method, accessible whatever its modifiers
+     * @throws ReflectiveOperationException if the fake method can't be found
+     */
+    public static MethodHandle findHook(ClassLoader loader, String fakeClass, String fakeMethod, String fakeDesc)
+            throws ReflectiveOperationException {
+        Class<?> klass = Class.forName(fakeClass.replace('/', '.'), true, loader);
+        MethodType type = MethodType.fromMethodDescriptorString(fakeDesc, klass.getClassLoader());
+        Method method = klass.getDeclaredMethod(fakeMethod, type.parameterArray());
+        method.setAccessible(true);
+        return MethodHandles.lookup().unreflect(method);
+    }
+
+    @Override
+    public String toString() {
+        return "ModuleClassLoader[" + module + ']';
+    }
+}
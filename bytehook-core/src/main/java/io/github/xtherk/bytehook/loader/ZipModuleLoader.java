@@ -4,15 +4,18 @@ import io.github.xtherk.bytehook.util.IOUtil;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 
 /**
  * Module loader that is capable of loading modules from ZIP archives.
+ * <p>
+ * The archive is read through its central directory, so entries are filtered by name
+ * and only class files are ever inflated.
  *
  * @author xtherk
  */
@@ -26,27 +29,51 @@ public final class ZipModuleLoader extends AbstractModuleLoader {
 
     @Override
     public Map<String, byte[]> parse(Path zipFile) throws IOException {
-        InputStream source = Files.newInputStream(zipFile);
         Map<String, byte[]> content = new HashMap<>();
-        try (ZipInputStream zis = new ZipInputStream(source)) {
-            ZipEntry entry;
-            while ((entry = zis.getNextEntry()) != null) {
-                // We don't care about directories.
-                if (entry.isDirectory()) {
-                    continue;
-                }
-                byte[] bytes = IOUtil.toByteArray(zis);
+        try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
                 String name = entry.getName();
-                if (!name.endsWith(".class")) {
-                    continue; //  We are only looking for classes.
+                //  We are only looking for classes, directories and resources are never read.
+                if (entry.isDirectory() || !name.endsWith(".class")) {
+                    continue;
                 }
                 String className = name.substring(0, name.length() - 6).replace('/', '.');
-                content.put(className, bytes);
+                content.put(className, read(zip, entry));
             }
         }
         return content;
     }
 
+    @Override
+    protected byte[] getResource(Path zipFile, String name) throws IOException {
+        try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+            ZipEntry entry = zip.getEntry(name);
+            return null == entry ? null : read(zip, entry);
+        }
+    }
+
+    private static byte[] read(ZipFile zip, ZipEntry entry) throws IOException {
+        try (InputStream in = zip.getInputStream(entry)) {
+            long size = entry.getSize();
+            if (size < 0 || size > Integer.MAX_VALUE) {
+                return IOUtil.toByteArray(in);
+            }
+            // The central directory knows the inflated size, read straight into an exact array
+            byte[] bytes = new byte[(int) size];
+            int offset = 0;
+            int read;
+            while (offset < bytes.length && (read = in.read(bytes, offset, bytes.length - offset)) != -1) {
+                offset += read;
+            }
+            if (offset != bytes.length) {
+                throw new IOException("Truncated entry " + entry.getName());
+            }
+            return bytes;
+        }
+    }
+
     @Override
     public boolean support(Path path) {
         return path.toString().endsWith(".jar");
@@ -0,0 +1,242 @@
+package io.github.xtherk.bytehook.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Costs of the agent itself.
+ * <p>
+ * Counters are striped, recording from parallel class loading threads does not contend on a single field.
+ * Read them through {@link #get()} or through the {@value #OBJECT_NAME} MBean.
+ *
+ * @author xtherk
+ */
+public final class AgentMetrics implements AgentMetricsMBean {
+
+    /**
+     * Name of the MBean
+     */
+    public static final String OBJECT_NAME = "io.github.xtherk.bytehook:type=Agent";
+    /**
+     * Whether the agent registers the MBean, disabled by default
+     */
+    public static final String JMX_PROPERTY_NAME = "bh.metrics.jmx";
+    private static final Logger logger = LoggerFactory.getLogger(AgentMetrics.class);
+    private static final AgentMetrics INSTANCE = new AgentMetrics();
+
+    private final LongAdder classesInspected = new LongAdder();
+    private final LongAdder classesWoven = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder transformNanos = new LongAdder();
+    private final LongAccumulator maxTransformNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder weaverBytesIn = new LongAdder();
+    private final LongAdder weaverBytesOut = new LongAdder();
+    private final LongAdder modulesLoaded = new LongAdder();
+    private final LongAdder moduleScanNanos = new LongAdder();
+    private final LongAdder moduleLoadNanos = new LongAdder();
+    private final LongAdder classesRedirected = new LongAdder();
+    private final LongAdder callSiteNanos = new LongAdder();
+    private final LongAdder retransformedClasses = new LongAdder();
+    private final LongAdder retransformBatches = new LongAdder();
+    private final LongAdder retransformPauseNanos = new LongAdder();
+    private final LongAccumulator maxRetransformPauseNanos = new LongAccumulator(Math::max, 0);
+
+    private AgentMetrics() {
+    }
+
+    /**
+     * @return metrics of the agent
+     */
+    public static AgentMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starting the platform MBean server loads JMX and logging classes, possibly before the application
+     * configures them, so the agent only registers the MBean when asked to.
+     *
+     * @return whether {@value #JMX_PROPERTY_NAME} is {@code true}
+     */
+    public static boolean isJmxEnabled() {
+        return Boolean.parseBoolean(System.getProperty(JMX_PROPERTY_NAME, "false"));
+    }
+
+    /**
+     * Registers the MBean in the platform MBean server, registering it twice is harmless.
+     */
+    public static void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException e) {
+            logger.warn("Failed to register {}", OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * Called for every class given to the transformer.
+     */
+    public void classInspected() {
+        classesInspected.increment();
+    }
+
+    /**
+     * @param nanos    time spent weaving the class
+     * @param bytesIn  size of the original class
+     * @param bytesOut size of the woven class
+     */
+    public void classWoven(long nanos, int bytesIn, int bytesOut) {
+        classesWoven.increment();
+        transformNanos.add(nanos);
+        maxTransformNanos.accumulate(nanos);
+        weaverBytesIn.add(bytesIn);
+        weaverBytesOut.add(bytesOut);
+    }
+
+    /**
+     * @param nanos time spent screening and rewriting a class that references a redirected method
+     */
+    public void callSitesRedirected(long nanos) {
+        classesRedirected.increment();
+        callSiteNanos.add(nanos);
+    }
+
+    /**
+     * Called when a woven class is served by the woven class cache.
+     */
+    public void cacheHit() {
+        cacheHits.increment();
+    }
+
+    /**
+     * @param nanos time spent scanning the module directories
+     */
+    public void modulesScanned(long nanos) {
+        moduleScanNanos.add(nanos);
+    }
+
+    /**
+     * @param modules number of loaded modules
+     * @param nanos   time spent reading their endpoints
+     */
+    public void modulesLoaded(int modules, long nanos) {
+        modulesLoaded.add(modules);
+        moduleLoadNanos.add(nanos);
+    }
+
+    /**
+     * @param classes number of retransformed classes
+     * @param nanos   duration of the call of {@code Instrumentation.retransformClasses}
+     */
+    public void retransformBatch(int classes, long nanos) {
+        retransformedClasses.add(classes);
+        retransformBatches.increment();
+        retransformPauseNanos.add(nanos);
+        maxRetransformPauseNanos.accumulate(nanos);
+    }
+
+    @Override
+    public long getClassesInspected() {
+        return classesInspected.sum();
+    }
+
+    @Override
+    public long getClassesWoven() {
+        return classesWoven.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getTransformNanos() {
+        return transformNanos.sum();
+    }
+
+    @Override
+    public long getMaxTransformNanos() {
+        return maxTransformNanos.get();
+    }
+
+    @Override
+    public long getWeaverBytesIn() {
+        return weaverBytesIn.sum();
+    }
+
+    @Override
+    public long getWeaverBytesOut() {
+        return weaverBytesOut.sum();
+    }
+
+    @Override
+    public long getModulesLoaded() {
+        return modulesLoaded.sum();
+    }
+
+    @Override
+    public long getModuleScanNanos() {
+        return moduleScanNanos.sum();
+    }
+
+    @Override
+    public long getModuleLoadNanos() {
+        return moduleLoadNanos.sum();
+    }
+
+    @Override
+    public long getClassesRedirected() {
+        return classesRedirected.sum();
+    }
+
+    @Override
+    public long getCallSiteNanos() {
+        return callSiteNanos.sum();
+    }
+
+    @Override
+    public long getRetransformedClasses() {
+        return retransformedClasses.sum();
+    }
+
+    @Override
+    public long getRetransformBatches() {
+        return retransformBatches.sum();
+    }
+
+    @Override
+    public long getRetransformPauseNanos() {
+        return retransformPauseNanos.sum();
+    }
+
+    @Override
+    public long getMaxRetransformPauseNanos() {
+        return maxRetransformPauseNanos.get();
+    }
+
+    @Override
+    public String[] getEndpointProfiles() {
+        return Profiles.snapshots().entrySet().stream()
+                .map(entry -> entry.getKey() + ": " + entry.getValue())
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public String toString() {
+        return "inspected=" + getClassesInspected() + ", woven=" + getClassesWoven() + ", cacheHits=" + getCacheHits()
+                + ", transformMs=" + getTransformNanos() / 1_000_000.0 + ", redirected=" + getClassesRedirected()
+                + ", retransformed=" + getRetransformedClasses()
+                + ", retransformPauseMs=" + getRetransformPauseNanos() / 1_000_000.0;
+    }
+}
@@ -0,0 +1,95 @@
+package io.github.xtherk.bytehook.metrics;
+
+/**
+ * Management interface of {@link AgentMetrics}, registered as {@value AgentMetrics#OBJECT_NAME}.
+ *
+ * @author xtherk
+ */
+public interface AgentMetricsMBean {
+
+    /**
+     * @return classes seen by the transformer
+     */
+    long getClassesInspected();
+
+    /**
+     * @return classes woven by the transformer, cache hits excluded
+     */
+    long getClassesWoven();
+
+    /**
+     * @return woven classes served by the woven class cache
+     */
+    long getCacheHits();
+
+    /**
+     * @return time spent weaving classes
+     */
+    long getTransformNanos();
+
+    /**
+     * @return longest time spent weaving a single class
+     */
+    long getMaxTransformNanos();
+
+    /**
+     * @return size of the classes given to the weaver
+     */
+    long getWeaverBytesIn();
+
+    /**
+     * @return size of the classes produced by the weaver
+     */
+    long getWeaverBytesOut();
+
+    /**
+     * @return modules loaded at startup
+     */
+    long getModulesLoaded();
+
+    /**
+     * @return time spent scanning the module directories
+     */
+    long getModuleScanNanos();
+
+    /**
+     * @return time spent reading the endpoints of the modules
+     */
+    long getModuleLoadNanos();
+
+    /**
+     * @return classes whose calls were redirected, see {@link io.github.xtherk.bytehook.CallSites}
+     */
+    long getClassesRedirected();
+
+    /**
+     * @return time spent rewriting the calling classes
+     */
+    long getCallSiteNanos();
+
+    /**
+     * @return classes retransformed
+     */
+    long getRetransformedClasses();
+
+    /**
+     * @return calls of {@code Instrumentation.retransformClasses}
+     */
+    long getRetransformBatches();
+
+    /**
+     * @return time spent in {@code Instrumentation.retransformClasses}
+     */
+    long getRetransformPauseNanos();
+
+    /**
+     * @return longest single call of {@code Instrumentation.retransformClasses}
+     */
+    long getMaxRetransformPauseNanos();
+
+    /**
+     * @return profiles of the replaced methods, one {@code endpointId: profile} line each
+     * @see Profiles
+     */
+    String[] getEndpointProfiles();
+}
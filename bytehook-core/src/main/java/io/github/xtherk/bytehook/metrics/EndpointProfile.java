@@ -0,0 +1,44 @@
+package io.github.xtherk.bytehook.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Calls of a replaced method, and the time spent in its hook and in the original body called by the hook.
+ * <p>
+ * Counters are striped, threads calling the same method do not contend on a single field.
+ *
+ * @author xtherk
+ */
+public final class EndpointProfile {
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder originalCalls = new LongAdder();
+    private final LongAdder originalNanos = new LongAdder();
+
+    /**
+     * @param nanos duration of a call of the hook, the original body included
+     */
+    public void recordCall(long nanos) {
+        calls.increment();
+        this.nanos.add(nanos);
+    }
+
+    /**
+     * @param nanos duration of a call of the original body from the hook
+     */
+    public void recordOriginal(long nanos) {
+        originalCalls.increment();
+        originalNanos.add(nanos);
+    }
+
+    /**
+     * @return counts at this point in time, not atomic across the counters
+     */
+    public ProfileSnapshot snapshot() {
+        // Originals first, a call in flight is not counted as self time
+        long originalNanos = this.originalNanos.sum();
+        long originalCalls = this.originalCalls.sum();
+        return new ProfileSnapshot(calls.sum(), nanos.sum(), originalCalls, originalNanos);
+    }
+}
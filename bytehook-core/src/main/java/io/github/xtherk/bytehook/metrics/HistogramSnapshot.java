@@ -0,0 +1,77 @@
+package io.github.xtherk.bytehook.metrics;
+
+/**
+ * Counts of a {@link LatencyHistogram} at some point in time.
+ *
+ * @author xtherk
+ */
+public final class HistogramSnapshot {
+
+    private final long[] counts;
+    private final long count;
+    private final long totalNanos;
+    private final long maxNanos;
+
+    HistogramSnapshot(long[] counts, long totalNanos, long maxNanos) {
+        this.counts = counts;
+        long count = 0;
+        for (long bucket : counts) {
+            count += bucket;
+        }
+        this.count = count;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+    }
+
+    /**
+     * @return number of recorded durations
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return sum of the recorded durations
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return largest recorded duration
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * @return mean of the recorded durations, 0 if nothing was recorded
+     */
+    public double getMeanNanos() {
+        return count == 0 ? 0 : (double) totalNanos / count;
+    }
+
+    /**
+     * @param percentile percentile between 0 and 100
+     * @return upper bound of the bucket holding the percentile, capped by the largest recorded duration
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.highestValue(i), maxNanos);
+            }
+        }
+        return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count + ", mean=" + (long) getMeanNanos() + "ns, p50=" + getValueAtPercentile(50)
+                + "ns, p99=" + getValueAtPercentile(99) + "ns, max=" + maxNanos + "ns";
+    }
+}
@@ -0,0 +1,115 @@
+package io.github.xtherk.bytehook.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Log-linear histogram of durations in nanoseconds.
+ * <p>
+ * Each power of two is split into {@value #SUB_BUCKETS} linear buckets, a recorded value is off by less than
+ * 12.5% whatever its magnitude. The counts are striped by thread, recording is a few atomic additions on
+ * the stripe of the current thread: no lock and no allocation once the stripe exists.
+ *
+ * @author xtherk
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Values below {@link #SUB_BUCKETS} get a bucket each, then {@link #SUB_BUCKETS} buckets per power of two
+     */
+    static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private static final int SUM = BUCKET_COUNT;
+    private static final int MAX = BUCKET_COUNT + 1;
+    private static final int STRIPE_LENGTH = BUCKET_COUNT + 2;
+    private static final int STRIPE_COUNT = stripeCount();
+
+    /**
+     * Allocated on the first record of a thread of the stripe
+     */
+    private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<>(STRIPE_COUNT);
+
+    private static int stripeCount() {
+        int processors = Math.min(Runtime.getRuntime().availableProcessors(), 64);
+        return Integer.highestOneBit(Math.max(1, processors - 1)) << 1;
+    }
+
+    /**
+     * @param nanos duration to record, negative durations are recorded as 0
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        AtomicLongArray stripe = stripe();
+        stripe.getAndIncrement(indexOf(nanos));
+        stripe.getAndAdd(SUM, nanos);
+        long max;
+        while (nanos > (max = stripe.get(MAX)) && !stripe.compareAndSet(MAX, max, nanos)) {
+            // Retry, another thread of the stripe raised the max
+        }
+    }
+
+    private AtomicLongArray stripe() {
+        int index = (int) Thread.currentThread().getId() & (STRIPE_COUNT - 1);
+        AtomicLongArray stripe = stripes.get(index);
+        if (null == stripe) {
+            stripes.compareAndSet(index, null, new AtomicLongArray(STRIPE_LENGTH));
+            stripe = stripes.get(index);
+        }
+        return stripe;
+    }
+
+    /**
+     * @return counts merged from every stripe, not atomic with respect to concurrent records
+     */
+    public HistogramSnapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long sum = 0;
+        long max = 0;
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            AtomicLongArray stripe = stripes.get(i);
+            if (null == stripe)
+                continue;
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                counts[bucket] += stripe.get(bucket);
+            }
+            sum += stripe.get(SUM);
+            max = Math.max(max, stripe.get(MAX));
+        }
+        return new HistogramSnapshot(counts, sum, max);
+    }
+
+    /**
+     * @param value non negative value
+     * @return index of the bucket holding the value
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + sub;
+    }
+
+    /**
+     * @param index bucket index
+     * @return smallest value of the bucket
+     */
+    static long lowestValue(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int exponent = (index >> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        int sub = index & (SUB_BUCKETS - 1);
+        return (long) (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * @param index bucket index
+     * @return largest value of the bucket
+     */
+    static long highestValue(int index) {
+        return index == BUCKET_COUNT - 1 ? Long.MAX_VALUE : lowestValue(index + 1) - 1;
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.xtherk.bytehook.metrics;
+
+/**
+ * Counts of an {@link EndpointProfile} at some point in time.
+ *
+ * @author xtherk
+ */
+public final class ProfileSnapshot {
+
+    private final long calls;
+    private final long totalNanos;
+    private final long originalCalls;
+    private final long originalNanos;
+
+    ProfileSnapshot(long calls, long totalNanos, long originalCalls, long originalNanos) {
+        this.calls = calls;
+        this.totalNanos = totalNanos;
+        this.originalCalls = originalCalls;
+        this.originalNanos = originalNanos;
+    }
+
+    /**
+     * @return calls of the hooked method
+     */
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * @return time spent in the hooked method, the original body included
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return calls of the original body from the hook
+     */
+    public long getOriginalCalls() {
+        return originalCalls;
+    }
+
+    /**
+     * @return time spent in the original body
+     */
+    public long getOriginalNanos() {
+        return originalNanos;
+    }
+
+    /**
+     * @return time spent in the hook itself
+     */
+    public long getSelfNanos() {
+        return Math.max(0, totalNanos - originalNanos);
+    }
+
+    /**
+     * @return mean time spent in the hook itself per call, 0 if nothing was recorded
+     */
+    public double getMeanSelfNanos() {
+        return calls == 0 ? 0 : (double) getSelfNanos() / calls;
+    }
+
+    /**
+     * @return time spent in the hook relative to the time spent in the original body, such as 0.3 for a hook
+     * adding 30% to the method, {@code NaN} if the original body was never called
+     */
+    public double getOverhead() {
+        return originalNanos == 0 ? Double.NaN : (double) getSelfNanos() / originalNanos;
+    }
+
+    @Override
+    public String toString() {
+        String text = "calls=" + calls + ", self=" + (long) getMeanSelfNanos() + "ns/call";
+        if (originalCalls == 0)
+            return text;
+        return text + ", original=" + originalNanos / originalCalls + "ns/call, overhead="
+                + Math.round(getOverhead() * 100) + "%";
+    }
+}
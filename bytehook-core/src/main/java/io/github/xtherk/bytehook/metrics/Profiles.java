@@ -0,0 +1,110 @@
+package io.github.xtherk.bytehook.metrics;
+
+import java.lang.invoke.*;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Profiles of the replaced methods woven with {@link io.github.xtherk.bytehook.weaver.WeaveOptions#PROFILE_PROPERTY_NAME},
+ * keyed by {@link io.github.xtherk.bytehook.dispatch.HookDispatcher#endpointId(String, String, String) endpoint id}.
+ * <p>
+ * Woven methods record through {@code invokedynamic} call sites bound to their profile,
+ * classes older than Java 7 look the profile up on each call.
+ *
+ * @author xtherk
+ */
+public final class Profiles {
+
+    /**
+     * Descriptor of {@link #bootstrap(MethodHandles.Lookup, String, MethodType, String)}
+     */
+    public static final String BOOTSTRAP_DESCRIPTOR = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;"
+            + "Ljava/lang/invoke/MethodType;Ljava/lang/String;)Ljava/lang/invoke/CallSite;";
+    /**
+     * Descriptor of {@link #call(String, long)} and {@link #original(String, long)}
+     */
+    public static final String RECORD_DESCRIPTOR = "(Ljava/lang/String;J)V";
+    /**
+     * Name of the call sites recording a call of the hook
+     */
+    public static final String CALL = "call";
+    /**
+     * Name of the call sites recording a call of the original body
+     */
+    public static final String ORIGINAL = "original";
+
+    private static final Map<String, EndpointProfile> PROFILES = new ConcurrentHashMap<>();
+    private static final MethodHandle RECORD_CALL;
+    private static final MethodHandle RECORD_ORIGINAL;
+
+    static {
+        try {
+            MethodType type = MethodType.methodType(void.class, long.class);
+            RECORD_CALL = MethodHandles.lookup().findVirtual(EndpointProfile.class, "recordCall", type);
+            RECORD_ORIGINAL = MethodHandles.lookup().findVirtual(EndpointProfile.class, "recordOriginal", type);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Profiles() {
+    }
+
+    /**
+     * Bootstrap method of the record call sites of the woven methods.
+     *
+     * @param lookup     lookup of the woven class
+     * @param name       {@value #CALL} or {@value #ORIGINAL}
+     * @param type       {@code (J)V}
+     * @param endpointId id of the replaced method
+     * @return call site recording into the profile of the method
+     */
+    public static CallSite bootstrap(MethodHandles.Lookup lookup, String name, MethodType type, String endpointId) {
+        MethodHandle record = ORIGINAL.equals(name) ? RECORD_ORIGINAL : RECORD_CALL;
+        return new ConstantCallSite(record.bindTo(profile(endpointId)).asType(type));
+    }
+
+    /**
+     * @param endpointId id of the replaced method
+     * @param nanos      duration of a call of the hook
+     */
+    public static void call(String endpointId, long nanos) {
+        profile(endpointId).recordCall(nanos);
+    }
+
+    /**
+     * @param endpointId id of the replaced method
+     * @param nanos      duration of a call of the original body
+     */
+    public static void original(String endpointId, long nanos) {
+        profile(endpointId).recordOriginal(nanos);
+    }
+
+    /**
+     * @param endpointId id of the replaced method
+     * @return profile of the method, created if needed
+     */
+    public static EndpointProfile profile(String endpointId) {
+        EndpointProfile profile = PROFILES.get(endpointId);
+        return null != profile ? profile : PROFILES.computeIfAbsent(endpointId, k -> new EndpointProfile());
+    }
+
+    /**
+     * @param endpointId id of the replaced method
+     * @return snapshot of the method, {@code null} if it was never woven or called
+     */
+    public static ProfileSnapshot snapshot(String endpointId) {
+        EndpointProfile profile = PROFILES.get(endpointId);
+        return null == profile ? null : profile.snapshot();
+    }
+
+    /**
+     * @return snapshots of every profiled method, sorted by endpoint id
+     */
+    public static Map<String, ProfileSnapshot> snapshots() {
+        Map<String, ProfileSnapshot> snapshots = new TreeMap<>();
+        PROFILES.forEach((endpointId, profile) -> snapshots.put(endpointId, profile.snapshot()));
+        return snapshots;
+    }
+}
@@ -0,0 +1,93 @@
+package io.github.xtherk.bytehook.metrics;
+
+import io.github.xtherk.bytehook.Behavior;
+
+import java.lang.invoke.*;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Histograms of the methods hooked with {@link Behavior#TIMED}, keyed by
+ * {@link io.github.xtherk.bytehook.dispatch.HookDispatcher#endpointId(String, String, String) endpoint id}.
+ * <p>
+ * Woven methods record through an {@code invokedynamic} call site bound to their histogram,
+ * classes older than Java 7 look the histogram up on each call.
+ *
+ * @author xtherk
+ */
+public final class Timers {
+
+    /**
+     * Descriptor of {@link #bootstrap(MethodHandles.Lookup, String, MethodType, String)}
+     */
+    public static final String BOOTSTRAP_DESCRIPTOR = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;"
+            + "Ljava/lang/invoke/MethodType;Ljava/lang/String;)Ljava/lang/invoke/CallSite;";
+    /**
+     * Descriptor of {@link #record(String, long)}
+     */
+    public static final String RECORD_DESCRIPTOR = "(Ljava/lang/String;J)V";
+
+    private static final Map<String, LatencyHistogram> HISTOGRAMS = new ConcurrentHashMap<>();
+    private static final MethodHandle RECORD;
+
+    static {
+        try {
+            RECORD = MethodHandles.lookup().findVirtual(LatencyHistogram.class, "record",
+                    MethodType.methodType(void.class, long.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Timers() {
+    }
+
+    /**
+     * Bootstrap method of the record call sites of the woven methods.
+     *
+     * @param lookup     lookup of the woven class
+     * @param name       unused
+     * @param type       {@code (J)V}
+     * @param endpointId id of the timed method
+     * @return call site recording into the histogram of the method
+     */
+    public static CallSite bootstrap(MethodHandles.Lookup lookup, String name, MethodType type, String endpointId) {
+        return new ConstantCallSite(RECORD.bindTo(histogram(endpointId)).asType(type));
+    }
+
+    /**
+     * @param endpointId id of the timed method
+     * @param nanos      duration of a call
+     */
+    public static void record(String endpointId, long nanos) {
+        histogram(endpointId).record(nanos);
+    }
+
+    /**
+     * @param endpointId id of the timed method
+     * @return histogram of the method, created if needed
+     */
+    public static LatencyHistogram histogram(String endpointId) {
+        LatencyHistogram histogram = HISTOGRAMS.get(endpointId);
+        return null != histogram ? histogram : HISTOGRAMS.computeIfAbsent(endpointId, k -> new LatencyHistogram());
+    }
+
+    /**
+     * @param endpointId id of the timed method
+     * @return snapshot of the method, {@code null} if it was never woven or called
+     */
+    public static HistogramSnapshot snapshot(String endpointId) {
+        LatencyHistogram histogram = HISTOGRAMS.get(endpointId);
+        return null == histogram ? null : histogram.snapshot();
+    }
+
+    /**
+     * @return snapshots of every timed method, sorted by endpoint id
+     */
+    public static Map<String, HistogramSnapshot> snapshots() {
+        Map<String, HistogramSnapshot> snapshots = new TreeMap<>();
+        HISTOGRAMS.forEach((endpointId, histogram) -> snapshots.put(endpointId, histogram.snapshot()));
+        return snapshots;
+    }
+}
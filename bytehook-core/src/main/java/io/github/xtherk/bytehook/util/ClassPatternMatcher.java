@@ -0,0 +1,147 @@
+package io.github.xtherk.bytehook.util;
+
+import java.util.*;
+
+/**
+ * Compiled set of wildcard class patterns, see {@link Wildcards}.
+ * <p>
+ * The literal prefixes of the patterns, the characters before their first wildcard, are merged
+ * into a single trie over internal names. Matching a class walks the trie along its name once, and only
+ * the patterns whose whole prefix was walked have their wildcard tail checked, so the cost depends
+ * on the length of the name and the patterns sharing its package, not on the number of patterns.
+ * <p>
+ * {@link #matches(String)} is allocation-free, it is asked for every class the JVM loads.
+ *
+ * @author xtherk
+ */
+public final class ClassPatternMatcher {
+
+    public static final ClassPatternMatcher EMPTY = of(Collections.emptyList());
+
+    private static final int[] NO_PATTERNS = new int[0];
+
+    private final String[] patterns;
+    /**
+     * Sorted child characters of each node
+     */
+    private final char[][] childChars;
+    /**
+     * Child nodes of each node, in the order of {@link #childChars}
+     */
+    private final int[][] children;
+    /**
+     * Patterns whose literal prefix ends at each node
+     */
+    private final int[][] terminals;
+
+    private ClassPatternMatcher(List<String> patterns) {
+        this.patterns = patterns.toArray(new String[0]);
+        List<TreeMap<Character, Integer>> nodes = new ArrayList<>();
+        List<List<Integer>> ends = new ArrayList<>();
+        nodes.add(new TreeMap<>());
+        ends.add(new ArrayList<>());
+        for (int i = 0; i < this.patterns.length; i++) {
+            String prefix = Wildcards.literalPrefix(this.patterns[i]);
+            int node = 0;
+            for (int c = 0; c < prefix.length(); c++) {
+                Integer child = nodes.get(node).get(prefix.charAt(c));
+                if (null == child) {
+                    child = nodes.size();
+                    nodes.get(node).put(prefix.charAt(c), child);
+                    nodes.add(new TreeMap<>());
+                    ends.add(new ArrayList<>());
+                }
+                node = child;
+            }
+            ends.get(node).add(i);
+        }
+        this.childChars = new char[nodes.size()][];
+        this.children = new int[nodes.size()][];
+        this.terminals = new int[nodes.size()][];
+        for (int node = 0; node < nodes.size(); node++) {
+            TreeMap<Character, Integer> edges = nodes.get(node);
+            childChars[node] = new char[edges.size()];
+            children[node] = new int[edges.size()];
+            int edge = 0;
+            for (Map.Entry<Character, Integer> entry : edges.entrySet()) {
+                childChars[node][edge] = entry.getKey();
+                children[node][edge++] = entry.getValue();
+            }
+            List<Integer> end = ends.get(node);
+            terminals[node] = end.isEmpty() ? NO_PATTERNS : end.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * @param patterns wildcard patterns over internal class names
+     * @return matcher of the patterns, the index of a pattern is its position in the list
+     */
+    public static ClassPatternMatcher of(List<String> patterns) {
+        return new ClassPatternMatcher(patterns);
+    }
+
+    /**
+     * @return whether there is no pattern
+     */
+    public boolean isEmpty() {
+        return patterns.length == 0;
+    }
+
+    /**
+     * @param className internal name of a class, may be {@code null} for hidden classes
+     * @return whether any pattern matches the class
+     */
+    public boolean matches(String className) {
+        if (null == className || patterns.length == 0)
+            return false;
+        int node = 0;
+        for (int depth = 0; ; depth++) {
+            for (int pattern : terminals[node]) {
+                if (Wildcards.matches(patterns[pattern], depth, className, depth))
+                    return true;
+            }
+            if (depth == className.length() || (node = child(node, className.charAt(depth))) < 0)
+                return false;
+        }
+    }
+
+    /**
+     * @param className internal name of a class
+     * @return indexes of the patterns matching the class, in ascending order
+     */
+    public int[] match(String className) {
+        if (null == className || patterns.length == 0)
+            return NO_PATTERNS;
+        int[] matched = NO_PATTERNS;
+        int count = 0;
+        int node = 0;
+        for (int depth = 0; ; depth++) {
+            for (int pattern : terminals[node]) {
+                if (Wildcards.matches(patterns[pattern], depth, className, depth)) {
+                    if (count == matched.length) {
+                        matched = Arrays.copyOf(matched, Math.max(4, count * 2));
+                    }
+                    matched[count++] = pattern;
+                }
+            }
+            if (depth == className.length() || (node = child(node, className.charAt(depth))) < 0)
+                break;
+        }
+        matched = Arrays.copyOf(matched, count);
+        Arrays.sort(matched);
+        return matched;
+    }
+
+    /**
+     * @param index index of a pattern
+     * @return the pattern
+     */
+    public String pattern(int index) {
+        return patterns[index];
+    }
+
+    private int child(int node, char c) {
+        int edge = Arrays.binarySearch(childChars[node], c);
+        return edge < 0 ? -1 : children[node][edge];
+    }
+}
@@ -0,0 +1,237 @@
+package io.github.xtherk.bytehook.util;
+
+import java.util.*;
+
+/**
+ * Tells whether a class file references some methods by reading its constant pool directly,
+ * before any ASM parse.
+ * <p>
+ * A first pass compares the {@code CONSTANT_Utf8} entries with the names of the methods, byte by byte and
+ * without allocation: most classes reference none of them and are rejected there. Only when a name is found,
+ * a second pass resolves the {@code CONSTANT_Methodref} and {@code CONSTANT_InterfaceMethodref} entries
+ * to their owner, name and descriptor.
+ *
+ * @author xtherk
+ */
+public final class ConstantPoolScreen {
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+    private static final int CONSTANT_POOL_COUNT = 8;
+
+    /**
+     * Modified UTF-8 method names, by length
+     */
+    private final byte[][][] namesByLength;
+    /**
+     * Owner, name and descriptor of each method, see {@link #key(String, String, String)}
+     */
+    private final Set<String> methods;
+
+    private ConstantPoolScreen(Set<String> methods, Set<String> names) {
+        this.methods = methods;
+        int maxLength = 0;
+        Map<Integer, List<byte[]>> byLength = new HashMap<>();
+        for (String name : names) {
+            byte[] encoded = encode(name);
+            maxLength = Math.max(maxLength, encoded.length);
+            byLength.computeIfAbsent(encoded.length, k -> new ArrayList<>()).add(encoded);
+        }
+        this.namesByLength = new byte[maxLength + 1][][];
+        byLength.forEach((length, encoded) -> namesByLength[length] = encoded.toArray(new byte[0][]));
+    }
+
+    /**
+     * @param owners      internal names of the classes declaring the methods
+     * @param names       names of the methods
+     * @param descriptors descriptors of the methods
+     * @return screen for the methods, the lists are read in parallel
+     */
+    public static ConstantPoolScreen of(List<String> owners, List<String> names, List<String> descriptors) {
+        Set<String> methods = new HashSet<>();
+        for (int i = 0; i < owners.size(); i++) {
+            methods.add(key(owners.get(i), names.get(i), descriptors.get(i)));
+        }
+        return new ConstantPoolScreen(methods, new HashSet<>(names));
+    }
+
+    /**
+     * @param classfile class file bytes
+     * @return whether the constant pool references one of the methods, {@code false} for an unknown format
+     */
+    public boolean isReferencedBy(byte[] classfile) {
+        if (methods.isEmpty())
+            return false;
+        try {
+            return mayReference(classfile) && references(classfile);
+        } catch (RuntimeException e) {
+            // Truncated or malformed, the class can't be rewritten anyway
+            return false;
+        }
+    }
+
+    /**
+     * First pass, allocation-free.
+     */
+    private boolean mayReference(byte[] b) {
+        int count = readUnsignedShort(b, CONSTANT_POOL_COUNT);
+        int offset = CONSTANT_POOL_COUNT + 2;
+        for (int i = 1; i < count; i++) {
+            int tag = b[offset];
+            if (tag == CONSTANT_UTF8) {
+                int length = readUnsignedShort(b, offset + 1);
+                if (length < namesByLength.length && null != namesByLength[length]
+                        && matchesAny(b, offset + 3, namesByLength[length])) {
+                    return true;
+                }
+                offset += 3 + length;
+                continue;
+            }
+            int size = entrySize(tag);
+            if (size < 0)
+                return false;
+            if (tag == CONSTANT_LONG || tag == CONSTANT_DOUBLE) {
+                i++;
+            }
+            offset += size;
+        }
+        return false;
+    }
+
+    private static boolean matchesAny(byte[] b, int offset, byte[][] candidates) {
+        for (byte[] candidate : candidates) {
+            int i = 0;
+            while (i < candidate.length && b[offset + i] == candidate[i]) {
+                i++;
+            }
+            if (i == candidate.length)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Second pass, resolves the method references.
+     */
+    private boolean references(byte[] b) {
+        int count = readUnsignedShort(b, CONSTANT_POOL_COUNT);
+        int[] offsets = new int[count];
+        int offset = CONSTANT_POOL_COUNT + 2;
+        for (int i = 1; i < count; i++) {
+            offsets[i] = offset;
+            int tag = b[offset];
+            if (tag == CONSTANT_UTF8) {
+                offset += 3 + readUnsignedShort(b, offset + 1);
+                continue;
+            }
+            if (tag == CONSTANT_LONG || tag == CONSTANT_DOUBLE) {
+                i++;
+            }
+            offset += entrySize(tag);
+        }
+        for (int i = 1; i < count; i++) {
+            int entry = offsets[i];
+            if (entry == 0 || (b[entry] != CONSTANT_METHODREF && b[entry] != CONSTANT_INTERFACE_METHODREF))
+                continue;
+            int owner = offsets[readUnsignedShort(b, offsets[readUnsignedShort(b, entry + 1)] + 1)];
+            int nameAndType = offsets[readUnsignedShort(b, entry + 3)];
+            int name = offsets[readUnsignedShort(b, nameAndType + 1)];
+            int descriptor = offsets[readUnsignedShort(b, nameAndType + 3)];
+            if (methods.contains(key(readUtf8(b, owner), readUtf8(b, name), readUtf8(b, descriptor))))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return size of a constant pool entry other than {@code CONSTANT_Utf8}, -1 for an unknown tag
+     */
+    private static int entrySize(int tag) {
+        switch (tag) {
+            case CONSTANT_CLASS:
+            case CONSTANT_STRING:
+            case CONSTANT_METHOD_TYPE:
+            case CONSTANT_MODULE:
+            case CONSTANT_PACKAGE:
+                return 3;
+            case CONSTANT_METHOD_HANDLE:
+                return 4;
+            case CONSTANT_INTEGER:
+            case CONSTANT_FLOAT:
+            case CONSTANT_FIELDREF:
+            case CONSTANT_METHODREF:
+            case CONSTANT_INTERFACE_METHODREF:
+            case CONSTANT_NAME_AND_TYPE:
+            case CONSTANT_DYNAMIC:
+            case CONSTANT_INVOKE_DYNAMIC:
+                return 5;
+            case CONSTANT_LONG:
+            case CONSTANT_DOUBLE:
+                return 9;
+            default:
+                return -1;
+        }
+    }
+
+    private static int readUnsignedShort(byte[] b, int offset) {
+        return ((b[offset] & 0xFF) << 8) | (b[offset + 1] & 0xFF);
+    }
+
+    /**
+     * Decodes the modified UTF-8 of a {@code CONSTANT_Utf8} entry.
+     */
+    private static String readUtf8(byte[] b, int entry) {
+        int length = readUnsignedShort(b, entry + 1);
+        char[] chars = new char[length];
+        int count = 0;
+        for (int i = entry + 3, end = entry + 3 + length; i < end; ) {
+            int c = b[i++] & 0xFF;
+            if (c < 0x80) {
+                chars[count++] = (char) c;
+            } else if (c < 0xE0) {
+                chars[count++] = (char) (((c & 0x1F) << 6) | (b[i++] & 0x3F));
+            } else {
+                chars[count++] = (char) (((c & 0x0F) << 12) | ((b[i++] & 0x3F) << 6) | (b[i++] & 0x3F));
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    private static byte[] encode(String value) {
+        byte[] encoded = new byte[value.length() * 3];
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x01 && c < 0x80) {
+                encoded[length++] = (byte) c;
+            } else if (c < 0x800) {
+                encoded[length++] = (byte) (0xC0 | (c >> 6));
+                encoded[length++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                encoded[length++] = (byte) (0xE0 | (c >> 12));
+                encoded[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                encoded[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return Arrays.copyOf(encoded, length);
+    }
+
+    private static String key(String owner, String name, String descriptor) {
+        return owner + '.' + name + descriptor;
+    }
+}
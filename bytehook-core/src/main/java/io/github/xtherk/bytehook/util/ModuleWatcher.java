@@ -0,0 +1,237 @@
+package io.github.xtherk.bytehook.util;
+
+import io.github.xtherk.bytehook.Loaders;
+import io.github.xtherk.bytehook.ModuleLoader;
+import io.github.xtherk.bytehook.Modules;
+import io.github.xtherk.bytehook.loader.AbstractModuleLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.instrument.ClassDefinition;
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Watches the module directories and reloads the modules that are added, changed or removed.
+ * The whole tree of a directory module is watched, a change anywhere in it reloads the module.
+ * <p>
+ * Only the target classes whose endpoints differ are retransformed, the warm code of every other class
+ * is kept. When the hook classes of a module changed, an isolated module gets a new class loader and its
+ * target classes are retransformed. Otherwise the already loaded hook classes are redefined,
+ * the JVM only accepts changes of method bodies there.
+ *
+ * @author xtherk
+ */
+public class ModuleWatcher implements Runnable {
+
+    /**
+     * Watch the module directories, disabled by default
+     */
+    public static final String WATCH_PROPERTY_NAME = "bh.module.watch";
+    /**
+     * Milliseconds without events before a change is handled, a jar is usually written in several steps
+     */
+    public static final String QUIET_PERIOD_PROPERTY_NAME = "bh.module.watch.quiet.ms";
+    private static final Logger logger = LoggerFactory.getLogger(ModuleWatcher.class);
+    private final Instrumentation instrumentation;
+    private final Reloader reloader;
+    private final long quietPeriodMillis;
+    /**
+     * Checksums of the hook classes of each module, key: binary name of the class
+     */
+    private final Map<Path, Map<String, Long>> checksums = new HashMap<>();
+    /**
+     * Watched directories of the directory modules, value: the module they belong to
+     */
+    private final Map<Path, Path> moduleTrees = new HashMap<>();
+
+    public ModuleWatcher(Instrumentation instrumentation, Reloader reloader) {
+        this.instrumentation = instrumentation;
+        this.reloader = reloader;
+        this.quietPeriodMillis = Long.getLong(QUIET_PERIOD_PROPERTY_NAME, 500L);
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(WATCH_PROPERTY_NAME);
+    }
+
+    @Override
+    public void run() {
+        try {
+            Modules.awaitInitialization();
+            for (Path module : Modules.modulePaths()) {
+                checksums.put(module, checksumsOf(module));
+            }
+            watch();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException ignored) {
+            // Shutting down
+        } catch (IOException e) {
+            logger.error("Failed to watch the module directories", e);
+        }
+    }
+
+    private void watch() throws IOException, InterruptedException {
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            for (Path directory : Modules.moduleDirectories()) {
+                if (Files.isDirectory(directory)) {
+                    directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                    logger.info("Watching module directory {}", directory);
+                }
+            }
+            for (Path module : Modules.modulePaths()) {
+                if (Files.isDirectory(module)) {
+                    registerTree(watchService, module, module);
+                }
+            }
+            while (!Thread.currentThread().isInterrupted()) {
+                Set<Path> changed = new TreeSet<>();
+                WatchKey key = watchService.take();
+                // Collect until the directories are quiet, so a module is reloaded once per change
+                while (null != key) {
+                    collect(watchService, key, changed);
+                    key = watchService.poll(quietPeriodMillis, TimeUnit.MILLISECONDS);
+                }
+                reload(changed);
+            }
+        }
+    }
+
+    private void collect(WatchService watchService, WatchKey key, Set<Path> changed) {
+        Path directory = (Path) key.watchable();
+        // null for a module directory, whose entries are modules
+        Path module = moduleTrees.get(directory);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost, check every known module
+                changed.addAll(Modules.modulePaths());
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            changed.add(null == module ? path : module);
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                registerTree(watchService, path, null == module ? path : module);
+            }
+        }
+        if (!key.reset()) {
+            // Deleted directory
+            moduleTrees.remove(directory);
+        }
+    }
+
+    /**
+     * {@link WatchService} is not recursive, every directory of a directory module is registered.
+     *
+     * @param root   directory to register with its subdirectories
+     * @param module directory module the tree belongs to
+     */
+    private void registerTree(WatchService watchService, Path root, Path module) {
+        try (Stream<Path> walk = Files.walk(root)) {
+            for (Path directory : (Iterable<Path>) walk.filter(Files::isDirectory)::iterator) {
+                directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                moduleTrees.put(directory, module);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            logger.warn("Failed to watch the directories of module {}", module, e);
+        }
+    }
+
+    /**
+     * Reloads the given modules and retransforms the affected target classes in one pass.
+     *
+     * @param modules paths of the added, changed or removed modules
+     */
+    public void reload(Collection<Path> modules) {
+        Set<String> affected = new TreeSet<>();
+        for (Path module : modules) {
+            try {
+                boolean classesChanged = updateHookClasses(module);
+                affected.addAll(Modules.reload(module, classesChanged));
+            } catch (RuntimeException e) {
+                logger.error("Failed to reload module {}", module, e);
+            }
+        }
+        try {
+            reloader.retransform(affected);
+        } catch (RuntimeException e) {
+            // Keep watching, the next change may be applicable
+            logger.error("Failed to retransform {}", affected, e);
+        }
+    }
+
+    /**
+     * @param module module path
+     * @return whether the classes of a known module changed
+     */
+    private boolean updateHookClasses(Path module) {
+        Map<String, Long> previous = checksums.remove(module);
+        if (!Files.exists(module))
+            return false;
+        Map<String, byte[]> classes = read(module);
+        Map<String, Long> current = new HashMap<>();
+        classes.forEach((name, bytes) -> current.put(name, checksum(bytes)));
+        checksums.put(module, current);
+        if (null == previous || previous.equals(current))
+            return false;
+        if (!Modules.isIsolated()) {
+            redefineHookClasses(module, classes, previous, current);
+        }
+        return true;
+    }
+
+    private void redefineHookClasses(Path module, Map<String, byte[]> classes,
+                                     Map<String, Long> previous, Map<String, Long> current) {
+        List<ClassDefinition> definitions = new ArrayList<>();
+        for (Class<?> klass : instrumentation.getAllLoadedClasses()) {
+            String name = klass.getName();
+            Long checksum = previous.get(name);
+            Long updated = current.get(name);
+            // Removed classes can't be redefined, they stay as they are until the restart
+            if (null != checksum && null != updated && !checksum.equals(updated)) {
+                definitions.add(new ClassDefinition(klass, classes.get(name)));
+            }
+        }
+        if (definitions.isEmpty())
+            return;
+        try {
+            instrumentation.redefineClasses(definitions.toArray(new ClassDefinition[0]));
+            logger.info("Redefined {} hook classes of {}", definitions.size(), module);
+        } catch (ClassNotFoundException | UnmodifiableClassException | UnsupportedOperationException | LinkageError e) {
+            logger.warn("Can't redefine the hook classes of {}, restart to apply the changes", module, e);
+        }
+    }
+
+    private Map<String, Long> checksumsOf(Path module) {
+        Map<String, Long> current = new HashMap<>();
+        read(module).forEach((name, bytes) -> current.put(name, checksum(bytes)));
+        return current;
+    }
+
+    private static Map<String, byte[]> read(Path module) {
+        Optional<ModuleLoader> loader = Loaders.getLoader(module);
+        if (!loader.isPresent() || !(loader.get() instanceof AbstractModuleLoader))
+            return Collections.emptyMap();
+        try {
+            return ((AbstractModuleLoader) loader.get()).parse(module);
+        } catch (IOException e) {
+            logger.warn("Failed to read the classes of {}", module, e);
+            return Collections.emptyMap();
+        }
+    }
+
+    private static long checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+}
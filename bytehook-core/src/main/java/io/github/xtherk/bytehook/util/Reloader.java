@@ -1,47 +1,132 @@
 package io.github.xtherk.bytehook.util;
 
+import io.github.xtherk.bytehook.EndpointRegistry;
 import io.github.xtherk.bytehook.Modules;
 import io.github.xtherk.bytehook.ex.ReloadClassException;
+import io.github.xtherk.bytehook.metrics.AgentMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.instrument.Instrumentation;
 import java.lang.instrument.UnmodifiableClassException;
-import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.*;
 
 /**
+ * Retransforms the target classes that were loaded before their endpoints were known.
+ * <p>
+ * Each call of {@link Instrumentation#retransformClasses(Class[])} is a safepoint operation
+ * that deoptimizes dependent code, so the classes are retransformed in as few calls as possible.
+ *
  * @author xtherk
  */
 public class Reloader implements Runnable {
 
+    /**
+     * Maximum number of classes per retransformation, unbounded by default
+     */
+    public static final String BATCH_SIZE_PROPERTY_NAME = "bh.reload.batch.size";
     private static final Logger logger = LoggerFactory.getLogger(Reloader.class);
     private final Instrumentation instrumentation;
+    private final int batchSize;
 
     public Reloader(Instrumentation instrumentation) {
+        this(instrumentation, Integer.getInteger(BATCH_SIZE_PROPERTY_NAME, Integer.MAX_VALUE));
+    }
+
+    public Reloader(Instrumentation instrumentation, int batchSize) {
         this.instrumentation = instrumentation;
+        this.batchSize = batchSize > 0 ? batchSize : Integer.MAX_VALUE;
     }
 
     @Override
     public void run() {
-        while (!Modules.initialized) {
-            ThreadUtil.quietSleep(10);
+        try {
+            Modules.awaitInitialization();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        retransform(Modules.endpointKeySets());
+    }
+
+    /**
+     * Retransform the loaded classes among the given classes.
+     *
+     * @param classNames internal names of the classes, {@link Wildcards} patterns or hooked supertypes
+     */
+    public void retransform(Collection<String> classNames) {
+        if (classNames.isEmpty())
+            return;
+        if (!instrumentation.isRetransformClassesSupported()) {
+            logger.warn("Retransformation is not supported, the already loaded target classes are not hooked");
+            return;
+        }
+        Set<String> names = new HashSet<>();
+        List<String> patterns = new ArrayList<>();
+        Set<String> supertypes = new HashSet<>();
+        for (String className : classNames) {
+            String supertype = EndpointRegistry.supertypeOf(className);
+            if (null != supertype) {
+                supertypes.add(supertype.replace('/', '.'));
+            } else if (Wildcards.isPattern(className)) {
+                patterns.add(className);
+            } else {
+                names.add(className.replace('/', '.'));
+            }
         }
-        Class<?>[] loadedClasses = instrumentation.getAllLoadedClasses();
-        Map<String, Class<?>> classMap = Stream.of(loadedClasses).collect(Collectors.toMap(Class::getName, clz -> clz));
-        for (String className : Modules.endpointKeySets()) {
-            Class<?> klass = classMap.get(className.replace("/", "."));
-            if (null != klass) {
-                try {
-                    if (instrumentation.isRetransformClassesSupported()) {
-                        logger.debug("loading -> {}", className);
-                        instrumentation.retransformClasses(klass);
-                    }
-                } catch (UnmodifiableClassException e) {
-                    throw new ReloadClassException("Can't modify the specified class " + className, e);
+        ClassPatternMatcher matcher = ClassPatternMatcher.of(patterns);
+        Class<?>[] loaded = instrumentation.getAllLoadedClasses();
+        List<Class<?>> bases = new ArrayList<>();
+        if (!supertypes.isEmpty()) {
+            for (Class<?> klass : loaded) {
+                if (supertypes.contains(klass.getName()))
+                    bases.add(klass);
+            }
+        }
+        List<Class<?>> targets = new ArrayList<>();
+        for (Class<?> klass : loaded) {
+            boolean named = names.contains(klass.getName());
+            if (named || (!klass.isArray() && (isSubtype(klass, bases)
+                    || (!matcher.isEmpty() && matcher.matches(klass.getName().replace('.', '/')))))) {
+                if (instrumentation.isModifiableClass(klass)) {
+                    targets.add(klass);
+                } else if (named) {
+                    logger.warn("Can't modify the specified class {}", klass.getName());
                 }
             }
         }
+        if (targets.isEmpty())
+            return;
+
+        long pauseNanos = 0;
+        int batches = 0;
+        for (int from = 0; from < targets.size(); from += batchSize) {
+            List<Class<?>> batch = targets.subList(from, (int) Math.min((long) from + batchSize, targets.size()));
+            logger.debug("loading -> {}", batch);
+            long start = System.nanoTime();
+            try {
+                instrumentation.retransformClasses(batch.toArray(new Class<?>[0]));
+            } catch (UnmodifiableClassException e) {
+                throw new ReloadClassException("Can't modify the specified classes " + batch, e);
+            } finally {
+                long pause = System.nanoTime() - start;
+                pauseNanos += pause;
+                batches++;
+                AgentMetrics.get().retransformBatch(batch.size(), pause);
+            }
+        }
+        logger.info("Retransformed {} classes in {} batches, total pause {} ms",
+                targets.size(), batches, pauseNanos / 1_000_000.0);
+    }
+
+    /**
+     * @return whether the class is one of the loaded supertypes or extends one of them
+     */
+    private static boolean isSubtype(Class<?> klass, List<Class<?>> bases) {
+        for (Class<?> base : bases) {
+            if (base.isAssignableFrom(klass))
+                return true;
+        }
+        return false;
     }
 }
@@ -0,0 +1,138 @@
+package io.github.xtherk.bytehook.util;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Precomputed, allocation-free filter over the internal names of target classes.
+ * <p>
+ * It is asked for every class the JVM loads, so it never hashes the whole name:
+ * a name is rejected by its length, then by its first character, and finally by a bloom filter
+ * over a handful of sampled characters. Only names that pass all three checks
+ * are looked up in the endpoint mapping.
+ * <p>
+ * The filter has no false negatives, {@link #mightContain(String)} returning {@code true}
+ * only means the class may be a target.
+ *
+ * @author xtherk
+ */
+public final class TargetClassFilter {
+
+    public static final TargetClassFilter EMPTY = of(Collections.emptySet());
+
+    /**
+     * Bloom filter bits per class name, gives about 1.4% false positives with two probes.
+     */
+    private static final int BITS_PER_NAME = 16;
+
+    private final int minLength;
+    private final int maxLength;
+    /**
+     * Bitset of name lengths
+     */
+    private final long[] lengths;
+    /**
+     * Bitset of the first characters of the names, only covers ASCII.
+     */
+    private final long[] firstChars = new long[2];
+    private final boolean nonAsciiFirstChar;
+    private final long[] bloom;
+    private final int bloomMask;
+
+    private TargetClassFilter(Collection<String> classNames) {
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        for (String className : classNames) {
+            min = Math.min(min, className.length());
+            max = Math.max(max, className.length());
+        }
+        this.minLength = classNames.isEmpty() ? 1 : min;
+        this.maxLength = max;
+        this.lengths = new long[(max >>> 6) + 1];
+        int bits = Math.max(64, Integer.highestOneBit(Math.max(1, classNames.size() * BITS_PER_NAME) - 1) << 1);
+        this.bloom = new long[bits >>> 6];
+        this.bloomMask = bits - 1;
+
+        boolean nonAscii = false;
+        for (String className : classNames) {
+            int length = className.length();
+            if (length == 0) continue;
+            lengths[length >>> 6] |= 1L << length;
+            char first = className.charAt(0);
+            if (first < 128) {
+                firstChars[first >>> 6] |= 1L << first;
+            } else {
+                nonAscii = true;
+            }
+            int hash = sample(className, length);
+            setBit(hash);
+            setBit(secondProbe(hash));
+        }
+        this.nonAsciiFirstChar = nonAscii;
+    }
+
+    /**
+     * @param classNames internal names of the target classes
+     * @return filter that accepts all the given names
+     */
+    public static TargetClassFilter of(Collection<String> classNames) {
+        return new TargetClassFilter(classNames);
+    }
+
+    /**
+     * @param className internal name of the class being loaded, may be {@code null} for hidden classes
+     * @return {@code false} if the class is definitely not a target class
+     */
+    public boolean mightContain(String className) {
+        if (null == className)
+            return false;
+        int length = className.length();
+        if (length < minLength || length > maxLength)
+            return false;
+        if ((lengths[length >>> 6] & (1L << length)) == 0)
+            return false;
+        char first = className.charAt(0);
+        if (first < 128) {
+            if ((firstChars[first >>> 6] & (1L << first)) == 0)
+                return false;
+        } else if (!nonAsciiFirstChar) {
+            return false;
+        }
+        int hash = sample(className, length);
+        return isSet(hash) && isSet(secondProbe(hash));
+    }
+
+    private void setBit(int hash) {
+        int bit = hash & bloomMask;
+        bloom[bit >>> 6] |= 1L << bit;
+    }
+
+    private boolean isSet(int hash) {
+        int bit = hash & bloomMask;
+        return (bloom[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Hashes a few characters instead of the whole name.
+     * Class names mostly differ in their simple name, so the tail is sampled more densely.
+     */
+    private static int sample(String className, int length) {
+        int h = length;
+        h = 31 * h + className.charAt(length - 1);
+        h = 31 * h + className.charAt(length - 1 - (length >>> 3));
+        h = 31 * h + className.charAt(length - 1 - (length >>> 2));
+        h = 31 * h + className.charAt(length >>> 1);
+        h = 31 * h + className.charAt(length >>> 2);
+        // murmur3 finalizer
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int secondProbe(int hash) {
+        return Integer.rotateLeft(hash, 16) * 0x9E3779B9;
+    }
+}
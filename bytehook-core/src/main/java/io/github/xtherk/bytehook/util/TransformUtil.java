@@ -1,20 +1,19 @@
 package io.github.xtherk.bytehook.util;
 
-import io.github.xtherk.bytehook.Behavior;
-import io.github.xtherk.bytehook.Endpoint;
+import io.github.xtherk.bytehook.CallSites;
+import io.github.xtherk.bytehook.ClassEndpoints;
 import io.github.xtherk.bytehook.Modules;
-import io.github.xtherk.bytehook.ex.IllegalEndpointException;
+import io.github.xtherk.bytehook.weaver.CallSiteRedirector;
+import io.github.xtherk.bytehook.weaver.ClassHierarchy;
+import io.github.xtherk.bytehook.weaver.HookClassVisitor;
+import io.github.xtherk.bytehook.weaver.HookClassWriter;
+import io.github.xtherk.bytehook.weaver.WeaveOptions;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.Type;
-import org.objectweb.asm.tree.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Modifier;
-import java.util.List;
-
 /**
  * @author xtherk
  */
@@ -22,71 +21,85 @@ public class TransformUtil {
     private static final int api = Opcodes.ASM8;
     private static final Logger logger = LoggerFactory.getLogger(TransformUtil.class);
 
+    /**
+     * Weaves self-contained classes, the fake classes are called directly.
+     *
+     * @see #transform(ClassLoader, String, byte[], WeaveOptions)
+     */
     public static byte[] transform(String className, byte[] classfileBuffer) {
-        List<Endpoint> endpoints = Modules.getEndpoints(className);
+        return transform(null, className, classfileBuffer, WeaveOptions.DEFAULT);
+    }
+
+    /**
+     * Weaves with the options configured by the system properties.
+     *
+     * @see #transform(ClassLoader, String, byte[], WeaveOptions)
+     */
+    public static byte[] transform(ClassLoader loader, String className, byte[] classfileBuffer) {
+        return transform(loader, className, classfileBuffer, WeaveOptions.fromSystemProperties());
+    }
+
+    /**
+     * @param loader          loader defining the class, {@code null} for the bootstrap loader
+     * @param className       internal name of the class
+     * @param classfileBuffer class bytecode
+     * @param options         weave options
+     * @return woven bytecode or {@code null} if the class is not hooked
+     */
+    public static byte[] transform(ClassLoader loader, String className, byte[] classfileBuffer, WeaveOptions options) {
+        ClassEndpoints endpoints = Modules.getClassEndpoints(className);
         if (null == endpoints)
             return null;
+        return transform(loader, className, classfileBuffer, endpoints, options);
+    }
 
+    /**
+     * @param loader          loader defining the class, {@code null} for the bootstrap loader
+     * @param className       internal name of the class
+     * @param classfileBuffer class bytecode
+     * @param endpoints       endpoints of the class, from the registry snapshot of the caller
+     * @param options         weave options
+     * @return woven bytecode
+     */
+    public static byte[] transform(ClassLoader loader, String className, byte[] classfileBuffer,
+                                   ClassEndpoints endpoints, WeaveOptions options) {
         logger.info("The [{}] class that needs to be replaced is detected.", className);
 
-        ClassNode node = new ClassNode(api);
         ClassReader reader = new ClassReader(classfileBuffer);
-        reader.accept(node, 0);
-
-        for (Endpoint endpoint : endpoints) {
-            for (MethodNode method : node.methods) {
-                if (method.name.equals(endpoint.getTargetMethod())
-                        && method.desc.equals(endpoint.getTargetMethodDesc())) {
-
-                    proxyTargetMethod(endpoint, method);
-                    break;
-                }
-            }
-        }
-        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
-        node.accept(writer);
+        // Sharing the reader lets the writer copy the constant pool and every method
+        // that is not hooked as is, frames are only computed for the regenerated methods.
+        ClassHierarchy hierarchy = ClassHierarchy.of(loader);
+        hierarchy.define(reader);
+        ClassWriter writer = new HookClassWriter(reader, ClassWriter.COMPUTE_FRAMES, hierarchy);
+        reader.accept(new HookClassVisitor(api, writer, endpoints, options, loader), 0);
         return writer.toByteArray();
     }
 
-    private static void proxyTargetMethod(Endpoint endpoint, MethodNode method) {
-
-        if (endpoint.getBehavior() == Behavior.SET) {
-            method.tryCatchBlocks.clear();
-            method.instructions.clear();
-        }
-
-        InsnList instNodes = new InsnList();
-        Type[] argumentTypes = Type.getArgumentTypes(method.desc);
-        Type returnType = Type.getReturnType(method.desc);
-
-        boolean isStatic = Modifier.isStatic(method.access);
-        if (endpoint.isRequireInstance()) {
-            if (isStatic) {
-                throw new IllegalEndpointException("The method of being hook is a static method, which cannot provide instance.");
-            }
-            instNodes.add(new VarInsnNode(Opcodes.ALOAD, 0));
-        }
-
-        if (argumentTypes.length > 0) {
-            int slot = isStatic ? 0 : 1;
-            for (Type argumentType : argumentTypes) {
-                int opcode = OpcodeUtil.getLoadOpcodeByType(argumentType);
-                instNodes.add(new VarInsnNode(opcode, slot));
-                if (argumentType == Type.LONG_TYPE || argumentType == Type.DOUBLE_TYPE)
-                    slot += 2;
-                else
-                    slot++;
-            }
-        }
-
-        String fakeClass = endpoint.getFakeClass();
-        String fakeMethod = endpoint.getFakeMethod();
-        String fakeMethodDesc = endpoint.getFakeMethodDesc();
-
-        // Call fake method
-        instNodes.add(new MethodInsnNode(Opcodes.INVOKESTATIC, fakeClass, fakeMethod, fakeMethodDesc, false));
-        instNodes.add(new InsnNode(OpcodeUtil.getReturnOpcodeByType(returnType)));
-        method.instructions.insert(instNodes);
+    /**
+     * Redirects the calls of a class to the methods of the call sites, see {@link CallSites}.
+     * Classes that don't reference a redirected method are rejected from their constant pool.
+     *
+     * @param loader          loader defining the class, the calls of bootstrap classes are never redirected
+     * @param className       internal name of the class
+     * @param classfileBuffer class bytecode
+     * @param callSites       redirected methods, from the registry snapshot of the caller
+     * @param options         weave options
+     * @return rewritten bytecode or {@code null} if no call was redirected
+     */
+    public static byte[] redirectCallSites(ClassLoader loader, String className, byte[] classfileBuffer,
+                                           CallSites callSites, WeaveOptions options) {
+        if (null == loader || callSites.isEmpty() || callSites.isFakeClass(className)
+                || !callSites.isReferencedBy(classfileBuffer))
+            return null;
+        ClassReader reader = new ClassReader(classfileBuffer);
+        // The stack does not change around a redirected call, frames are copied as they are
+        ClassWriter writer = new ClassWriter(reader, 0);
+        CallSiteRedirector redirector = new CallSiteRedirector(api, writer, callSites, loader, options.isIsolatedModules());
+        reader.accept(redirector, 0);
+        if (redirector.getRedirected() == 0)
+            return null;
+        logger.info("Redirected {} calls of the [{}] class.", redirector.getRedirected(), className);
+        return writer.toByteArray();
     }
 
 }
@@ -0,0 +1,79 @@
+package io.github.xtherk.bytehook.util;
+
+/**
+ * Wildcard patterns over internal class names and method names.
+ * <p>
+ * {@code *} matches any run of characters within a package segment, {@code **} also crosses {@code /},
+ * every other character matches itself. {@code com/vendor/client/*Service} matches the services
+ * of the {@code com.vendor.client} package, {@code com/vendor/**Service} the services of its sub packages too.
+ *
+ * @author xtherk
+ */
+public final class Wildcards {
+
+    public static final char WILDCARD = '*';
+
+    private Wildcards() {
+    }
+
+    /**
+     * @param value class or method name
+     * @return whether the value is a pattern rather than a name
+     */
+    public static boolean isPattern(String value) {
+        return value.indexOf(WILDCARD) >= 0;
+    }
+
+    /**
+     * @param pattern wildcard pattern
+     * @param name    internal class name or method name
+     * @return whether the pattern matches the whole name
+     */
+    public static boolean matches(String pattern, String name) {
+        return matches(pattern, 0, name, 0);
+    }
+
+    /**
+     * Allocation-free, backtracks over the wildcards only.
+     *
+     * @param pattern     wildcard pattern
+     * @param patternFrom first character of the pattern to match
+     * @param name        internal class name or method name
+     * @param nameFrom    first character of the name to match
+     * @return whether the end of the pattern matches the end of the name
+     */
+    static boolean matches(String pattern, int patternFrom, String name, int nameFrom) {
+        int p = patternFrom;
+        int n = nameFrom;
+        while (p < pattern.length()) {
+            char c = pattern.charAt(p);
+            if (c == WILDCARD) {
+                boolean deep = p + 1 < pattern.length() && pattern.charAt(p + 1) == WILDCARD;
+                int next = deep ? p + 2 : p + 1;
+                if (next == pattern.length())
+                    return deep || name.indexOf('/', n) < 0;
+                for (int i = n; i <= name.length(); i++) {
+                    if (matches(pattern, next, name, i))
+                        return true;
+                    if (i < name.length() && !deep && name.charAt(i) == '/')
+                        return false;
+                }
+                return false;
+            }
+            if (n >= name.length() || name.charAt(n) != c)
+                return false;
+            p++;
+            n++;
+        }
+        return n == name.length();
+    }
+
+    /**
+     * @param pattern wildcard pattern
+     * @return characters before the first wildcard
+     */
+    public static String literalPrefix(String pattern) {
+        int wildcard = pattern.indexOf(WILDCARD);
+        return wildcard < 0 ? pattern : pattern.substring(0, wildcard);
+    }
+}
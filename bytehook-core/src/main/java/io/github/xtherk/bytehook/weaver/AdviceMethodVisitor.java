@@ -0,0 +1,362 @@
+package io.github.xtherk.bytehook.weaver;
+
+import io.github.xtherk.bytehook.Behavior;
+import io.github.xtherk.bytehook.Endpoint;
+import io.github.xtherk.bytehook.dispatch.ModuleBridge;
+import io.github.xtherk.bytehook.ex.IllegalEndpointException;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.AdviceAdapter;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Calls {@link Behavior#INSERT_BEFORE} and {@link Behavior#INSERT_AFTER} fake methods around the original body.
+ * <p>
+ * Arguments and the returned value are passed as typed values, nothing is boxed or allocated per call.
+ * When an after advice declares a thrown parameter, the body is covered by a handler that calls it and
+ * rethrows. The advice calls on the normal exits are left out of the covered ranges,
+ * so an exception thrown by an advice is not reported to the advice again.
+ *
+ * @author xtherk
+ */
+public class AdviceMethodVisitor extends AdviceAdapter {
+
+    private static final Type THROWABLE = Type.getType(Throwable.class);
+    private static final Handle BOOTSTRAP = new Handle(Opcodes.H_INVOKESTATIC,
+            "io/github/xtherk/bytehook/dispatch/ModuleBridge", "bootstrap", ModuleBridge.BOOTSTRAP_DESCRIPTOR, false);
+
+    private final List<Endpoint> before;
+    private final List<Endpoint> after;
+    private final boolean isolatedModules;
+    /**
+     * Fake methods copied into the method instead of being called, see {@link MethodInliner}
+     */
+    private final Map<Endpoint, MethodNode> inlined;
+    private boolean hasHandlers;
+    private final Type returnType;
+    private final boolean observeThrown;
+    /**
+     * Start and end labels of the ranges covered by the handler
+     */
+    private final List<Label> ranges = new ArrayList<>();
+    /**
+     * Number of instructions written before each label of {@link #ranges}
+     */
+    private final List<Integer> rangePositions = new ArrayList<>();
+    private Label rangeStart;
+    private int rangeStartPosition;
+    private final InstructionCounter counter;
+
+    /**
+     * @param api             ASM api
+     * @param mv              visitor of the target method
+     * @param access          access of the target method
+     * @param name            name of the target method
+     * @param descriptor      descriptor of the target method
+     * @param before          {@link Behavior#INSERT_BEFORE} endpoints of the method
+     * @param after           {@link Behavior#INSERT_AFTER} endpoints of the method
+     * @param isolatedModules whether the fake classes must be resolved through the module bridge
+     * @param inlined         fake methods to copy into the method instead of calling them
+     */
+    public AdviceMethodVisitor(int api, MethodVisitor mv, int access, String name, String descriptor,
+                               List<Endpoint> before, List<Endpoint> after, boolean isolatedModules,
+                               Map<Endpoint, MethodNode> inlined) {
+        this(api, new InstructionCounter(api, mv), access, name, descriptor, before, after, isolatedModules, inlined);
+    }
+
+    private AdviceMethodVisitor(int api, InstructionCounter counter, int access, String name, String descriptor,
+                                List<Endpoint> before, List<Endpoint> after, boolean isolatedModules,
+                                Map<Endpoint, MethodNode> inlined) {
+        super(api, counter, access, name, descriptor);
+        this.counter = counter;
+        this.before = before;
+        this.after = after;
+        this.isolatedModules = isolatedModules;
+        this.inlined = inlined;
+        this.returnType = Type.getReturnType(descriptor);
+        this.observeThrown = after.stream().anyMatch(Endpoint::isPassThrown);
+        for (Endpoint endpoint : before) {
+            checkInstance(endpoint);
+        }
+        for (Endpoint endpoint : after) {
+            checkInstance(endpoint);
+        }
+    }
+
+    private void checkInstance(Endpoint endpoint) {
+        if (endpoint.isRequireInstance() && (methodAccess & Opcodes.ACC_STATIC) != 0) {
+            throw new IllegalEndpointException("The method of being hook is a static method, which cannot provide instance.");
+        }
+    }
+
+    @Override
+    protected void onMethodEnter() {
+        // Constructors get here after the super constructor call, the instance is initialized
+        for (Endpoint endpoint : before) {
+            loadInstanceAndArgs(endpoint);
+            invokeFake(endpoint);
+        }
+        if (observeThrown) {
+            startRange();
+        }
+    }
+
+    @Override
+    protected void onMethodExit(int opcode) {
+        if (opcode == ATHROW || after.isEmpty())
+            return;
+        if (observeThrown) {
+            endRange();
+        }
+        int result = -1;
+        if (returnType.getSort() != Type.VOID) {
+            result = newLocal(returnType);
+            storeLocal(result);
+        }
+        for (Endpoint endpoint : after) {
+            loadInstanceAndArgs(endpoint);
+            if (endpoint.isPassReturnValue()) {
+                loadLocal(result);
+            }
+            if (endpoint.isPassThrown()) {
+                visitInsn(ACONST_NULL);
+            }
+            invokeFake(endpoint);
+            handleAdviceResult(endpoint, result);
+        }
+        if (result >= 0) {
+            loadLocal(result);
+        }
+    }
+
+    @Override
+    public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+        hasHandlers = true;
+        super.visitTryCatchBlock(start, end, handler, type);
+    }
+
+    @Override
+    public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+        // Locals are renumbered and handlers added, the woven classes are written with computed frames
+    }
+
+    @Override
+    public void visitInsn(int opcode) {
+        super.visitInsn(opcode);
+        if (observeThrown && opcode >= IRETURN && opcode <= RETURN) {
+            startRange();
+        }
+    }
+
+    @Override
+    public void visitMaxs(int maxStack, int maxLocals) {
+        if (observeThrown && null != rangeStart) {
+            endRange();
+            Label handler = ranges.get(ranges.size() - 1);
+            int thrown = newLocal(THROWABLE);
+            storeLocal(thrown);
+            for (Endpoint endpoint : after) {
+                if (!endpoint.isPassThrown())
+                    continue;
+                loadInstanceAndArgs(endpoint);
+                if (endpoint.isPassReturnValue()) {
+                    pushDefault(returnType);
+                }
+                loadLocal(thrown);
+                invokeFake(endpoint);
+                Type adviceReturn = Type.getReturnType(endpoint.getFakeMethodDesc());
+                if (adviceReturn.getSort() != Type.VOID) {
+                    pop(adviceReturn);
+                }
+            }
+            loadLocal(thrown);
+            throwException();
+            for (int i = 0; i < ranges.size(); i += 2) {
+                Label start = ranges.get(i);
+                Label end = ranges.get(i + 1);
+                // Ranges between two returns may be empty, the class file format rejects them.
+                // Counted, the offsets of the labels are only known to a ClassWriter
+                if (rangePositions.get(i) < rangePositions.get(i + 1)) {
+                    visitTryCatchBlock(start, end, handler, THROWABLE.getInternalName());
+                }
+            }
+        }
+        super.visitMaxs(maxStack, maxLocals);
+    }
+
+    private void startRange() {
+        rangeStart = mark();
+        rangeStartPosition = counter.count;
+    }
+
+    private void endRange() {
+        ranges.add(rangeStart);
+        rangePositions.add(rangeStartPosition);
+        ranges.add(mark());
+        rangePositions.add(counter.count);
+    }
+
+    private void handleAdviceResult(Endpoint endpoint, int result) {
+        Type adviceReturn = Type.getReturnType(endpoint.getFakeMethodDesc());
+        if (adviceReturn.getSort() == Type.VOID)
+            return;
+        if (result >= 0 && adviceReturn.equals(returnType)) {
+            // The advice replaces the returned value
+            storeLocal(result);
+        } else {
+            pop(adviceReturn);
+        }
+    }
+
+    private void loadInstanceAndArgs(Endpoint endpoint) {
+        if (endpoint.isRequireInstance()) {
+            loadThis();
+        }
+        loadArgs();
+    }
+
+    private void pop(Type type) {
+        visitInsn(type.getSize() == 2 ? POP2 : POP);
+    }
+
+    private void pushDefault(Type type) {
+        switch (type.getSort()) {
+            case Type.VOID:
+                break;
+            case Type.LONG:
+                push(0L);
+                break;
+            case Type.FLOAT:
+                push(0F);
+                break;
+            case Type.DOUBLE:
+                push(0D);
+                break;
+            case Type.OBJECT:
+            case Type.ARRAY:
+                visitInsn(ACONST_NULL);
+                break;
+            default:
+                push(0);
+                break;
+        }
+    }
+
+    private void invokeFake(Endpoint endpoint) {
+        MethodNode fake = inlined.get(endpoint);
+        // The blocks of an after advice would come after the blocks of the method, and would not be the innermost ones
+        if (null != fake && (fake.tryCatchBlocks.isEmpty() || endpoint.getBehavior() == Behavior.INSERT_BEFORE || !hasHandlers)) {
+            // The copy is written past this visitor, its locals are allocated here
+            MethodInliner inliner = new MethodInliner(mv, this::newLocal);
+            inliner.inline(fake, Type.getArgumentTypes(endpoint.getFakeMethodDesc()));
+            inliner.visitTryCatchBlocks();
+            return;
+        }
+        if (isolatedModules) {
+            // The fake class is not visible from the woven class
+            visitInvokeDynamicInsn(endpoint.getFakeMethod(), endpoint.getFakeMethodDesc(), BOOTSTRAP,
+                    endpoint.getFakeClass(), endpoint.getFakeMethod(), endpoint.getFakeMethodDesc());
+        } else {
+            visitMethodInsn(INVOKESTATIC, endpoint.getFakeClass(), endpoint.getFakeMethod(),
+                    endpoint.getFakeMethodDesc(), false);
+        }
+    }
+
+    /**
+     * Counts the instructions written to the method, including the inlined copies written past the adapter.
+     */
+    private static final class InstructionCounter extends MethodVisitor {
+
+        private int count;
+
+        InstructionCounter(int api, MethodVisitor mv) {
+            super(api, mv);
+        }
+
+        @Override
+        public void visitInsn(int opcode) {
+            count++;
+            super.visitInsn(opcode);
+        }
+
+        @Override
+        public void visitIntInsn(int opcode, int operand) {
+            count++;
+            super.visitIntInsn(opcode, operand);
+        }
+
+        @Override
+        public void visitVarInsn(int opcode, int var) {
+            count++;
+            super.visitVarInsn(opcode, var);
+        }
+
+        @Override
+        public void visitTypeInsn(int opcode, String type) {
+            count++;
+            super.visitTypeInsn(opcode, type);
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+            count++;
+            super.visitFieldInsn(opcode, owner, name, descriptor);
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+            count++;
+            super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle,
+                                           Object... bootstrapMethodArguments) {
+            count++;
+            super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+        }
+
+        @Override
+        public void visitJumpInsn(int opcode, Label label) {
+            count++;
+            super.visitJumpInsn(opcode, label);
+        }
+
+        @Override
+        public void visitLdcInsn(Object value) {
+            count++;
+            super.visitLdcInsn(value);
+        }
+
+        @Override
+        public void visitIincInsn(int var, int increment) {
+            count++;
+            super.visitIincInsn(var, increment);
+        }
+
+        @Override
+        public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+            count++;
+            super.visitTableSwitchInsn(min, max, dflt, labels);
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+            count++;
+            super.visitLookupSwitchInsn(dflt, keys, labels);
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+            count++;
+            super.visitMultiANewArrayInsn(descriptor, numDimensions);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.xtherk.bytehook.weaver;
+
+import io.github.xtherk.bytehook.Endpoint;
+import io.github.xtherk.bytehook.dispatch.ModuleBridge;
+import io.github.xtherk.bytehook.ex.IllegalEndpointException;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+
+import java.lang.reflect.Modifier;
+
+/**
+ * Replaces the body of the target method with a boxed call through {@link ModuleBridge}.
+ * <p>
+ * Used for isolated modules where {@code invokedynamic} is not possible: class files older than Java 7
+ * and constructors. Slower than {@link DispatchMethodVisitor}, but the woven class does not
+ * reference the fake class.
+ *
+ * @author xtherk
+ */
+public class BridgeMethodVisitor extends ReplaceMethodVisitor {
+
+    private static final String BRIDGE = "io/github/xtherk/bytehook/dispatch/ModuleBridge";
+
+    private final String name;
+
+    public BridgeMethodVisitor(int api, MethodVisitor mv, Endpoint endpoint, int access, String name, String descriptor) {
+        super(api, mv, endpoint, access, descriptor);
+        this.name = name;
+    }
+
+    @Override
+    protected void proxyTargetMethod(MethodVisitor mv) {
+        GeneratorAdapter generator = new GeneratorAdapter(mv, access, name, descriptor);
+        Type[] argumentTypes = Type.getArgumentTypes(descriptor);
+        Type returnType = Type.getReturnType(descriptor);
+        boolean requireInstance = endpoint.isRequireInstance();
+        if (requireInstance && Modifier.isStatic(access)) {
+            throw new IllegalEndpointException("The method of being hook is a static method, which cannot provide instance.");
+        }
+
+        generator.push(endpoint.getFakeClass());
+        generator.push(endpoint.getFakeMethod());
+        generator.push(endpoint.getFakeMethodDesc());
+        int offset = requireInstance ? 1 : 0;
+        generator.push(argumentTypes.length + offset);
+        generator.newArray(Type.getType(Object.class));
+        if (requireInstance) {
+            generator.dup();
+            generator.push(0);
+            generator.loadThis();
+            generator.arrayStore(Type.getType(Object.class));
+        }
+        for (int i = 0; i < argumentTypes.length; i++) {
+            generator.dup();
+            generator.push(i + offset);
+            generator.loadArg(i);
+            generator.valueOf(argumentTypes[i]);
+            generator.arrayStore(Type.getType(Object.class));
+        }
+        generator.visitMethodInsn(Opcodes.INVOKESTATIC, BRIDGE, "invoke", ModuleBridge.INVOKE_DESCRIPTOR, false);
+        if (returnType.getSort() == Type.VOID) {
+            generator.pop();
+        } else {
+            generator.unbox(returnType);
+        }
+        generator.returnValue();
+    }
+}
@@ -0,0 +1,141 @@
+package io.github.xtherk.bytehook.weaver;
+
+import io.github.xtherk.bytehook.CallSites;
+import io.github.xtherk.bytehook.Endpoint;
+import io.github.xtherk.bytehook.dispatch.HookDispatcher;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Redirects the calls to the methods of {@link CallSites} to their fake methods:
+ * <pre>
+ * target.method(args)  becomes  Fake.method(target, args)
+ * </pre>
+ * The operand stack is the same before and after the call, so the frames of the class are kept as they are.
+ * Constructor and {@code super} calls are never redirected, nor the calls of a class that can't see the fake class,
+ * or {@link HookDispatcher} for isolated modules.
+ *
+ * @author xtherk
+ */
+public class CallSiteRedirector extends ClassVisitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(CallSiteRedirector.class);
+    private static final String DISPATCHER = "io/github/xtherk/bytehook/dispatch/HookDispatcher";
+    private static final Handle BOOTSTRAP_MODULE = new Handle(Opcodes.H_INVOKESTATIC,
+            DISPATCHER, "bootstrapModule", HookDispatcher.BOOTSTRAP_MODULE_DESCRIPTOR, false);
+    /**
+     * Class file of the dispatcher of the agent, a loader with another copy would bind to another dispatcher
+     */
+    private static final URL DISPATCHER_RESOURCE = HookDispatcher.class.getResource("HookDispatcher.class");
+
+    private final CallSites callSites;
+    private final ClassLoader loader;
+    private final boolean isolatedModules;
+    /**
+     * key: fake class, value: whether the calling class can reference it
+     */
+    private final Map<String, Boolean> visibleFakeClasses = new HashMap<>();
+    private Boolean dispatcherVisible;
+    private String className;
+    private int version;
+    private int redirected;
+
+    /**
+     * @param api             ASM api
+     * @param cv              visitor of the rewritten class
+     * @param callSites       redirected methods
+     * @param loader          loader of the calling class
+     * @param isolatedModules whether the fake classes must be resolved through the module bridge
+     */
+    public CallSiteRedirector(int api, ClassVisitor cv, CallSites callSites, ClassLoader loader,
+                              boolean isolatedModules) {
+        super(api, cv);
+        this.callSites = callSites;
+        this.loader = loader;
+        this.isolatedModules = isolatedModules;
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        this.className = name;
+        this.version = version & 0xFFFF;
+        super.visit(version, access, name, signature, superName, interfaces);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+        return new MethodVisitor(api, super.visitMethod(access, name, descriptor, signature, exceptions)) {
+            @Override
+            public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+                Endpoint endpoint = opcode == Opcodes.INVOKESPECIAL ? null : callSites.find(owner, name, descriptor);
+                if (null == endpoint || !redirect(endpoint, opcode, owner, name, descriptor)) {
+                    super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+                }
+            }
+
+            private boolean redirect(Endpoint endpoint, int opcode, String owner, String name, String descriptor) {
+                boolean isStatic = opcode == Opcodes.INVOKESTATIC;
+                String callDesc = isStatic ? descriptor : "(L" + owner + ';' + descriptor.substring(1);
+                if (isStatic == endpoint.isRequireInstance() || !callDesc.equals(endpoint.getFakeMethodDesc())) {
+                    logger.warn("Can't redirect the call to {}.{}{} in {}, {}.{}{} does not take the same operands",
+                            owner, name, descriptor, className, endpoint.getFakeClass(), endpoint.getFakeMethod(),
+                            endpoint.getFakeMethodDesc());
+                    return false;
+                }
+                if (isolatedModules ? !isDispatcherVisible() : !isVisible(endpoint.getFakeClass())) {
+                    logger.debug("Can't redirect the call to {}.{}{} in {}, {} is not visible from its loader",
+                            owner, name, descriptor, className, isolatedModules ? DISPATCHER : endpoint.getFakeClass());
+                    return false;
+                }
+                if (!isolatedModules) {
+                    super.visitMethodInsn(Opcodes.INVOKESTATIC, endpoint.getFakeClass(), endpoint.getFakeMethod(),
+                            endpoint.getFakeMethodDesc(), false);
+                } else if (version >= Opcodes.V1_7) {
+                    // A method handle constant would be resolved by the loader of the calling class
+                    super.visitInvokeDynamicInsn(name, callDesc, BOOTSTRAP_MODULE,
+                            HookDispatcher.endpointId(owner, name, descriptor), endpoint.getFakeClass(),
+                            endpoint.getFakeMethod(), endpoint.getFakeMethodDesc());
+                } else {
+                    logger.warn("Can't redirect the call to {}.{}{} in {}, isolated modules need a Java 7 class file",
+                            owner, name, descriptor, className);
+                    return false;
+                }
+                redirected++;
+                return true;
+            }
+        };
+    }
+
+    private boolean isVisible(String fakeClass) {
+        return visibleFakeClasses.computeIfAbsent(fakeClass,
+                k -> null != loader && null != loader.getResource(fakeClass + ".class"));
+    }
+
+    /**
+     * The bootstrap method of the call sites is resolved by the loader of the calling class,
+     * e.g. the platform class loader can't see it.
+     */
+    private boolean isDispatcherVisible() {
+        if (null == dispatcherVisible) {
+            URL resource = null == loader ? null : loader.getResource(DISPATCHER + ".class");
+            dispatcherVisible = null != resource
+                    && (null == DISPATCHER_RESOURCE || DISPATCHER_RESOURCE.toString().equals(resource.toString()));
+        }
+        return dispatcherVisible;
+    }
+
+    /**
+     * @return number of redirected calls
+     */
+    public int getRedirected() {
+        return redirected;
+    }
+}
@@ -0,0 +1,368 @@
+package io.github.xtherk.bytehook.weaver;
+
+import io.github.xtherk.bytehook.util.IOUtil;
+import lombok.Getter;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class hierarchy read from class files instead of {@link Class} objects.
+ * <p>
+ * A transformer must not load classes: it causes extra class loading, may deadlock with parallel
+ * class loaders and ends in {@link ClassCircularityError} when the class being transformed is involved.
+ * The hierarchy is read from the class file resources of the loader instead,
+ * and cached per class loader so that lookups are shared across transforms. A hierarchy only references
+ * its loader weakly, so it never keeps a loader alive. Class files that can't be found are remembered
+ * in a bounded set, they may be defined later.
+ * <p>
+ * The hooked supertypes of the classes passing through the transformer are found by
+ * {@link #supertypesAmong(ClassReader, Set)} from their header: the supertypes of each class are memoized,
+ * so the supertypes of a new class are found by looking up its direct super class and interfaces,
+ * and the class file of a parent is read at most once per loader. The results are kept for as long as the
+ * hooked supertypes do not change, the headers of the classes are not recorded.
+ *
+ * @author xtherk
+ */
+public final class ClassHierarchy {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClassHierarchy.class);
+    public static final String OBJECT = "java/lang/Object";
+    /**
+     * Bootstrap classes, also used when the class loader is unknown
+     */
+    private static final ClassHierarchy BOOTSTRAP = new ClassHierarchy(null);
+    private static final Map<ClassLoader, ClassHierarchy> HIERARCHIES = new WeakHashMap<>();
+    /**
+     * Bound of the class files remembered as missing, the set is emptied when it is full
+     */
+    private static final int MAX_MISSING = 4096;
+    public static final String[] NO_SUPERTYPES = new String[0];
+
+    /**
+     * {@code null} for the bootstrap class loader
+     */
+    private final WeakReference<ClassLoader> loader;
+    private final Map<String, ClassInfo> classes = new ConcurrentHashMap<>();
+    private final Set<String> missing = ConcurrentHashMap.newKeySet();
+    /**
+     * Memoized {@link #supertypesAmong(String, Set)} of the classes with hooked supertypes,
+     * only valid for the same set of supertypes
+     */
+    private final Map<String, Supertypes> supertypes = new ConcurrentHashMap<>();
+    /**
+     * Classes without hooked supertypes, value: the set of supertypes they were looked up with
+     */
+    private final Map<String, Set<String>> unhooked = new ConcurrentHashMap<>();
+    /**
+     * Set of supertypes the memoized results are stored with. Every snapshot of the registry has its own set,
+     * an equal set of a later snapshot is mapped to it through {@link #alias} instead of dropping the results.
+     */
+    private volatile Set<String> memoTypes = Collections.emptySet();
+    private volatile Set<String> alias;
+
+    private ClassHierarchy(ClassLoader loader) {
+        this.loader = null == loader ? null : new WeakReference<>(loader);
+    }
+
+    /**
+     * @param loader class loader of the classes, {@code null} for the bootstrap class loader
+     * @return hierarchy cache of the class loader
+     */
+    public static ClassHierarchy of(ClassLoader loader) {
+        if (null == loader)
+            return BOOTSTRAP;
+        synchronized (HIERARCHIES) {
+            return HIERARCHIES.computeIfAbsent(loader, ClassHierarchy::new);
+        }
+    }
+
+    /**
+     * Record a class whose bytecode is already at hand, e.g. the class being transformed.
+     *
+     * @param reader reader of the class
+     */
+    public void define(ClassReader reader) {
+        classes.put(reader.getClassName(), ClassInfo.of(reader));
+        missing.remove(reader.getClassName());
+        supertypes.remove(reader.getClassName());
+        unhooked.remove(reader.getClassName());
+    }
+
+    /**
+     * @param internalName internal name of the class
+     * @return class information or {@code null} if the class file could not be found
+     */
+    public ClassInfo get(String internalName) {
+        ClassHierarchy hierarchy = isBootstrapClass(internalName) ? BOOTSTRAP : this;
+        ClassInfo info = hierarchy.classes.get(internalName);
+        if (null == info && !hierarchy.missing.contains(internalName)) {
+            info = hierarchy.read(internalName);
+            if (null != info) {
+                hierarchy.classes.put(internalName, info);
+            } else {
+                if (hierarchy.missing.size() >= MAX_MISSING) {
+                    hierarchy.missing.clear();
+                }
+                hierarchy.missing.add(internalName);
+            }
+        }
+        return info;
+    }
+
+    /**
+     * Same contract as {@link org.objectweb.asm.ClassWriter#getCommonSuperClass(String, String)}.
+     *
+     * @param type1 internal name of a class
+     * @param type2 internal name of another class
+     * @return internal name of the common super class of the two classes
+     */
+    public String getCommonSuperClass(String type1, String type2) {
+        if (type1.equals(type2))
+            return type1;
+        if (isAssignableFrom(type1, type2))
+            return type1;
+        if (isAssignableFrom(type2, type1))
+            return type2;
+        ClassInfo info1 = get(type1);
+        ClassInfo info2 = get(type2);
+        if (null == info1 || null == info2) {
+            logger.debug("Unresolved hierarchy of {} or {}, falling back to {}", type1, type2, OBJECT);
+            return OBJECT;
+        }
+        if (info1.isInterface() || info2.isInterface())
+            return OBJECT;
+        Set<String> supers = new HashSet<>();
+        for (String type = type1; null != type; type = superName(type)) {
+            supers.add(type);
+        }
+        for (String type = type2; null != type; type = superName(type)) {
+            if (supers.contains(type))
+                return type;
+        }
+        return OBJECT;
+    }
+
+    /**
+     * @param type  internal name of a class
+     * @param other internal name of another class
+     * @return {@code true} if {@code other} is {@code type} or one of its subtypes
+     */
+    public boolean isAssignableFrom(String type, String other) {
+        if (OBJECT.equals(type))
+            return true;
+        Deque<String> pending = new ArrayDeque<>();
+        Set<String> visited = new HashSet<>();
+        pending.push(other);
+        while (!pending.isEmpty()) {
+            String current = pending.pop();
+            if (type.equals(current))
+                return true;
+            if (!visited.add(current))
+                continue;
+            ClassInfo info = get(current);
+            if (null == info)
+                continue;
+            if (null != info.getSuperName())
+                pending.push(info.getSuperName());
+            for (String itf : info.getInterfaces()) {
+                pending.push(itf);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param internalName internal name of a class
+     * @param types        internal names of the supertypes to look for, the set is compared by identity
+     * @return the given types that the class extends or implements, directly or not, excluding the class itself
+     */
+    public String[] supertypesAmong(String internalName, Set<String> types) {
+        ClassHierarchy hierarchy = isBootstrapClass(internalName) ? BOOTSTRAP : this;
+        types = hierarchy.canonical(types);
+        String[] found = hierarchy.memoized(internalName, types);
+        if (null != found)
+            return found;
+        // Only the result is cached, not the header
+        ClassInfo info = hierarchy.classes.get(internalName);
+        if (null == info && !hierarchy.missing.contains(internalName)) {
+            info = hierarchy.read(internalName);
+        }
+        found = null == info ? NO_SUPERTYPES : collect(info, types);
+        hierarchy.memoize(internalName, types, found);
+        return found;
+    }
+
+    /**
+     * Same as {@link #supertypesAmong(String, Set)} for a class whose bytecode is at hand,
+     * e.g. the class being transformed, which may not have a class file.
+     *
+     * @param reader reader of the class
+     * @param types  internal names of the supertypes to look for, the set is compared by identity
+     * @return the given types that the class extends or implements, directly or not, excluding the class itself
+     */
+    public String[] supertypesAmong(ClassReader reader, Set<String> types) {
+        ClassHierarchy hierarchy = isBootstrapClass(reader.getClassName()) ? BOOTSTRAP : this;
+        types = hierarchy.canonical(types);
+        String[] found = collect(ClassInfo.of(reader), types);
+        hierarchy.memoize(reader.getClassName(), types, found);
+        return found;
+    }
+
+    private String[] collect(ClassInfo info, Set<String> types) {
+        Set<String> collected = new LinkedHashSet<>();
+        if (null != info.getSuperName()) {
+            collect(info.getSuperName(), types, collected);
+        }
+        for (String itf : info.getInterfaces()) {
+            collect(itf, types, collected);
+        }
+        return collected.isEmpty() ? NO_SUPERTYPES : collected.toArray(NO_SUPERTYPES);
+    }
+
+    private void collect(String parent, Set<String> types, Set<String> collected) {
+        if (types.contains(parent)) {
+            collected.add(parent);
+        }
+        Collections.addAll(collected, supertypesAmong(parent, types));
+    }
+
+    /**
+     * @param types supertypes looked up
+     * @return the set the results of these supertypes are memoized with
+     */
+    private Set<String> canonical(Set<String> types) {
+        Set<String> current = memoTypes;
+        if (types == current || types == alias)
+            return current;
+        if (types.equals(current)) {
+            alias = types;
+            return current;
+        }
+        synchronized (this) {
+            if (memoTypes == current) {
+                // Other supertypes are hooked, the results of the previous ones are useless
+                supertypes.clear();
+                unhooked.clear();
+                alias = null;
+                memoTypes = types;
+            }
+            return canonical(types);
+        }
+    }
+
+    private String[] memoized(String internalName, Set<String> types) {
+        if (unhooked.get(internalName) == types)
+            return NO_SUPERTYPES;
+        Supertypes memo = supertypes.get(internalName);
+        return null != memo && memo.types == types ? memo.found : null;
+    }
+
+    private void memoize(String internalName, Set<String> types, String[] found) {
+        if (found.length > 0) {
+            supertypes.put(internalName, new Supertypes(types, found));
+            unhooked.remove(internalName);
+            return;
+        }
+        supertypes.remove(internalName);
+        unhooked.put(internalName, types);
+    }
+
+    /**
+     * Same as {@link #supertypesAmong(String, Set)} for a loaded class, e.g. a class being retransformed.
+     *
+     * @param klass loaded class
+     * @param types internal names of the supertypes to look for
+     * @return the given types that the class extends or implements, directly or not, excluding the class itself
+     */
+    public static String[] supertypesAmong(Class<?> klass, Set<String> types) {
+        Set<String> found = new LinkedHashSet<>();
+        Deque<Class<?>> pending = new ArrayDeque<>();
+        Set<Class<?>> visited = new HashSet<>();
+        pending.push(klass);
+        while (!pending.isEmpty()) {
+            Class<?> current = pending.pop();
+            if (!visited.add(current))
+                continue;
+            if (current != klass) {
+                String name = current.getName().replace('.', '/');
+                if (types.contains(name))
+                    found.add(name);
+            }
+            if (null != current.getSuperclass())
+                pending.push(current.getSuperclass());
+            for (Class<?> itf : current.getInterfaces()) {
+                pending.push(itf);
+            }
+        }
+        return found.isEmpty() ? NO_SUPERTYPES : found.toArray(NO_SUPERTYPES);
+    }
+
+    private String superName(String type) {
+        ClassInfo info = get(type);
+        return null == info ? null : info.getSuperName();
+    }
+
+    /**
+     * @return class information or {@code null} if the class file could not be found
+     */
+    private ClassInfo read(String internalName) {
+        ClassLoader classLoader = null == loader ? null : loader.get();
+        if (null != loader && null == classLoader)
+            return null;
+        String resource = internalName + ".class";
+        try (InputStream in = null == classLoader ?
+                ClassLoader.getSystemResourceAsStream(resource) : classLoader.getResourceAsStream(resource)) {
+            if (null == in)
+                return null;
+            return ClassInfo.of(new ClassReader(IOUtil.toByteArray(in)));
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Failed to read class file of {}", internalName, e);
+            return null;
+        }
+    }
+
+    private static boolean isBootstrapClass(String internalName) {
+        return internalName.startsWith("java/");
+    }
+
+    private static final class Supertypes {
+        private final Set<String> types;
+        private final String[] found;
+
+        Supertypes(Set<String> types, String[] found) {
+            this.types = types;
+            this.found = found;
+        }
+    }
+
+    /**
+     * Hierarchy of a single class.
+     */
+    @Getter
+    public static final class ClassInfo {
+        private final String name;
+        private final String superName;
+        private final String[] interfaces;
+        private final boolean isInterface;
+
+        ClassInfo(String name, String superName, String[] interfaces, boolean isInterface) {
+            this.name = name;
+            this.superName = superName;
+            this.interfaces = interfaces;
+            this.isInterface = isInterface;
+        }
+
+        static ClassInfo of(ClassReader reader) {
+            return new ClassInfo(reader.getClassName(), reader.getSuperName(), reader.getInterfaces(),
+                    (reader.getAccess() & Opcodes.ACC_INTERFACE) != 0);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package io.github.xtherk.bytehook.weaver;
+
+import io.github.xtherk.bytehook.Endpoint;
+import io.github.xtherk.bytehook.dispatch.HookDispatcher;
+import io.github.xtherk.bytehook.ex.IllegalEndpointException;
+import io.github.xtherk.bytehook.metrics.Profiles;
+import io.github.xtherk.bytehook.util.OpcodeUtil;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.lang.reflect.Modifier;
+
+/**
+ * Prepends a switchable hook call to the target method, bound by {@link HookDispatcher}:
+ * <pre>
+ * if (guard()) return hook(this, args);
+ * original body
+ * </pre>
+ * The set of methods of the class does not change, so the class can also be woven and restored
+ * by retransformation.
+ *
+ * @author xtherk
+ */
+public class DispatchMethodVisitor extends MethodVisitor {
+
+    private static final String DISPATCHER = "io/github/xtherk/bytehook/dispatch/HookDispatcher";
+    private static final Handle BOOTSTRAP_GUARD = new Handle(Opcodes.H_INVOKESTATIC,
+            DISPATCHER, "bootstrapGuard", HookDispatcher.BOOTSTRAP_GUARD_DESCRIPTOR, false);
+    private static final Handle BOOTSTRAP = new Handle(Opcodes.H_INVOKESTATIC,
+            DISPATCHER, "bootstrap", HookDispatcher.BOOTSTRAP_DESCRIPTOR, false);
+    private static final Handle BOOTSTRAP_MODULE = new Handle(Opcodes.H_INVOKESTATIC,
+            DISPATCHER, "bootstrapModule", HookDispatcher.BOOTSTRAP_MODULE_DESCRIPTOR, false);
+
+    private final Endpoint endpoint;
+    private final int access;
+    private final String name;
+    private final String descriptor;
+    private final boolean isolatedModules;
+    private final boolean profiled;
+
+    /**
+     * @param api             ASM api
+     * @param mv              visitor of the target method
+     * @param endpoint        endpoint of the method
+     * @param access          access of the target method
+     * @param name            name of the target method
+     * @param descriptor      descriptor of the target method
+     * @param isolatedModules whether the fake class must be resolved through the module bridge
+     */
+    public DispatchMethodVisitor(int api, MethodVisitor mv, Endpoint endpoint, int access, String name,
+                                 String descriptor, boolean isolatedModules) {
+        this(api, mv, endpoint, access, name, descriptor, isolatedModules, false);
+    }
+
+    /**
+     * @param profiled whether the hook calls are recorded into {@link io.github.xtherk.bytehook.metrics.Profiles}
+     */
+    public DispatchMethodVisitor(int api, MethodVisitor mv, Endpoint endpoint, int access, String name,
+                                 String descriptor, boolean isolatedModules, boolean profiled) {
+        super(api, mv);
+        this.endpoint = endpoint;
+        this.access = access;
+        this.name = name;
+        this.descriptor = descriptor;
+        this.isolatedModules = isolatedModules;
+        this.profiled = profiled;
+    }
+
+    @Override
+    public void visitCode() {
+        super.visitCode();
+        boolean isStatic = Modifier.isStatic(access);
+        if (endpoint.isRequireInstance() && isStatic) {
+            throw new IllegalEndpointException("The method of being hook is a static method, which cannot provide instance.");
+        }
+        String endpointId = HookDispatcher.endpointId(endpoint.getTargetClass(), name, descriptor);
+        Label original = new Label();
+        mv.visitInvokeDynamicInsn(name, "()Z", BOOTSTRAP_GUARD, endpointId);
+        mv.visitJumpInsn(Opcodes.IFEQ, original);
+
+        // Only the hook is profiled, the original body runs when the hook is disabled
+        ProfileRecorder profile = profiled ? new ProfileRecorder(endpointId, true) : null;
+        int start = (Type.getArgumentsAndReturnSizes(descriptor) >> 2) - (isStatic ? 1 : 0);
+        Label hookStart = new Label();
+        Label hookEnd = new Label();
+        if (null != profile) {
+            profile.start(mv, start);
+            mv.visitLabel(hookStart);
+        }
+        // The instance is always passed, the call site drops it if the fake method does not take it
+        int slot = 0;
+        if (!isStatic) {
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            slot = 1;
+        }
+        for (Type argumentType : Type.getArgumentTypes(descriptor)) {
+            mv.visitVarInsn(OpcodeUtil.getLoadOpcodeByType(argumentType), slot);
+            slot += argumentType.getSize();
+        }
+        String callSiteDesc = isStatic ? descriptor : "(L" + endpoint.getTargetClass() + ';' + descriptor.substring(1);
+        if (isolatedModules) {
+            // A method handle constant would be resolved by the loader of the woven class
+            mv.visitInvokeDynamicInsn(name, callSiteDesc, BOOTSTRAP_MODULE, endpointId, endpoint.getFakeClass(),
+                    endpoint.getFakeMethod(), endpoint.getFakeMethodDesc());
+        } else {
+            Handle hook = new Handle(Opcodes.H_INVOKESTATIC, endpoint.getFakeClass(), endpoint.getFakeMethod(),
+                    endpoint.getFakeMethodDesc(), false);
+            mv.visitInvokeDynamicInsn(name, callSiteDesc, BOOTSTRAP, endpointId, hook);
+        }
+        if (null != profile) {
+            mv.visitLabel(hookEnd);
+            profile.record(mv, start, Profiles.CALL);
+        }
+        mv.visitInsn(OpcodeUtil.getReturnOpcodeByType(Type.getReturnType(descriptor)));
+        if (null != profile) {
+            Label handler = new Label();
+            mv.visitTryCatchBlock(hookStart, hookEnd, handler, null);
+            mv.visitLabel(handler);
+            profile.record(mv, start, Profiles.CALL);
+            mv.visitInsn(Opcodes.ATHROW);
+        }
+        mv.visitLabel(original);
+    }
+}
@@ -0,0 +1,244 @@
+package io.github.xtherk.bytehook.weaver;
+
+import io.github.xtherk.bytehook.Endpoint;
+import io.github.xtherk.bytehook.Modules;
+import io.github.xtherk.bytehook.util.IOUtil;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the fake methods to inline into the classes woven by a single {@link HookClassVisitor}.
+ * <p>
+ * A fake method is only inlined when its copy behaves as the call would: it is static and not synchronized,
+ * its class file is not newer than the target class, and everything it references is accessible from
+ * the target class. Fake classes of isolated modules are not visible from the target class,
+ * their methods may only reference the JDK and the target class.
+ *
+ * @author xtherk
+ */
+final class FakeMethods {
+
+    private static final Logger logger = LoggerFactory.getLogger(FakeMethods.class);
+
+    private final ClassLoader loader;
+    private final boolean isolatedModules;
+    /**
+     * Read classes, {@code null} values for the classes that can't be read
+     */
+    private final Map<String, ClassNode> classes = new HashMap<>();
+
+    /**
+     * @param loader          loader of the target class, {@code null} for the bootstrap loader
+     * @param isolatedModules whether the fake classes live in isolated module class loaders
+     */
+    FakeMethods(ClassLoader loader, boolean isolatedModules) {
+        this.loader = loader;
+        this.isolatedModules = isolatedModules;
+    }
+
+    /**
+     * @param endpoint       endpoint of the fake method
+     * @param targetVersion  class file version of the target class
+     * @param expandOriginal whether {@code OriginalMethods} placeholders are replaced by the original body
+     * @return fake method to copy into the target method, {@code null} if it can't be inlined
+     */
+    MethodNode findInlinable(Endpoint endpoint, int targetVersion, boolean expandOriginal) {
+        ClassNode fakeClass = read(endpoint.getFakeClass());
+        MethodNode method = null == fakeClass ? null : findMethod(fakeClass, endpoint.getFakeMethod(), endpoint.getFakeMethodDesc());
+        String reason = null;
+        if (null == method) {
+            reason = "its class file can't be read";
+        } else if ((method.access & Opcodes.ACC_STATIC) == 0 || (method.access & Opcodes.ACC_SYNCHRONIZED) != 0) {
+            reason = "it is not a static unsynchronized method";
+        } else if ((fakeClass.version & 0xFFFF) > targetVersion) {
+            reason = "its class file is newer than the target class";
+        } else {
+            reason = checkReferences(method, endpoint.getTargetClass(), expandOriginal);
+            if (null == reason && expandOriginal) {
+                reason = checkPlaceholders(method, targetVersion);
+            }
+        }
+        if (null != reason) {
+            if (expandOriginal) {
+                logger.error("Can't inline {}.{}{} calling the original method, {}.{}{} is left unhooked: {}",
+                        endpoint.getFakeClass(), endpoint.getFakeMethod(), endpoint.getFakeMethodDesc(),
+                        endpoint.getTargetClass(), endpoint.getTargetMethod(), endpoint.getTargetMethodDesc(), reason);
+            } else {
+                logger.debug("{}.{}{} is called, not inlined: {}", endpoint.getFakeClass(), endpoint.getFakeMethod(),
+                        endpoint.getFakeMethodDesc(), reason);
+            }
+            return null;
+        }
+        return method;
+    }
+
+    /**
+     * @return why the method can't be copied into the target class, {@code null} if it can
+     */
+    private String checkReferences(MethodNode method, String targetClass, boolean expandOriginal) {
+        for (TryCatchBlockNode block : method.tryCatchBlocks) {
+            if (null != block.type && !isAccessible(block.type, targetClass, null, null)) {
+                return "it catches " + block.type;
+            }
+        }
+        for (AbstractInsnNode insn : method.instructions) {
+            String owner = null;
+            String name = null;
+            String descriptor = null;
+            switch (insn.getType()) {
+                case AbstractInsnNode.METHOD_INSN:
+                    MethodInsnNode methodInsn = (MethodInsnNode) insn;
+                    if (MethodInliner.ORIGINAL_METHODS.equals(methodInsn.owner)) {
+                        if (!expandOriginal)
+                            return "it calls the original method";
+                        continue;
+                    }
+                    owner = methodInsn.owner;
+                    name = methodInsn.name;
+                    descriptor = methodInsn.desc;
+                    break;
+                case AbstractInsnNode.FIELD_INSN:
+                    FieldInsnNode fieldInsn = (FieldInsnNode) insn;
+                    owner = fieldInsn.owner;
+                    name = fieldInsn.name;
+                    descriptor = fieldInsn.desc;
+                    break;
+                case AbstractInsnNode.TYPE_INSN:
+                    owner = ((TypeInsnNode) insn).desc;
+                    break;
+                case AbstractInsnNode.MULTIANEWARRAY_INSN:
+                    owner = ((MultiANewArrayInsnNode) insn).desc;
+                    break;
+                case AbstractInsnNode.LDC_INSN:
+                    Object value = ((LdcInsnNode) insn).cst;
+                    if (value instanceof Type && ((Type) value).getSort() != Type.METHOD) {
+                        owner = ((Type) value).getInternalName();
+                    } else if (value instanceof Handle || value instanceof ConstantDynamic) {
+                        return "it loads a dynamic constant";
+                    }
+                    break;
+                case AbstractInsnNode.INVOKE_DYNAMIC_INSN:
+                    InvokeDynamicInsnNode indy = (InvokeDynamicInsnNode) insn;
+                    if (!isAccessible(indy.bsm.getOwner(), targetClass, indy.bsm.getName(), indy.bsm.getDesc())) {
+                        return "it uses the bootstrap method " + indy.bsm.getOwner() + "." + indy.bsm.getName();
+                    }
+                    for (Object argument : indy.bsmArgs) {
+                        if (argument instanceof Handle && !isAccessible(((Handle) argument).getOwner(), targetClass,
+                                ((Handle) argument).getName(), ((Handle) argument).getDesc())) {
+                            return "it references " + ((Handle) argument).getOwner() + "." + ((Handle) argument).getName();
+                        }
+                    }
+                    break;
+                case AbstractInsnNode.JUMP_INSN:
+                    if (insn.getOpcode() == Opcodes.JSR)
+                        return "it uses subroutines";
+                    break;
+                default:
+                    break;
+            }
+            if (null != owner && !isAccessible(owner, targetClass, name, descriptor)) {
+                return "it references " + owner + (null == name ? "" : "." + name);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The operand stack at a placeholder is kept in locals around the original body, see {@link MethodInliner}.
+     * Class files without stack map frames are checked by the old verifier, which rejects objects under
+     * construction in locals covered by a handler.
+     *
+     * @return why the placeholders can't be expanded, {@code null} if they can
+     */
+    private static String checkPlaceholders(MethodNode method, int targetVersion) {
+        Type[][] stacks;
+        try {
+            stacks = MethodInliner.placeholderStacks(method);
+        } catch (AnalyzerException e) {
+            return "it can't be analyzed: " + e.getMessage();
+        }
+        if (targetVersion >= Opcodes.V1_6)
+            return null;
+        for (Type[] stack : stacks) {
+            if (null != stack && stack.length > 0)
+                return "it calls the original method with a non-empty operand stack";
+        }
+        return null;
+    }
+
+    /**
+     * @param owner       internal name or array descriptor of the referenced class
+     * @param targetClass internal name of the target class
+     * @param name        name of the referenced member, {@code null} for the class itself
+     * @param descriptor  descriptor of the referenced member
+     * @return whether the target class can reference it
+     */
+    private boolean isAccessible(String owner, String targetClass, String name, String descriptor) {
+        if (owner.charAt(0) == '[') {
+            Type element = Type.getType(owner).getElementType();
+            if (element.getSort() != Type.OBJECT)
+                return true;
+            owner = element.getInternalName();
+        }
+        if (owner.equals(targetClass) || owner.startsWith("java/") || owner.startsWith("javax/"))
+            return true;
+        if (isolatedModules)
+            return false;
+        // Module classes are on the classpath, only their public members can be reached from another package
+        ClassNode node = read(owner);
+        if (null == node || (node.access & Opcodes.ACC_PUBLIC) == 0)
+            return false;
+        if (null == name)
+            return true;
+        MethodNode method = findMethod(node, name, descriptor);
+        if (null != method)
+            return (method.access & Opcodes.ACC_PUBLIC) != 0;
+        for (FieldNode field : node.fields) {
+            if (field.name.equals(name) && field.desc.equals(descriptor))
+                return (field.access & Opcodes.ACC_PUBLIC) != 0;
+        }
+        // Inherited member
+        return false;
+    }
+
+    private static MethodNode findMethod(ClassNode node, String name, String descriptor) {
+        for (MethodNode method : node.methods) {
+            if (method.name.equals(name) && method.desc.equals(descriptor))
+                return method;
+        }
+        return null;
+    }
+
+    private ClassNode read(String internalName) {
+        if (classes.containsKey(internalName))
+            return classes.get(internalName);
+        ClassNode node = null;
+        ClassLoader source = isolatedModules ? Modules.moduleClassLoaderOf(internalName) : null;
+        if (null == source) {
+            source = null == loader ? ClassLoader.getSystemClassLoader() : loader;
+        }
+        try (InputStream in = source.getResourceAsStream(internalName + ".class")) {
+            if (null != in) {
+                node = new ClassNode();
+                new ClassReader(IOUtil.toByteArray(in)).accept(node, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to read {}", internalName, e);
+            node = null;
+        }
+        classes.put(internalName, node);
+        return node;
+    }
+}
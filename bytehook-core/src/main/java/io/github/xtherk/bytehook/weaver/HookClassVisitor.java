@@ -0,0 +1,175 @@
+package io.github.xtherk.bytehook.weaver;
+
+import io.github.xtherk.bytehook.Behavior;
+import io.github.xtherk.bytehook.ClassEndpoints;
+import io.github.xtherk.bytehook.Endpoint;
+import io.github.xtherk.bytehook.dispatch.HookDispatcher;
+import io.github.xtherk.bytehook.metrics.Profiles;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Streaming weaver of a target class.
+ * <p>
+ * Methods without endpoint are handed straight to the next visitor. When it is a
+ * {@link org.objectweb.asm.ClassWriter} created from the same {@link org.objectweb.asm.ClassReader},
+ * their bytecode is copied as is, only the hooked methods are regenerated.
+ *
+ * @author xtherk
+ */
+public class HookClassVisitor extends ClassVisitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(HookClassVisitor.class);
+    private final ClassEndpoints endpoints;
+    private final WeaveOptions options;
+    private final ClassLoader loader;
+    private FakeMethods fakeMethods;
+    private final Set<Endpoint> matched = new HashSet<>();
+    private boolean dispatchable;
+    private int version;
+
+    public HookClassVisitor(int api, ClassVisitor cv, ClassEndpoints endpoints) {
+        this(api, cv, endpoints, WeaveOptions.DEFAULT);
+    }
+
+    public HookClassVisitor(int api, ClassVisitor cv, ClassEndpoints endpoints, WeaveOptions options) {
+        this(api, cv, endpoints, options, null);
+    }
+
+    /**
+     * @param loader loader of the target class, the fake classes to inline are read through it
+     */
+    public HookClassVisitor(int api, ClassVisitor cv, ClassEndpoints endpoints, WeaveOptions options, ClassLoader loader) {
+        super(api, cv);
+        this.endpoints = endpoints;
+        this.options = options;
+        this.loader = loader;
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        this.version = version & 0xFFFF;
+        // invokedynamic needs Java 7 class files
+        dispatchable = options.isDynamicDispatch() && this.version >= Opcodes.V1_7;
+        super.visit(version, access, name, signature, superName, interfaces);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+        MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+        List<Endpoint> found = endpoints.find(access, name, descriptor);
+        if (found.isEmpty()) {
+            return mv;
+        }
+        matched.addAll(found);
+        if ((access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) != 0) {
+            logger.warn("Can't hook {}.{}{}, the method has no body", endpoints.getTargetClass(), name, descriptor);
+            return mv;
+        }
+        Endpoint replacement = null;
+        boolean timed = false;
+        List<Endpoint> before = new ArrayList<>(1);
+        List<Endpoint> after = new ArrayList<>(1);
+        for (Endpoint endpoint : found) {
+            if (endpoint.getBehavior() == Behavior.TIMED) {
+                timed = true;
+            } else if (endpoint.getBehavior() == Behavior.INSERT_BEFORE) {
+                before.add(endpoint);
+            } else if (endpoint.getBehavior() == Behavior.INSERT_AFTER) {
+                after.add(endpoint);
+            } else if (null == replacement) {
+                replacement = endpoint;
+            }
+        }
+        if (timed) {
+            // Innermost, the method is timed as woven by the other endpoints
+            mv = new TimedMethodVisitor(api, mv, access, name, descriptor,
+                    HookDispatcher.endpointId(endpoints.getTargetClass(), name, descriptor), version >= Opcodes.V1_7);
+            if (null == replacement && before.isEmpty() && after.isEmpty()) {
+                return mv;
+            }
+        }
+        if (null != replacement) {
+            if (!before.isEmpty() || !after.isEmpty()) {
+                logger.warn("{}.{}{} is replaced by {}.{}, its advice is ignored", endpoints.getTargetClass(),
+                        name, descriptor, replacement.getFakeClass(), replacement.getFakeMethod());
+            }
+            return replace(mv, replacement, access, name, descriptor);
+        }
+        Map<Endpoint, MethodNode> inlined = new HashMap<>();
+        // Copies without try/catch blocks are always inlined, see AdviceMethodVisitor
+        int alwaysInlined = 0;
+        if (options.isInline()) {
+            for (Endpoint endpoint : found) {
+                if (endpoint.getBehavior() == Behavior.TIMED)
+                    continue;
+                MethodNode fake = fakeMethods().findInlinable(endpoint, version, false);
+                if (null != fake) {
+                    inlined.put(endpoint, fake);
+                    if (fake.tryCatchBlocks.isEmpty() || endpoint.getBehavior() == Behavior.INSERT_BEFORE) {
+                        alwaysInlined++;
+                    }
+                }
+            }
+        }
+        if (options.isIsolatedModules() && version < Opcodes.V1_7 && alwaysInlined < before.size() + after.size()) {
+            logger.warn("Can't advise {}.{}{}, isolated modules need a Java 7 class file", endpoints.getTargetClass(),
+                    name, descriptor);
+            return mv;
+        }
+        return new AdviceMethodVisitor(api, mv, access, name, descriptor, before, after, options.isIsolatedModules(),
+                inlined);
+    }
+
+    private MethodVisitor replace(MethodVisitor mv, Endpoint endpoint, int access, String name, String descriptor) {
+        boolean initializer = "<init>".equals(name) || "<clinit>".equals(name);
+        String profileId = options.isProfile() ? HookDispatcher.endpointId(endpoints.getTargetClass(), name, descriptor) : null;
+        boolean dynamic = version >= Opcodes.V1_7;
+        if (null != profileId && !(dispatchable && !initializer)) {
+            // The whole new body is the hook, the dispatch visitor times its hook call itself
+            mv = new TimedMethodVisitor(api, mv, access, name, descriptor, ProfileRecorder.PROFILES, Profiles.CALL,
+                    profileId, dynamic);
+        }
+        // The original body can only be reached from an inlined copy, a woven class can't get new methods
+        if (!initializer && (options.isInline() || endpoint.isCopyTargetMethod())) {
+            MethodNode fake = fakeMethods().findInlinable(endpoint, version, endpoint.isCopyTargetMethod());
+            if (null != fake) {
+                return new InlineMethodVisitor(api, mv, endpoint, endpoints.getTargetClass(), access, name, descriptor,
+                        fake, profileId, dynamic);
+            }
+            if (endpoint.isCopyTargetMethod()) {
+                // Called instead, its original method calls would return null and the original body would never run
+                return mv;
+            }
+        }
+        if (dispatchable && !initializer) {
+            return new DispatchMethodVisitor(api, mv, endpoint, access, name, descriptor, options.isIsolatedModules(),
+                    null != profileId);
+        }
+        if (options.isIsolatedModules()) {
+            return new BridgeMethodVisitor(api, mv, endpoint, access, name, descriptor);
+        }
+        return new ReplaceMethodVisitor(api, mv, endpoint, access, descriptor);
+    }
+
+    private FakeMethods fakeMethods() {
+        if (null == fakeMethods) {
+            fakeMethods = new FakeMethods(loader, options.isIsolatedModules());
+        }
+        return fakeMethods;
+    }
+
+    @Override
+    public void visitEnd() {
+        if (matched.size() < endpoints.endpointCount()) {
+            endpoints.reportMisses(matched);
+        }
+        super.visitEnd();
+    }
+}
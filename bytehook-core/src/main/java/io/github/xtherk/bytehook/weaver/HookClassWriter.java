@@ -0,0 +1,25 @@
+package io.github.xtherk.bytehook.weaver;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+/**
+ * {@link ClassWriter} that computes frames from the {@link ClassHierarchy}
+ * rather than by loading classes with {@link Class#forName(String)}.
+ *
+ * @author xtherk
+ */
+public class HookClassWriter extends ClassWriter {
+
+    private final ClassHierarchy hierarchy;
+
+    public HookClassWriter(ClassReader reader, int flags, ClassHierarchy hierarchy) {
+        super(reader, flags);
+        this.hierarchy = hierarchy;
+    }
+
+    @Override
+    protected String getCommonSuperClass(String type1, String type2) {
+        return hierarchy.getCommonSuperClass(type1, type2);
+    }
+}
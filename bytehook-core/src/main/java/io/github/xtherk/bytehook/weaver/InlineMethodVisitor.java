@@ -0,0 +1,86 @@
+package io.github.xtherk.bytehook.weaver;
+
+import io.github.xtherk.bytehook.Endpoint;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Replaces the body of the target method with a copy of the fake method, see {@link MethodInliner}.
+ * <p>
+ * When the endpoint calls the original method, the original body is kept aside
+ * and copied at each {@code OriginalMethods} placeholder of the fake method.
+ *
+ * @author xtherk
+ */
+public class InlineMethodVisitor extends ReplaceMethodVisitor {
+
+    private final String owner;
+    private final MethodNode fake;
+    private final MethodNode original;
+    private final ProfileRecorder profile;
+
+    /**
+     * @param api        ASM api
+     * @param mv         visitor of the target method
+     * @param endpoint   endpoint of the method
+     * @param owner      internal name of the target class
+     * @param access     access of the target method
+     * @param name       name of the target method
+     * @param descriptor descriptor of the target method
+     * @param fake       fake method to copy
+     */
+    public InlineMethodVisitor(int api, MethodVisitor mv, Endpoint endpoint, String owner, int access, String name,
+                               String descriptor, MethodNode fake) {
+        this(api, mv, endpoint, owner, access, name, descriptor, fake, null, false);
+    }
+
+    /**
+     * @param profileId id of the profile timing the copies of the original body, {@code null} if they are not timed
+     * @param dynamic   whether the class file supports invokedynamic
+     */
+    public InlineMethodVisitor(int api, MethodVisitor mv, Endpoint endpoint, String owner, int access, String name,
+                               String descriptor, MethodNode fake, String profileId, boolean dynamic) {
+        super(api, mv, endpoint, access, descriptor);
+        this.owner = owner;
+        this.fake = fake;
+        this.original = endpoint.isCopyTargetMethod() ? new MethodNode(api, access, name, descriptor, null, null) : null;
+        this.profile = null == profileId ? null : new ProfileRecorder(profileId, dynamic);
+    }
+
+    @Override
+    public void visitCode() {
+        super.visitCode();
+        // Keep the original body instead of dropping it
+        mv = original;
+    }
+
+    @Override
+    protected void invokeFake(MethodVisitor mv) {
+        int[] next = {Type.getArgumentsAndReturnSizes(descriptor) >> 2};
+        if ((access & Opcodes.ACC_STATIC) != 0) {
+            next[0]--;
+        }
+        MethodInliner inliner = new MethodInliner(mv, type -> {
+            int slot = next[0];
+            next[0] += type.getSize();
+            return slot;
+        });
+        if (null != profile) {
+            inliner.profileOriginal(profile);
+        }
+        inliner.inline(fake, Type.getArgumentTypes(endpoint.getFakeMethodDesc()), original, originalArguments());
+        inliner.visitTryCatchBlocks();
+    }
+
+    private Type[] originalArguments() {
+        Type[] arguments = Type.getArgumentTypes(descriptor);
+        if ((access & Opcodes.ACC_STATIC) != 0)
+            return arguments;
+        Type[] withInstance = new Type[arguments.length + 1];
+        withInstance[0] = Type.getObjectType(owner);
+        System.arraycopy(arguments, 0, withInstance, 1, arguments.length);
+        return withInstance;
+    }
+}
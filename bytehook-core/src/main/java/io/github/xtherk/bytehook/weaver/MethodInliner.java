@@ -0,0 +1,491 @@
+package io.github.xtherk.bytehook.weaver;
+
+import io.github.xtherk.bytehook.metrics.Profiles;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicInterpreter;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.Frame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copies the body of a method at the place of a call to it, so that the call costs no frame.
+ * <p>
+ * The arguments are taken from the operand stack as a call would, and the returned value is left on it.
+ * Locals are moved to new slots of the caller, labels are renewed, returns jump to the end of the copy
+ * and the try/catch blocks are kept. Debug information and frames are dropped,
+ * the caller is written with computed frames.
+ * <p>
+ * {@code OriginalMethods.callWith*} placeholders are replaced by a copy of the original body when one is given.
+ * A handler of the original body clears the operand stack, so when the original body catches exceptions,
+ * the values the callee left on the stack at a placeholder are kept in locals around the copy.
+ *
+ * @author xtherk
+ */
+public class MethodInliner implements Opcodes {
+
+    /**
+     * Internal name of {@code io.github.xtherk.bytehook.OriginalMethods}
+     */
+    public static final String ORIGINAL_METHODS = "io/github/xtherk/bytehook/OriginalMethods";
+    private static final String CALL_WITH_RETURN_TYPE = "callWithReturnType";
+    private static final String CALL_WITH_NO_RETURN_TYPE = "callWithNoReturnType";
+    private static final Type OBJECT_TYPE = Type.getType(Object.class);
+    private static final Type[] EMPTY_STACK = new Type[0];
+
+    private final MethodVisitor out;
+    private final Locals locals;
+    /**
+     * Try/catch blocks of the copies, inner blocks first
+     */
+    private final List<Handler> handlers = new ArrayList<>();
+    /**
+     * Records the time spent in the expanded original bodies, {@code null} if they are not timed
+     */
+    private ProfileRecorder profile;
+
+    /**
+     * @param out    visitor of the caller
+     * @param locals allocator of the caller's locals
+     */
+    public MethodInliner(MethodVisitor out, Locals locals) {
+        this.out = out;
+        this.locals = locals;
+    }
+
+    /**
+     * @param callee    method to copy
+     * @param arguments types of the arguments on the stack, the receiver first for instance methods
+     */
+    public void inline(MethodNode callee, Type[] arguments) {
+        inline(callee, arguments, null, null);
+    }
+
+    /**
+     * @param callee            method to copy
+     * @param arguments         types of the arguments on the stack, the receiver first for instance methods
+     * @param original          original body replacing the placeholders of the callee, {@code null} for none
+     * @param originalArguments types of the arguments of the original body, loaded from the first slots of the caller
+     */
+    public void inline(MethodNode callee, Type[] arguments, MethodNode original, Type[] originalArguments) {
+        new Copy(callee, arguments, original, originalArguments).emit();
+    }
+
+    /**
+     * @param profile records the time spent in the expanded original bodies
+     */
+    void profileOriginal(ProfileRecorder profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Visits the try/catch blocks of the copies emitted so far. Must be called once the copies are visited.
+     */
+    public void visitTryCatchBlocks() {
+        for (Handler handler : handlers) {
+            out.visitTryCatchBlock(handler.start, handler.end, handler.handler, handler.type);
+        }
+        handlers.clear();
+    }
+
+    /**
+     * Allocates locals of the caller.
+     */
+    @FunctionalInterface
+    public interface Locals {
+        /**
+         * @param type type of the local
+         * @return slot of a new local
+         */
+        int newLocal(Type type);
+    }
+
+    /**
+     * @param arguments argument types of a method
+     * @return slots of a frame holding the arguments from slot 0
+     */
+    private static int[] argumentSlots(Type[] arguments) {
+        int[] slots = new int[arguments.length];
+        int slot = 0;
+        for (int i = 0; i < arguments.length; i++) {
+            slots[i] = slot;
+            slot += arguments[i].getSize();
+        }
+        return slots;
+    }
+
+    /**
+     * @param method method calling {@code OriginalMethods} placeholders
+     * @return types of the operand stack at each placeholder from the bottom, indexed by instruction,
+     * {@code null} for the other instructions
+     * @throws AnalyzerException if the method is not valid
+     */
+    static Type[][] placeholderStacks(MethodNode method) throws AnalyzerException {
+        Frame<BasicValue>[] frames = new Analyzer<>(new BasicInterpreter()).analyze(ORIGINAL_METHODS, method);
+        Type[][] stacks = new Type[frames.length][];
+        for (int i = 0; i < frames.length; i++) {
+            AbstractInsnNode insn = method.instructions.get(i);
+            // Unreachable instructions have no frame
+            if (null == frames[i] || insn.getOpcode() != INVOKESTATIC
+                    || !ORIGINAL_METHODS.equals(((MethodInsnNode) insn).owner))
+                continue;
+            stacks[i] = new Type[frames[i].getStackSize()];
+            for (int j = 0; j < stacks[i].length; j++) {
+                stacks[i][j] = frames[i].getStack(j).getType();
+            }
+        }
+        return stacks;
+    }
+
+    /**
+     * @param opcode load, store or iinc opcode
+     * @return type of the local accessed by the instruction
+     */
+    private static Type localType(int opcode) {
+        switch (opcode) {
+            case ILOAD:
+            case ISTORE:
+            case IINC:
+                return Type.INT_TYPE;
+            case LLOAD:
+            case LSTORE:
+                return Type.LONG_TYPE;
+            case FLOAD:
+            case FSTORE:
+                return Type.FLOAT_TYPE;
+            case DLOAD:
+            case DSTORE:
+                return Type.DOUBLE_TYPE;
+            default:
+                return OBJECT_TYPE;
+        }
+    }
+
+    /**
+     * @param type any type
+     * @return type of the local holding a value of the type
+     */
+    private static Type localType(Type type) {
+        switch (type.getSort()) {
+            case Type.OBJECT:
+            case Type.ARRAY:
+                return OBJECT_TYPE;
+            case Type.LONG:
+            case Type.FLOAT:
+            case Type.DOUBLE:
+                return type;
+            default:
+                return Type.INT_TYPE;
+        }
+    }
+
+    /**
+     * @param type primitive type
+     * @return internal name of its wrapper class
+     */
+    private static String boxOf(Type type) {
+        switch (type.getSort()) {
+            case Type.BOOLEAN:
+                return "java/lang/Boolean";
+            case Type.CHAR:
+                return "java/lang/Character";
+            case Type.BYTE:
+                return "java/lang/Byte";
+            case Type.SHORT:
+                return "java/lang/Short";
+            case Type.INT:
+                return "java/lang/Integer";
+            case Type.FLOAT:
+                return "java/lang/Float";
+            case Type.LONG:
+                return "java/lang/Long";
+            default:
+                return "java/lang/Double";
+        }
+    }
+
+    private static final class Handler {
+        private final Label start;
+        private final Label end;
+        private final Label handler;
+        private final String type;
+
+        Handler(Label start, Label end, Label handler, String type) {
+            this.start = start;
+            this.end = end;
+            this.handler = handler;
+            this.type = type;
+        }
+    }
+
+    /**
+     * A single copy of a method, visits the instructions of the callee and emits the remapped ones.
+     */
+    private final class Copy extends MethodVisitor {
+        private final MethodNode callee;
+        private final Type[] arguments;
+        private final MethodNode original;
+        private final Type[] originalArguments;
+        /**
+         * Stacks to keep in locals around the placeholders, {@code null} if the original body catches nothing
+         */
+        private final Type[][] placeholderStacks;
+        private final Map<Label, Label> labels = new HashMap<>();
+        /**
+         * key: slot of the callee and sort of the local, value: slot of the caller
+         */
+        private final Map<Long, Integer> slots = new HashMap<>();
+        private final Label end = new Label();
+        private boolean endUsed;
+        private AbstractInsnNode current;
+        private AbstractInsnNode last;
+        /**
+         * Unboxed value returned by an expanded placeholder, boxed only if the callee does not unbox it
+         */
+        private Type pendingBox;
+
+        Copy(MethodNode callee, Type[] arguments, MethodNode original, Type[] originalArguments) {
+            super(Opcodes.ASM8);
+            this.callee = callee;
+            this.arguments = arguments;
+            this.original = original;
+            this.originalArguments = originalArguments;
+            this.placeholderStacks = null == original || original.tryCatchBlocks.isEmpty() ? null : stacksOf(callee);
+        }
+
+        private Type[][] stacksOf(MethodNode callee) {
+            try {
+                return placeholderStacks(callee);
+            } catch (AnalyzerException e) {
+                // Checked before inlining, see FakeMethods
+                throw new IllegalStateException("Can't analyze " + callee.name + callee.desc, e);
+            }
+        }
+
+        void emit() {
+            int[] argumentSlots = argumentSlots(arguments);
+            for (int i = arguments.length - 1; i >= 0; i--) {
+                out.visitVarInsn(arguments[i].getOpcode(ISTORE), slot(argumentSlots[i], localType(arguments[i])));
+            }
+            for (AbstractInsnNode insn = callee.instructions.getLast(); null != insn; insn = insn.getPrevious()) {
+                if (insn.getOpcode() >= 0) {
+                    last = insn;
+                    break;
+                }
+            }
+            for (AbstractInsnNode insn = callee.instructions.getFirst(); null != insn; insn = insn.getNext()) {
+                current = insn;
+                insn.accept(this);
+            }
+            flushBox();
+            if (endUsed) {
+                out.visitLabel(end);
+            }
+            // After the blocks of the expanded original bodies, inner blocks must come first
+            for (TryCatchBlockNode block : callee.tryCatchBlocks) {
+                handlers.add(new Handler(label(block.start.getLabel()), label(block.end.getLabel()),
+                        label(block.handler.getLabel()), block.type));
+            }
+        }
+
+        private Label label(Label label) {
+            return labels.computeIfAbsent(label, k -> new Label());
+        }
+
+        private int slot(int slot, Type type) {
+            long key = ((long) slot << 8) | type.getSort();
+            return slots.computeIfAbsent(key, k -> locals.newLocal(type));
+        }
+
+        private void flushBox() {
+            if (null != pendingBox) {
+                String box = boxOf(pendingBox);
+                out.visitMethodInsn(INVOKESTATIC, box, "valueOf", "(" + pendingBox.getDescriptor() + ")L" + box + ";", false);
+                pendingBox = null;
+            }
+        }
+
+        @Override
+        public void visitInsn(int opcode) {
+            flushBox();
+            if (opcode >= IRETURN && opcode <= RETURN) {
+                // The returned value stays on the stack
+                if (current != last) {
+                    out.visitJumpInsn(GOTO, end);
+                    endUsed = true;
+                }
+                return;
+            }
+            out.visitInsn(opcode);
+        }
+
+        @Override
+        public void visitIntInsn(int opcode, int operand) {
+            flushBox();
+            out.visitIntInsn(opcode, operand);
+        }
+
+        @Override
+        public void visitVarInsn(int opcode, int var) {
+            flushBox();
+            out.visitVarInsn(opcode, slot(var, localType(opcode)));
+        }
+
+        @Override
+        public void visitTypeInsn(int opcode, String type) {
+            if (null != pendingBox && opcode == CHECKCAST && boxOf(pendingBox).equals(type)) {
+                // Cast of the placeholder result, the value is known to be of the type
+                return;
+            }
+            flushBox();
+            out.visitTypeInsn(opcode, type);
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+            flushBox();
+            out.visitFieldInsn(opcode, owner, name, descriptor);
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+            if (null != pendingBox && opcode == INVOKEVIRTUAL && boxOf(pendingBox).equals(owner)
+                    && name.equals(pendingBox.getClassName() + "Value")) {
+                // Unboxing of the placeholder result, keep the primitive value
+                pendingBox = null;
+                return;
+            }
+            flushBox();
+            if (null != original && opcode == INVOKESTATIC && ORIGINAL_METHODS.equals(owner)) {
+                expandOriginal(CALL_WITH_RETURN_TYPE.equals(name));
+                return;
+            }
+            out.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+        }
+
+        private void expandOriginal(boolean returnsValue) {
+            Type[] stack = null == placeholderStacks ? EMPTY_STACK
+                    : placeholderStacks[callee.instructions.indexOf(current)];
+            int[] stackSlots = new int[stack.length];
+            for (int i = stack.length - 1; i >= 0; i--) {
+                stackSlots[i] = locals.newLocal(localType(stack[i]));
+                out.visitVarInsn(stack[i].getOpcode(ISTORE), stackSlots[i]);
+            }
+            int start = -1;
+            if (null != profile) {
+                // Exits of the original body by an exception are not recorded
+                start = locals.newLocal(Type.LONG_TYPE);
+                profile.start(out, start);
+            }
+            int[] originalSlots = argumentSlots(originalArguments);
+            for (int i = 0; i < originalArguments.length; i++) {
+                out.visitVarInsn(originalArguments[i].getOpcode(ILOAD), originalSlots[i]);
+            }
+            new Copy(original, originalArguments, null, null).emit();
+            if (null != profile) {
+                profile.record(out, start, Profiles.ORIGINAL);
+            }
+            Type returnType = Type.getReturnType(original.desc);
+            if (!returnsValue && returnType.getSize() > 0) {
+                out.visitInsn(returnType.getSize() == 2 ? POP2 : POP);
+            }
+            restoreStack(stack, stackSlots, returnsValue ? returnType : Type.VOID_TYPE);
+            if (!returnsValue)
+                return;
+            if (returnType.getSort() == Type.VOID) {
+                out.visitInsn(ACONST_NULL);
+            } else if (returnType.getSort() < Type.ARRAY) {
+                pendingBox = returnType;
+            }
+        }
+
+        /**
+         * Reloads the stack kept in locals under the value returned by the original body.
+         */
+        private void restoreStack(Type[] stack, int[] stackSlots, Type returnType) {
+            if (stack.length == 0)
+                return;
+            int result = -1;
+            if (returnType.getSize() > 0) {
+                result = locals.newLocal(localType(returnType));
+                out.visitVarInsn(returnType.getOpcode(ISTORE), result);
+            }
+            for (int i = 0; i < stack.length; i++) {
+                out.visitVarInsn(stack[i].getOpcode(ILOAD), stackSlots[i]);
+            }
+            if (result >= 0) {
+                out.visitVarInsn(returnType.getOpcode(ILOAD), result);
+            }
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle,
+                                           Object... bootstrapMethodArguments) {
+            flushBox();
+            out.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+        }
+
+        @Override
+        public void visitJumpInsn(int opcode, Label label) {
+            flushBox();
+            out.visitJumpInsn(opcode, label(label));
+        }
+
+        @Override
+        public void visitLabel(Label label) {
+            flushBox();
+            out.visitLabel(label(label));
+        }
+
+        @Override
+        public void visitLdcInsn(Object value) {
+            flushBox();
+            out.visitLdcInsn(value);
+        }
+
+        @Override
+        public void visitIincInsn(int var, int increment) {
+            flushBox();
+            out.visitIincInsn(slot(var, Type.INT_TYPE), increment);
+        }
+
+        @Override
+        public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+            flushBox();
+            out.visitTableSwitchInsn(min, max, label(dflt), remap(labels));
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+            flushBox();
+            out.visitLookupSwitchInsn(label(dflt), keys, remap(labels));
+        }
+
+        private Label[] remap(Label[] labels) {
+            Label[] remapped = new Label[labels.length];
+            for (int i = 0; i < labels.length; i++) {
+                remapped[i] = label(labels[i]);
+            }
+            return remapped;
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+            flushBox();
+            out.visitMultiANewArrayInsn(descriptor, numDimensions);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package io.github.xtherk.bytehook.weaver;
+
+import io.github.xtherk.bytehook.metrics.Profiles;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Emits the timing of a region of a woven method into {@link Profiles}.
+ *
+ * @author xtherk
+ */
+final class ProfileRecorder implements Opcodes {
+
+    static final String PROFILES = Type.getInternalName(Profiles.class);
+    private static final Handle BOOTSTRAP = new Handle(H_INVOKESTATIC, PROFILES, "bootstrap",
+            Profiles.BOOTSTRAP_DESCRIPTOR, false);
+
+    private final String endpointId;
+    private final boolean dynamic;
+
+    /**
+     * @param endpointId id of the profiled method
+     * @param dynamic    whether the class file supports invokedynamic
+     */
+    ProfileRecorder(String endpointId, boolean dynamic) {
+        this.endpointId = endpointId;
+        this.dynamic = dynamic;
+    }
+
+    /**
+     * Stores the start time of the region.
+     *
+     * @param slot long local holding the start time
+     */
+    void start(MethodVisitor mv, int slot) {
+        mv.visitMethodInsn(INVOKESTATIC, "java/lang/System", "nanoTime", "()J", false);
+        mv.visitVarInsn(LSTORE, slot);
+    }
+
+    /**
+     * Records the time elapsed since {@link #start(MethodVisitor, int)}, the stack is left as is.
+     *
+     * @param slot long local holding the start time
+     * @param kind {@link Profiles#CALL} or {@link Profiles#ORIGINAL}
+     */
+    void record(MethodVisitor mv, int slot, String kind) {
+        mv.visitMethodInsn(INVOKESTATIC, "java/lang/System", "nanoTime", "()J", false);
+        mv.visitVarInsn(LLOAD, slot);
+        mv.visitInsn(LSUB);
+        if (dynamic) {
+            mv.visitInvokeDynamicInsn(kind, "(J)V", BOOTSTRAP, endpointId);
+        } else {
+            mv.visitLdcInsn(endpointId);
+            // The duration is under the id
+            mv.visitInsn(DUP_X2);
+            mv.visitInsn(POP);
+            mv.visitMethodInsn(INVOKESTATIC, PROFILES, kind, Profiles.RECORD_DESCRIPTOR, false);
+        }
+    }
+}
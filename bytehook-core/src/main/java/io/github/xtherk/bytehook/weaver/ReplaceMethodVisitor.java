@@ -0,0 +1,92 @@
+package io.github.xtherk.bytehook.weaver;
+
+import io.github.xtherk.bytehook.Endpoint;
+import io.github.xtherk.bytehook.ex.IllegalEndpointException;
+import io.github.xtherk.bytehook.util.OpcodeUtil;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.lang.reflect.Modifier;
+
+/**
+ * Replaces the body of the target method with a call to the fake method.
+ * <p>
+ * Annotations and attributes of the target method are kept,
+ * the original code is dropped as it is visited.
+ *
+ * @author xtherk
+ */
+public class ReplaceMethodVisitor extends MethodVisitor {
+
+    protected final MethodVisitor target;
+    protected final Endpoint endpoint;
+    protected final int access;
+    protected final String descriptor;
+
+    public ReplaceMethodVisitor(int api, MethodVisitor mv, Endpoint endpoint, int access, String descriptor) {
+        super(api, mv);
+        this.target = mv;
+        this.endpoint = endpoint;
+        this.access = access;
+        this.descriptor = descriptor;
+    }
+
+    @Override
+    public void visitCode() {
+        // Everything from here to visitMaxs belongs to the original body
+        mv = null;
+    }
+
+    @Override
+    public void visitEnd() {
+        target.visitCode();
+        proxyTargetMethod(target);
+        target.visitMaxs(0, 0);
+        target.visitEnd();
+    }
+
+    /**
+     * Emits the new body of the target method.
+     *
+     * @param mv visitor of the regenerated body
+     */
+    protected void proxyTargetMethod(MethodVisitor mv) {
+        loadArguments(mv);
+        invokeFake(mv);
+        mv.visitInsn(OpcodeUtil.getReturnOpcodeByType(Type.getReturnType(descriptor)));
+    }
+
+    /**
+     * Pushes the arguments of the fake method, the instance first when it is required.
+     *
+     * @param mv visitor of the regenerated body
+     */
+    protected void loadArguments(MethodVisitor mv) {
+        Type[] argumentTypes = Type.getArgumentTypes(descriptor);
+
+        boolean isStatic = Modifier.isStatic(access);
+        if (endpoint.isRequireInstance()) {
+            if (isStatic) {
+                throw new IllegalEndpointException("The method of being hook is a static method, which cannot provide instance.");
+            }
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+        }
+
+        int slot = isStatic ? 0 : 1;
+        for (Type argumentType : argumentTypes) {
+            mv.visitVarInsn(OpcodeUtil.getLoadOpcodeByType(argumentType), slot);
+            slot += argumentType.getSize();
+        }
+    }
+
+    /**
+     * Calls the fake method with the arguments on the stack and leaves its result.
+     *
+     * @param mv visitor of the regenerated body
+     */
+    protected void invokeFake(MethodVisitor mv) {
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, endpoint.getFakeClass(), endpoint.getFakeMethod(),
+                endpoint.getFakeMethodDesc(), false);
+    }
+}
@@ -0,0 +1,107 @@
+package io.github.xtherk.bytehook.weaver;
+
+import io.github.xtherk.bytehook.Behavior;
+import io.github.xtherk.bytehook.metrics.Timers;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.AdviceAdapter;
+
+/**
+ * Records the duration of every call of the method for {@link Behavior#TIMED} endpoints, see {@link Timers}.
+ * <p>
+ * It is the last visitor before the class writer, so it times the method as woven by the other endpoints.
+ * Calls ending with an exception are recorded by a handler covering the whole body, which rethrows.
+ * Also records the calls of the replaced methods into {@link io.github.xtherk.bytehook.metrics.Profiles}.
+ *
+ * @author xtherk
+ */
+public class TimedMethodVisitor extends AdviceAdapter {
+
+    private static final String TIMERS = Type.getInternalName(Timers.class);
+
+    private final String recorder;
+    private final String recordName;
+    private final Handle bootstrap;
+    private final String endpointId;
+    private final boolean dynamic;
+    private int start = -1;
+    private Label bodyStart;
+
+    /**
+     * @param api        ASM api
+     * @param mv         visitor of the target method
+     * @param access     access of the target method
+     * @param name       name of the target method
+     * @param descriptor descriptor of the target method
+     * @param endpointId id of the histogram of the method
+     * @param dynamic    whether the class file supports invokedynamic
+     */
+    public TimedMethodVisitor(int api, MethodVisitor mv, int access, String name, String descriptor,
+                              String endpointId, boolean dynamic) {
+        this(api, mv, access, name, descriptor, TIMERS, "record", endpointId, dynamic);
+    }
+
+    /**
+     * @param recorder   internal name of the class recording the durations, with a {@code bootstrap} method
+     *                   shaped as {@link Timers#bootstrap} and a static {@code (Ljava/lang/String;J)V} record method
+     * @param recordName name of the record method and of the call sites
+     */
+    public TimedMethodVisitor(int api, MethodVisitor mv, int access, String name, String descriptor,
+                              String recorder, String recordName, String endpointId, boolean dynamic) {
+        super(api, mv, access, name, descriptor);
+        this.recorder = recorder;
+        this.recordName = recordName;
+        this.bootstrap = new Handle(Opcodes.H_INVOKESTATIC, recorder, "bootstrap", Timers.BOOTSTRAP_DESCRIPTOR, false);
+        this.endpointId = endpointId;
+        this.dynamic = dynamic;
+    }
+
+    @Override
+    protected void onMethodEnter() {
+        start = newLocal(Type.LONG_TYPE);
+        invokeStatic(Type.getType(System.class), new org.objectweb.asm.commons.Method("nanoTime", "()J"));
+        storeLocal(start);
+        bodyStart = mark();
+    }
+
+    @Override
+    protected void onMethodExit(int opcode) {
+        if (opcode != ATHROW) {
+            record();
+        }
+    }
+
+    @Override
+    public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+        // Locals are renumbered and a handler added, the woven classes are written with computed frames
+    }
+
+    @Override
+    public void visitMaxs(int maxStack, int maxLocals) {
+        if (null != bodyStart) {
+            Label handler = mark();
+            record();
+            throwException();
+            visitTryCatchBlock(bodyStart, handler, handler, null);
+        }
+        super.visitMaxs(maxStack, maxLocals);
+    }
+
+    private void record() {
+        invokeStatic(Type.getType(System.class), new org.objectweb.asm.commons.Method("nanoTime", "()J"));
+        loadLocal(start);
+        math(SUB, Type.LONG_TYPE);
+        if (dynamic) {
+            visitInvokeDynamicInsn(recordName, "(J)V", bootstrap, endpointId);
+        } else {
+            push(endpointId);
+            // The duration is under the id
+            dupX2();
+            pop();
+            visitMethodInsn(INVOKESTATIC, recorder, recordName, Timers.RECORD_DESCRIPTOR, false);
+        }
+    }
+}
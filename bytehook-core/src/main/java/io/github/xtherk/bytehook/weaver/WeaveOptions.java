@@ -0,0 +1,136 @@
+package io.github.xtherk.bytehook.weaver;
+
+import io.github.xtherk.bytehook.Modules;
+import lombok.Getter;
+
+/**
+ * Options changing the woven output for the same class and endpoints.
+ * <p>
+ * Everything in here must be part of {@link #key()}, the woven class cache relies on it.
+ *
+ * @author xtherk
+ */
+@Getter
+public final class WeaveOptions {
+
+    /**
+     * How woven methods call the fake methods, {@code direct} by default
+     *
+     * @see DispatchMode
+     */
+    public static final String DISPATCH_MODE_PROPERTY_NAME = "bh.dispatch.mode";
+
+    /**
+     * Copy the fake methods into the target methods instead of calling them, disabled by default
+     */
+    public static final String INLINE_PROPERTY_NAME = "bh.weave.inline";
+
+    /**
+     * Count the calls of the replaced methods and time their hooks apart from their original bodies, disabled by default
+     *
+     * @see io.github.xtherk.bytehook.metrics.Profiles
+     */
+    public static final String PROFILE_PROPERTY_NAME = "bh.weave.profile";
+
+    /**
+     * Options producing classes that only need the fake classes at runtime,
+     * except for {@link io.github.xtherk.bytehook.Behavior#TIMED} endpoints, which record into
+     * {@link io.github.xtherk.bytehook.metrics.Timers}
+     */
+    public static final WeaveOptions DEFAULT = new WeaveOptions(DispatchMode.DIRECT, false, false, false);
+
+    private final DispatchMode dispatchMode;
+    /**
+     * Whether the fake classes live in isolated module class loaders, the woven classes can't
+     * reference them and go through {@link io.github.xtherk.bytehook.dispatch.ModuleBridge}
+     */
+    private final boolean isolatedModules;
+    /**
+     * Whether the fake methods are copied into the target methods when possible, see {@link MethodInliner}.
+     * Inlined hooks can't be switched by {@link io.github.xtherk.bytehook.dispatch.HookDispatcher}.
+     */
+    private final boolean inline;
+    /**
+     * Whether the replaced methods record into {@link io.github.xtherk.bytehook.metrics.Profiles}
+     */
+    private final boolean profile;
+
+    private WeaveOptions(DispatchMode dispatchMode, boolean isolatedModules, boolean inline, boolean profile) {
+        this.dispatchMode = dispatchMode;
+        this.isolatedModules = isolatedModules;
+        this.inline = inline;
+        this.profile = profile;
+    }
+
+    /**
+     * @return options configured by the system properties
+     */
+    public static WeaveOptions fromSystemProperties() {
+        WeaveOptions options = DEFAULT.withIsolatedModules(Modules.isIsolated()).withInline(isInlineEnabled())
+                .withProfile(Boolean.getBoolean(PROFILE_PROPERTY_NAME));
+        String mode = System.getProperty(DISPATCH_MODE_PROPERTY_NAME);
+        if (null == mode || mode.isEmpty())
+            return options;
+        return options.withDispatchMode(DispatchMode.valueOf(mode.trim().toUpperCase()));
+    }
+
+    /**
+     * @return whether {@value #INLINE_PROPERTY_NAME} is set
+     */
+    public static boolean isInlineEnabled() {
+        return Boolean.getBoolean(INLINE_PROPERTY_NAME);
+    }
+
+    public WeaveOptions withDispatchMode(DispatchMode dispatchMode) {
+        return new WeaveOptions(dispatchMode, isolatedModules, inline, profile);
+    }
+
+    public WeaveOptions withIsolatedModules(boolean isolatedModules) {
+        return new WeaveOptions(dispatchMode, isolatedModules, inline, profile);
+    }
+
+    public WeaveOptions withInline(boolean inline) {
+        return new WeaveOptions(dispatchMode, isolatedModules, inline, profile);
+    }
+
+    public WeaveOptions withProfile(boolean profile) {
+        return new WeaveOptions(dispatchMode, isolatedModules, inline, profile);
+    }
+
+    /**
+     * @return whether hooked methods call through {@link io.github.xtherk.bytehook.dispatch.HookDispatcher}
+     * when the class allows it, isolated modules always do
+     */
+    public boolean isDynamicDispatch() {
+        return dispatchMode == DispatchMode.INDY || isolatedModules;
+    }
+
+    /**
+     * @return stable description of the options
+     */
+    public String key() {
+        return "dispatch=" + dispatchMode + ",isolated=" + isolatedModules + ",inline=" + inline + ",profile=" + profile;
+    }
+
+    @Override
+    public String toString() {
+        return key();
+    }
+
+    /**
+     * How a woven method calls its fake method.
+     */
+    public enum DispatchMode {
+        /**
+         * {@code invokestatic} of the fake method, a hook can only be changed by retransforming the class
+         */
+        DIRECT,
+        /**
+         * {@code invokedynamic} bound to a call site of {@link io.github.xtherk.bytehook.dispatch.HookDispatcher},
+         * hooks can be switched at runtime. The original body is kept after the hook call.
+         * Classes older than Java 7 and constructors fall back to {@link #DIRECT},
+         * or to boxed calls through {@link io.github.xtherk.bytehook.dispatch.ModuleBridge} for isolated modules.
+         */
+        INDY
+    }
+}
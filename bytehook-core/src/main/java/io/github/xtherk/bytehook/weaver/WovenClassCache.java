@@ -0,0 +1,205 @@
+package io.github.xtherk.bytehook.weaver;
+
+import io.github.xtherk.bytehook.ClassEndpoints;
+import io.github.xtherk.bytehook.Endpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persistent cache of woven class bytes, so that a restart with the same application
+ * and the same modules does not weave the hooked classes again.
+ * <p>
+ * An entry is keyed by a hash of the original class bytes, the endpoints of the class,
+ * the weave options and the weaver format, so any change to one of them misses. Classes holding inlined copies
+ * of fake methods are not cached. Each class keeps a single entry,
+ * writing a new one removes the stale ones.
+ *
+ * @author xtherk
+ */
+public class WovenClassCache {
+
+    /**
+     * Directory of the cache, the cache is disabled when the property is not set
+     */
+    public static final String CACHE_DIR_PROPERTY_NAME = "bh.cache.dir";
+    /**
+     * Bump when the woven output changes for the same input
+     */
+    private static final int WEAVER_VERSION = 2;
+    private static final int MAGIC = 0x42485743;
+    private static final int HEADER_SIZE = 8;
+    private static final String ENTRY_SUFFIX = ".class";
+    private static final Logger logger = LoggerFactory.getLogger(WovenClassCache.class);
+    private static final WovenClassCache DISABLED = new WovenClassCache(null, WeaveOptions.DEFAULT);
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(WovenClassCache::newDigest);
+
+    private final Path directory;
+    private final WeaveOptions options;
+
+    private WovenClassCache(Path directory, WeaveOptions options) {
+        this.directory = directory;
+        this.options = options;
+    }
+
+    /**
+     * @param directory cache directory
+     * @return cache storing entries in the given directory
+     */
+    public static WovenClassCache at(Path directory) {
+        return at(directory, WeaveOptions.DEFAULT);
+    }
+
+    /**
+     * @param directory cache directory
+     * @param options   options the cached classes are woven with
+     * @return cache storing entries in the given directory
+     */
+    public static WovenClassCache at(Path directory, WeaveOptions options) {
+        return new WovenClassCache(directory, options);
+    }
+
+    /**
+     * @return cache configured by {@value #CACHE_DIR_PROPERTY_NAME}, disabled if the property is not set
+     */
+    public static WovenClassCache fromSystemProperties() {
+        return fromSystemProperties(WeaveOptions.fromSystemProperties());
+    }
+
+    /**
+     * @param options options the cached classes are woven with
+     * @return cache configured by {@value #CACHE_DIR_PROPERTY_NAME}, disabled if the property is not set
+     */
+    public static WovenClassCache fromSystemProperties(WeaveOptions options) {
+        String directory = System.getProperty(CACHE_DIR_PROPERTY_NAME);
+        if (null == directory || directory.isEmpty())
+            return DISABLED;
+        logger.info("woven class cache directory is {}", directory);
+        return at(Paths.get(directory), options);
+    }
+
+    public boolean isEnabled() {
+        return null != directory;
+    }
+
+    /**
+     * @param className       internal name of the class
+     * @param endpoints       endpoints of the class
+     * @param classfileBuffer original class bytes
+     * @return cached woven bytes or {@code null} on a miss
+     */
+    public byte[] get(String className, ClassEndpoints endpoints, byte[] classfileBuffer) {
+        if (!isCacheable(endpoints))
+            return null;
+        Path entry = entryOf(className, endpoints, classfileBuffer);
+        if (!Files.isRegularFile(entry))
+            return null;
+        try {
+            ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(entry));
+            if (content.remaining() < HEADER_SIZE || content.getInt() != MAGIC
+                    || content.getInt() != classfileBuffer.length) {
+                logger.warn("Dropping corrupted cache entry {}", entry);
+                Files.deleteIfExists(entry);
+                return null;
+            }
+            byte[] woven = new byte[content.remaining()];
+            content.get(woven);
+            return woven;
+        } catch (IOException e) {
+            logger.warn("Failed to read cache entry {}", entry, e);
+            return null;
+        }
+    }
+
+    /**
+     * Store woven bytes, replacing the stale entries of the class.
+     *
+     * @param className       internal name of the class
+     * @param endpoints       endpoints of the class
+     * @param classfileBuffer original class bytes
+     * @param woven           woven class bytes
+     */
+    public void put(String className, ClassEndpoints endpoints, byte[] classfileBuffer, byte[] woven) {
+        if (!isCacheable(endpoints) || null == woven)
+            return;
+        Path entry = entryOf(className, endpoints, classfileBuffer);
+        try {
+            Path classDirectory = Files.createDirectories(entry.getParent());
+            Path temp = Files.createTempFile(classDirectory, "entry", ".tmp");
+            ByteBuffer content = ByteBuffer.allocate(HEADER_SIZE + woven.length);
+            content.putInt(MAGIC).putInt(classfileBuffer.length).put(woven);
+            Files.write(temp, content.array());
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            removeStaleEntries(classDirectory, entry);
+        } catch (IOException e) {
+            logger.warn("Failed to write cache entry {}", entry, e);
+        }
+    }
+
+    /**
+     * Inlined copies depend on the bytes of the fake classes, which are not part of the key
+     */
+    private boolean isCacheable(ClassEndpoints endpoints) {
+        return isEnabled() && !options.isInline()
+                && endpoints.getEndpoints().stream().noneMatch(Endpoint::isCopyTargetMethod);
+    }
+
+    private static void removeStaleEntries(Path classDirectory, Path entry) throws IOException {
+        List<Path> stale;
+        try (Stream<Path> entries = Files.list(classDirectory)) {
+            stale = entries.filter(path -> !path.equals(entry) && path.toString().endsWith(ENTRY_SUFFIX))
+                    .collect(Collectors.toList());
+        }
+        for (Path path : stale) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private Path entryOf(String className, ClassEndpoints endpoints, byte[] classfileBuffer) {
+        MessageDigest digest = DIGEST.get();
+        digest.reset();
+        ByteBuffer version = ByteBuffer.allocate(4).putInt(WEAVER_VERSION);
+        digest.update(version.array());
+        digest.update(options.key().getBytes(StandardCharsets.UTF_8));
+        // Sorted, so that the key does not depend on the module scanning order
+        endpoints.getEndpoints().stream()
+                .map(WovenClassCache::describe)
+                .sorted(Comparator.naturalOrder())
+                .forEach(description -> digest.update(description.getBytes(StandardCharsets.UTF_8)));
+        digest.update(classfileBuffer);
+        return directory.resolve(className.replace('/', '.')).resolve(toHex(digest.digest()) + ENTRY_SUFFIX);
+    }
+
+    private static String describe(Endpoint endpoint) {
+        return endpoint.getTargetClass() + ' ' + endpoint.getTargetMethod() + ' ' + endpoint.getTargetMethodDesc() + ' '
+                + endpoint.getFakeClass() + ' ' + endpoint.getFakeMethod() + ' ' + endpoint.getFakeMethodDesc() + ' '
+                + endpoint.isRequireInstance() + ' ' + endpoint.isCopyTargetMethod() + ' ' + endpoint.isReplaceFlag() + ' '
+                + endpoint.getBehavior() + ' ' + endpoint.isPassReturnValue() + ' ' + endpoint.isPassThrown() + '\n';
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package io.github.xtherk.bytehook;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * @author xtherk
+ */
+public class EndpointTableTests {
+
+    @Test
+    public void testSlicesByClass() {
+        Endpoint first = new Endpoint("com/example/A", "run", "()V", "com/example/Hooks", "run", "()V",
+                false, false, false, Behavior.SET);
+        Endpoint other = new Endpoint("com/example/B", "get", "(I)", "com/example/Hooks", "enter", "(I)V",
+                false, false, false, Behavior.INSERT_BEFORE);
+        Endpoint second = new Endpoint("com/example/A", "get", "(I)", "com/example/Hooks", "exit", "(II)I",
+                true, true, false, Behavior.INSERT_AFTER, true, true);
+        EndpointTable table = EndpointTable.of(Arrays.asList(first, other, second));
+
+        Assertions.assertEquals(3, table.size());
+        Assertions.assertEquals(2, table.classCount());
+        // Rows of a class keep their order, flags survive the packing
+        Assertions.assertEquals(Arrays.asList(first, second), table.endpoints("com/example/A"));
+        Assertions.assertEquals(Collections.singletonList(other), table.endpoints("com/example/B"));
+        Assertions.assertEquals(-1, table.classIndex("com/example/C"));
+        Assertions.assertEquals(Collections.emptyList(), table.endpoints("com/example/C"));
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("com/example/A", "com/example/B")), table.targetClasses());
+
+        // Strings are pooled
+        List<Endpoint> endpoints = table.endpoints("com/example/A");
+        Assertions.assertSame(endpoints.get(0).getFakeClass(), endpoints.get(1).getFakeClass());
+        Assertions.assertSame(endpoints.get(0).getTargetMethod(), endpoints.get(0).getFakeMethod());
+    }
+
+    @Test
+    public void testCopyClasses() {
+        EndpointTable.Builder builder = new EndpointTable.Builder();
+        for (int i = 0; i < 1000; i++) {
+            builder.add(new Endpoint("com/example/Target" + i % 100, "m" + i, "()V", "com/example/Hooks", "m" + i, "()V",
+                    false, false, false, Behavior.SET));
+        }
+        EndpointTable table = builder.build();
+        EndpointTable.Builder copy = new EndpointTable.Builder();
+        for (int i = 0; i < table.classCount(); i++) {
+            copy.addClass(table, i);
+        }
+        EndpointTable copied = copy.build();
+        Assertions.assertEquals(1000, copied.size());
+        for (String className : table.targetClasses()) {
+            Assertions.assertEquals(table.endpoints(className), copied.endpoints(className));
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package io.github.xtherk.bytehook;
+
+import io.github.xtherk.bytehook.loader.ModuleClassLoader;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.Type;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * @author xtherk
+ */
+public class ModulesTests {
+
+    private static final String TARGET = "io/github/xtherk/bytehook/ReloadTarget";
+
+    @Test
+    public void testReloadOnlyReportsChangedTargets(@TempDir Path directory) throws Exception {
+        Path module = directory.resolve("module");
+        String classFile = Type.getInternalName(ReloadHooks.class) + ".class";
+        Path hooks = module.resolve(classFile);
+        Files.createDirectories(hooks.getParent());
+        Path testClasses = Paths.get(ReloadHooks.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        Files.copy(testClasses.resolve(classFile), hooks);
+
+        Assertions.assertEquals(Collections.singleton(TARGET), Modules.reload(module));
+        Assertions.assertNotNull(Modules.getClassEndpoints(TARGET));
+        Assertions.assertTrue(Modules.mayBeHooked(TARGET));
+
+        // Same endpoints, nothing to retransform
+        Assertions.assertEquals(Collections.emptySet(), Modules.reload(module));
+
+        Files.delete(hooks);
+        Assertions.assertEquals(Collections.singleton(TARGET), Modules.reload(module));
+        Assertions.assertNull(Modules.getClassEndpoints(TARGET));
+    }
+
+    @Test
+    public void testMergeModulesHookingTheSameClass(@TempDir Path directory) throws Exception {
+        Path first = copyHooks(directory.resolve("first"));
+        Path second = copyHooks(directory.resolve("second"));
+        Modules.reload(first);
+        EndpointRegistry registry = Modules.registry();
+        Assertions.assertEquals(Collections.singleton(TARGET), Modules.reload(second));
+
+        // Merged instead of replaced, the published snapshot is not changed
+        Assertions.assertEquals(2, Modules.getEndpoints(TARGET).size());
+        Assertions.assertEquals(1, registry.get(TARGET).getEndpoints().size());
+        Assertions.assertTrue(Modules.registry().getVersion() > registry.getVersion());
+
+        Files.delete(second.resolve(Type.getInternalName(ReloadHooks.class) + ".class"));
+        Assertions.assertEquals(Collections.singleton(TARGET), Modules.reload(second));
+        Assertions.assertEquals(1, Modules.getEndpoints(TARGET).size());
+        Files.delete(first.resolve(Type.getInternalName(ReloadHooks.class) + ".class"));
+        Modules.reload(first);
+        Assertions.assertNull(Modules.getClassEndpoints(TARGET));
+    }
+
+    private static Path copyHooks(Path module) throws Exception {
+        String classFile = Type.getInternalName(ReloadHooks.class) + ".class";
+        Path hooks = module.resolve(classFile);
+        Files.createDirectories(hooks.getParent());
+        Path testClasses = Paths.get(ReloadHooks.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        Files.copy(testClasses.resolve(classFile), hooks);
+        return module;
+    }
+
+    @Test
+    public void testUnloadIsolatedModule(@TempDir Path directory) throws Exception {
+        Assumptions.assumeTrue(Modules.isIsolated());
+        Path module = directory.resolve("isolated");
+        String hooksClass = Type.getInternalName(ReloadHooks.class);
+        Path hooks = module.resolve(hooksClass + ".class");
+        Files.createDirectories(hooks.getParent());
+        Path testClasses = Paths.get(ReloadHooks.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        Files.copy(testClasses.resolve(hooksClass + ".class"), hooks);
+
+        Modules.reload(module);
+        ModuleClassLoader loader = Modules.moduleClassLoaderOf(hooksClass);
+        Assertions.assertNotNull(loader);
+        Assertions.assertEquals(module, loader.getModule());
+        Assertions.assertNotNull(loader.findHook(hooksClass, "run", "()V"));
+
+        // Changed classes get a new loader and every target is affected
+        Assertions.assertEquals(Collections.singleton(TARGET), Modules.reload(module, true));
+        Assertions.assertNotSame(loader, Modules.moduleClassLoaderOf(hooksClass));
+
+        try (Stream<Path> files = Files.walk(module)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+        Assertions.assertEquals(Collections.singleton(TARGET), Modules.reload(module));
+        Assertions.assertNull(Modules.moduleClassLoaderOf(hooksClass));
+    }
+}
@@ -0,0 +1,14 @@
+package io.github.xtherk.bytehook;
+
+/**
+ * Hooks of a class that is never loaded, used to reload a module.
+ *
+ * @author xtherk
+ */
+@HookClass("io.github.xtherk.bytehook.ReloadTarget")
+public class ReloadHooks {
+
+    @HookMethod
+    public static void run() {
+    }
+}
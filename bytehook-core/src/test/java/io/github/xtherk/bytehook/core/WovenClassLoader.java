@@ -0,0 +1,69 @@
+package io.github.xtherk.bytehook.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.github.xtherk.bytehook.util.IOUtil;
+
+/**
+ * Defines the given classes itself and delegates everything else to the parent,
+ * so that woven test classes can be loaded next to their fake classes.
+ *
+ * @author xtherk
+ */
+public class WovenClassLoader extends ClassLoader {
+	private final Map<String, byte[]> classes = new HashMap<>();
+
+	public WovenClassLoader() {
+		super(WovenClassLoader.class.getClassLoader());
+	}
+
+	/**
+	 * @param name
+	 * 		Binary name of the class.
+	 * @param bytecode
+	 * 		Class bytecode.
+	 *
+	 * @return This loader.
+	 */
+	public WovenClassLoader define(String name, byte[] bytecode) {
+		classes.put(name, bytecode);
+		return this;
+	}
+
+	/**
+	 * @param klass
+	 * 		Class of the test classpath.
+	 *
+	 * @return Bytecode of the class.
+	 */
+	public static byte[] bytecodeOf(Class<?> klass) {
+		String resource = klass.getName().replace('.', '/') + ".class";
+		try (InputStream in = klass.getClassLoader().getResourceAsStream(resource)) {
+			return IOUtil.toByteArray(in);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+		byte[] bytecode = classes.get(name);
+		if (bytecode == null) {
+			return super.loadClass(name, resolve);
+		}
+		synchronized (getClassLoadingLock(name)) {
+			Class<?> klass = findLoadedClass(name);
+			if (klass == null) {
+				klass = defineClass(name, bytecode, 0, bytecode.length);
+			}
+			if (resolve) {
+				resolveClass(klass);
+			}
+			return klass;
+		}
+	}
+}
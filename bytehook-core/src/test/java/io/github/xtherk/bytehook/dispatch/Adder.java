@@ -0,0 +1,13 @@
+package io.github.xtherk.bytehook.dispatch;
+
+/**
+ * Target class of the bridge tests.
+ *
+ * @author xtherk
+ */
+public class Adder {
+
+    public static int add(int a, int b) {
+        return a + b;
+    }
+}
@@ -0,0 +1,18 @@
+package io.github.xtherk.bytehook.dispatch;
+
+import io.github.xtherk.bytehook.HookClass;
+import io.github.xtherk.bytehook.HookMethod;
+
+/**
+ * Fake class of {@link Adder}.
+ *
+ * @author xtherk
+ */
+@HookClass("io.github.xtherk.bytehook.dispatch.Adder")
+public class AdderHooks {
+
+    @HookMethod
+    public static int add(int a, int b) {
+        return a * b;
+    }
+}
@@ -0,0 +1,95 @@
+package io.github.xtherk.bytehook.dispatch;
+
+import io.github.xtherk.bytehook.Behavior;
+import io.github.xtherk.bytehook.Endpoint;
+import io.github.xtherk.bytehook.Modules;
+import io.github.xtherk.bytehook.core.WovenClassLoader;
+import io.github.xtherk.bytehook.util.TransformUtil;
+import io.github.xtherk.bytehook.weaver.Greeter;
+import io.github.xtherk.bytehook.weaver.GreeterHooks;
+import io.github.xtherk.bytehook.weaver.WeaveOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+
+/**
+ * @author xtherk
+ */
+public class HookDispatcherTests {
+
+    private static final String GREETER = Type.getInternalName(Greeter.class);
+    private static final String GREET_DESC = "(Ljava/lang/String;)Ljava/lang/String;";
+    private static final String ENDPOINT_ID = HookDispatcher.endpointId(GREETER, "greet", GREET_DESC);
+
+    @BeforeAll
+    public static void register() {
+        Modules.register(Collections.singletonList(new Endpoint(GREETER, "greet", GREET_DESC,
+                Type.getInternalName(GreeterHooks.class), "greet", "(L" + GREETER + ";Ljava/lang/String;)Ljava/lang/String;",
+                true, false, false, Behavior.SET)));
+    }
+
+    @AfterEach
+    public void restore() {
+        HookDispatcher.retarget(ENDPOINT_ID, null);
+    }
+
+    @Test
+    public void testSwitchHook() throws Exception {
+        Class<?> greeter = loadWovenGreeter();
+        // Retransformation can't add methods
+        Assertions.assertEquals(Greeter.class.getDeclaredMethods().length, greeter.getDeclaredMethods().length);
+
+        Object instance = greeter.getDeclaredConstructor().newInstance();
+        Method greet = greeter.getMethod("greet", String.class);
+        Assertions.assertEquals("Hooked world", greet.invoke(instance, "world"));
+
+        HookDispatcher.disable(ENDPOINT_ID);
+        Assertions.assertFalse(HookDispatcher.isEnabled(ENDPOINT_ID));
+        Assertions.assertEquals("Hello world", greet.invoke(instance, "world"));
+
+        HookDispatcher.retarget(ENDPOINT_ID, MethodHandles.lookup().findStatic(HookDispatcherTests.class, "shout",
+                MethodType.methodType(String.class, Object.class, String.class)));
+        Assertions.assertTrue(HookDispatcher.isEnabled(ENDPOINT_ID));
+        Assertions.assertEquals("WORLD", greet.invoke(instance, "world"));
+
+        HookDispatcher.retarget(ENDPOINT_ID, null);
+        Assertions.assertEquals("Hooked world", greet.invoke(instance, "world"));
+    }
+
+    @Test
+    public void testRejectIncompatibleReplacement() throws Exception {
+        Class<?> greeter = loadWovenGreeter();
+        Object instance = greeter.getDeclaredConstructor().newInstance();
+        Method greet = greeter.getMethod("greet", String.class);
+        // Bind the call site
+        Assertions.assertEquals("Hooked world", greet.invoke(instance, "world"));
+        Assertions.assertThrows(WrongMethodTypeException.class, () -> HookDispatcher.retarget(ENDPOINT_ID,
+                MethodHandles.lookup().findStatic(HookDispatcherTests.class, "count", MethodType.methodType(int.class))));
+        Assertions.assertEquals("Hooked world", greet.invoke(instance, "world"));
+    }
+
+    private static Class<?> loadWovenGreeter() throws ClassNotFoundException {
+        byte[] woven = TransformUtil.transform(null, GREETER, WovenClassLoader.bytecodeOf(Greeter.class),
+                WeaveOptions.DEFAULT.withDispatchMode(WeaveOptions.DispatchMode.INDY));
+        return new WovenClassLoader()
+                .define(Greeter.class.getName(), woven)
+                .define(GreeterHooks.class.getName(), WovenClassLoader.bytecodeOf(GreeterHooks.class))
+                .loadClass(Greeter.class.getName());
+    }
+
+    static String shout(Object greeter, String name) {
+        return name.toUpperCase();
+    }
+
+    static int count() {
+        return 0;
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.xtherk.bytehook.dispatch;
+
+import io.github.xtherk.bytehook.Behavior;
+import io.github.xtherk.bytehook.Endpoint;
+import io.github.xtherk.bytehook.Modules;
+import io.github.xtherk.bytehook.core.WovenClassLoader;
+import io.github.xtherk.bytehook.util.TransformUtil;
+import io.github.xtherk.bytehook.weaver.WeaveOptions;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.util.Collections;
+
+/**
+ * @author xtherk
+ */
+public class ModuleBridgeTests {
+
+    private static final String ADDER = Type.getInternalName(Adder.class);
+    private static final WeaveOptions ISOLATED = WeaveOptions.DEFAULT.withIsolatedModules(true);
+
+    @BeforeAll
+    public static void register() {
+        Modules.register(Collections.singletonList(new Endpoint(ADDER, "add", "(II)I",
+                Type.getInternalName(AdderHooks.class), "add", "(II)I", false, false, false, Behavior.SET)));
+    }
+
+    @Test
+    public void testDynamicBridge() throws Exception {
+        byte[] woven = TransformUtil.transform(null, ADDER, WovenClassLoader.bytecodeOf(Adder.class), ISOLATED);
+        Assertions.assertTrue(references(woven, ADDER));
+        Assertions.assertFalse(references(woven, Type.getInternalName(AdderHooks.class)));
+        Assertions.assertEquals(12, invokeAdd(woven));
+    }
+
+    @Test
+    public void testBoxedBridge() throws Exception {
+        // Java 6 class files can't use invokedynamic
+        byte[] legacy = WovenClassLoader.bytecodeOf(Adder.class);
+        legacy[6] = 0;
+        legacy[7] = Opcodes.V1_6;
+        byte[] woven = TransformUtil.transform(null, ADDER, legacy, ISOLATED);
+        Assertions.assertEquals(Opcodes.V1_6, new ClassReader(woven).readShort(6));
+        Assertions.assertFalse(references(woven, Type.getInternalName(AdderHooks.class)));
+        Assertions.assertEquals(12, invokeAdd(woven));
+    }
+
+    private static int invokeAdd(byte[] woven) throws ReflectiveOperationException {
+        Class<?> adder = new WovenClassLoader().define(Adder.class.getName(), woven).loadClass(Adder.class.getName());
+        return (int) adder.getMethod("add", int.class, int.class).invoke(null, 3, 4);
+    }
+
+    private static boolean references(byte[] bytecode, String internalName) {
+        ClassReader reader = new ClassReader(bytecode);
+        char[] buffer = new char[reader.getMaxStringLength()];
+        for (int i = 1; i < reader.getItemCount(); i++) {
+            int offset = reader.getItem(i);
+            if (offset > 0 && bytecode[offset - 1] == 7 && internalName.equals(reader.readUTF8(offset, buffer))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
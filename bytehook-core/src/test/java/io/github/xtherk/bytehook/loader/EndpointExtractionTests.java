@@ -0,0 +1,94 @@
+package io.github.xtherk.bytehook.loader;
+
+import io.github.xtherk.bytehook.Behavior;
+import io.github.xtherk.bytehook.Endpoint;
+import io.github.xtherk.bytehook.processor.EndpointIndex;
+import io.github.xtherk.bytehook.weaver.AccountAdvice;
+import io.github.xtherk.bytehook.weaver.Greeter;
+import io.github.xtherk.bytehook.weaver.GreeterHooks;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.Type;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @author xtherk
+ */
+public class EndpointExtractionTests {
+
+    @Test
+    public void testEndpointsFromBytecode(@TempDir Path module) throws Exception {
+        String classFile = Type.getInternalName(GreeterHooks.class) + ".class";
+        Path copy = module.resolve(classFile);
+        Files.createDirectories(copy.getParent());
+        Files.copy(testClasses().resolve(classFile), copy);
+        // No index in this module, the class files are scanned
+        assertGreeterEndpoint(DirectoriesModuleLoader.INSTANCE.load(module));
+    }
+
+    @Test
+    public void testEndpointsFromIndex() throws Exception {
+        // The index is generated by the processor while compiling the tests
+        Path testClasses = testClasses();
+        Assertions.assertTrue(Files.isRegularFile(testClasses.resolve(EndpointIndex.LOCATION)));
+        assertGreeterEndpoint(DirectoriesModuleLoader.INSTANCE.load(testClasses));
+    }
+
+    @Test
+    public void testOutdatedIndexIsIgnored(@TempDir Path module) throws Exception {
+        String classFile = Type.getInternalName(GreeterHooks.class) + ".class";
+        Path copy = module.resolve(classFile);
+        Files.createDirectories(copy.getParent());
+        Files.copy(testClasses().resolve(classFile), copy);
+        Path index = module.resolve(EndpointIndex.LOCATION);
+        Files.createDirectories(index.getParent());
+        // Written before the advice and call site flags, its flags can't be trusted
+        Files.write(index, Arrays.asList("# bytehook endpoint index v1",
+                "does/not/Exist\tgreet\t()V\tdoes/not/Hooks\tgreet\t()V\t0\tSET"), StandardCharsets.UTF_8);
+        assertGreeterEndpoint(DirectoriesModuleLoader.INSTANCE.load(module));
+    }
+
+    @Test
+    public void testAdviceEndpointsMatchIndex(@TempDir Path module) throws Exception {
+        String classFile = Type.getInternalName(AccountAdvice.class) + ".class";
+        Path copy = module.resolve(classFile);
+        Files.createDirectories(copy.getParent());
+        Files.copy(testClasses().resolve(classFile), copy);
+        List<Endpoint> scanned = DirectoriesModuleLoader.INSTANCE.load(module);
+        List<Endpoint> indexed = DirectoriesModuleLoader.INSTANCE.load(testClasses()).stream()
+                .filter(endpoint -> endpoint.getFakeClass().equals(Type.getInternalName(AccountAdvice.class)))
+                .collect(Collectors.toList());
+        Assertions.assertEquals(3, scanned.size());
+        Assertions.assertEquals(new HashSet<>(indexed), new HashSet<>(scanned));
+    }
+
+    private static Path testClasses() throws Exception {
+        return Paths.get(GreeterHooks.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    }
+
+    private static void assertGreeterEndpoint(List<Endpoint> loaded) {
+        List<Endpoint> endpoints = loaded.stream()
+                .filter(endpoint -> endpoint.getFakeClass().equals(Type.getInternalName(GreeterHooks.class)))
+                .collect(Collectors.toList());
+        Assertions.assertEquals(1, endpoints.size());
+        Endpoint endpoint = endpoints.get(0);
+        Assertions.assertEquals(Type.getInternalName(Greeter.class), endpoint.getTargetClass());
+        Assertions.assertEquals("greet", endpoint.getTargetMethod());
+        Assertions.assertEquals("(Ljava/lang/String;)Ljava/lang/String;", endpoint.getTargetMethodDesc());
+        Assertions.assertEquals("greet", endpoint.getFakeMethod());
+        Assertions.assertEquals("(L" + Type.getInternalName(Greeter.class) + ";Ljava/lang/String;)Ljava/lang/String;",
+                endpoint.getFakeMethodDesc());
+        Assertions.assertTrue(endpoint.isRequireInstance());
+        Assertions.assertFalse(endpoint.isCopyTargetMethod());
+        Assertions.assertEquals(Behavior.SET, endpoint.getBehavior());
+    }
+}
@@ -0,0 +1,34 @@
+package io.github.xtherk.bytehook.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * @author xtherk
+ */
+public class AgentMetricsTests {
+
+    @Test
+    public void testMBean() throws Exception {
+        AgentMetrics metrics = AgentMetrics.get();
+        long woven = metrics.getClassesWoven();
+        long bytesOut = metrics.getWeaverBytesOut();
+        metrics.classWoven(1_000, 100, 150);
+        metrics.classWoven(5_000, 200, 260);
+        metrics.retransformBatch(3, 42);
+
+        AgentMetrics.register();
+        // Registering twice is harmless
+        AgentMetrics.register();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(AgentMetrics.OBJECT_NAME);
+        Assertions.assertEquals(woven + 2, server.getAttribute(name, "ClassesWoven"));
+        Assertions.assertEquals(bytesOut + 410, server.getAttribute(name, "WeaverBytesOut"));
+        Assertions.assertTrue((Long) server.getAttribute(name, "MaxTransformNanos") >= 5_000);
+        Assertions.assertTrue((Long) server.getAttribute(name, "RetransformBatches") >= 1);
+    }
+}
@@ -0,0 +1,104 @@
+package io.github.xtherk.bytehook.metrics;
+
+import io.github.xtherk.bytehook.Behavior;
+import io.github.xtherk.bytehook.Endpoint;
+import io.github.xtherk.bytehook.Modules;
+import io.github.xtherk.bytehook.core.WovenClassLoader;
+import io.github.xtherk.bytehook.dispatch.HookDispatcher;
+import io.github.xtherk.bytehook.util.TransformUtil;
+import io.github.xtherk.bytehook.weaver.Formatter;
+import io.github.xtherk.bytehook.weaver.FormatterHooks;
+import io.github.xtherk.bytehook.weaver.Greeter;
+import io.github.xtherk.bytehook.weaver.GreeterHooks;
+import io.github.xtherk.bytehook.weaver.WeaveOptions;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * @author xtherk
+ */
+public class ProfilesTests {
+
+    private static final WeaveOptions PROFILE = WeaveOptions.DEFAULT.withProfile(true);
+
+    @Test
+    public void testInlinedOriginal() throws Exception {
+        String formatter = Type.getInternalName(Formatter.class);
+        String hooks = Type.getInternalName(FormatterHooks.class);
+        Modules.register(Arrays.asList(
+                new Endpoint(formatter, "pad", "(Ljava/lang/String;I)Ljava/lang/String;",
+                        hooks, "pad", "(L" + formatter + ";Ljava/lang/String;I)Ljava/lang/String;",
+                        true, true, false, Behavior.SET),
+                new Endpoint(formatter, "digits", "(J)I", hooks, "digits", "(J)I",
+                        false, true, false, Behavior.SET)));
+        byte[] woven = TransformUtil.transform(null, formatter, WovenClassLoader.bytecodeOf(Formatter.class), PROFILE);
+        Class<?> klass = new WovenClassLoader().define(Formatter.class.getName(), woven)
+                .loadClass(Formatter.class.getName());
+        Object instance = klass.getDeclaredConstructor().newInstance();
+        Method pad = klass.getMethod("pad", String.class, int.class);
+        Assertions.assertEquals("[ab...]", pad.invoke(instance, "ab", 5));
+        Assertions.assertEquals("ab", pad.invoke(instance, "ab", -1));
+        Assertions.assertEquals(4, klass.getMethod("digits", long.class).invoke(null, -120L));
+
+        ProfileSnapshot padProfile = Profiles.snapshot(
+                HookDispatcher.endpointId(formatter, "pad", "(Ljava/lang/String;I)Ljava/lang/String;"));
+        Assertions.assertNotNull(padProfile);
+        Assertions.assertEquals(2, padProfile.getCalls());
+        // The hook returns early without calling the original method
+        Assertions.assertEquals(1, padProfile.getOriginalCalls());
+        Assertions.assertTrue(padProfile.getTotalNanos() >= padProfile.getOriginalNanos());
+        ProfileSnapshot digitsProfile = Profiles.snapshot(HookDispatcher.endpointId(formatter, "digits", "(J)I"));
+        Assertions.assertEquals(1, digitsProfile.getCalls());
+        Assertions.assertEquals(1, digitsProfile.getOriginalCalls());
+    }
+
+    @Test
+    public void testDispatchedHook() throws Exception {
+        String greeter = Type.getInternalName(Greeter.class);
+        String descriptor = "(Ljava/lang/String;)Ljava/lang/String;";
+        String endpointId = HookDispatcher.endpointId(greeter, "greet", descriptor);
+        Modules.register(Collections.singletonList(new Endpoint(greeter, "greet", descriptor,
+                Type.getInternalName(GreeterHooks.class), "greet", "(L" + greeter + ";Ljava/lang/String;)Ljava/lang/String;",
+                true, false, false, Behavior.SET)));
+        byte[] woven = TransformUtil.transform(null, greeter, WovenClassLoader.bytecodeOf(Greeter.class),
+                PROFILE.withDispatchMode(WeaveOptions.DispatchMode.INDY));
+        Class<?> klass = new WovenClassLoader()
+                .define(Greeter.class.getName(), woven)
+                .define(GreeterHooks.class.getName(), WovenClassLoader.bytecodeOf(GreeterHooks.class))
+                .loadClass(Greeter.class.getName());
+        Object instance = klass.getDeclaredConstructor().newInstance();
+        Method greet = klass.getMethod("greet", String.class);
+        Assertions.assertEquals("Hooked world", greet.invoke(instance, "world"));
+        HookDispatcher.disable(endpointId);
+        try {
+            Assertions.assertEquals("Hello world", greet.invoke(instance, "world"));
+        } finally {
+            HookDispatcher.enable(endpointId);
+        }
+        HookDispatcher.retarget(endpointId, MethodHandles.lookup().findStatic(ProfilesTests.class, "fail",
+                MethodType.methodType(String.class, Object.class, String.class)));
+        try {
+            Assertions.assertThrows(InvocationTargetException.class, () -> greet.invoke(instance, "world"));
+        } finally {
+            HookDispatcher.retarget(endpointId, null);
+        }
+
+        ProfileSnapshot profile = Profiles.snapshot(endpointId);
+        Assertions.assertNotNull(profile);
+        // A disabled hook is not a call of the hook, a throwing one is
+        Assertions.assertEquals(2, profile.getCalls());
+        Assertions.assertEquals(0, profile.getOriginalCalls());
+    }
+
+    static String fail(Object greeter, String name) {
+        throw new IllegalStateException(name);
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.xtherk.bytehook.metrics;
+
+import io.github.xtherk.bytehook.Behavior;
+import io.github.xtherk.bytehook.Endpoint;
+import io.github.xtherk.bytehook.Modules;
+import io.github.xtherk.bytehook.core.WovenClassLoader;
+import io.github.xtherk.bytehook.dispatch.HookDispatcher;
+import io.github.xtherk.bytehook.util.TransformUtil;
+import io.github.xtherk.bytehook.weaver.Greeter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Type;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+
+/**
+ * @author xtherk
+ */
+public class TimersTests {
+
+    @Test
+    public void testBuckets() {
+        for (long value : new long[]{0, 1, 7, 8, 15, 16, 17, 31, 1000, 123_456_789, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.indexOf(value);
+            Assertions.assertTrue(LatencyHistogram.lowestValue(index) <= value, String.valueOf(value));
+            Assertions.assertTrue(LatencyHistogram.highestValue(index) >= value, String.valueOf(value));
+            // Log-linear precision
+            Assertions.assertTrue(LatencyHistogram.highestValue(index) - LatencyHistogram.lowestValue(index)
+                    <= Math.max(0, value / LatencyHistogram.SUB_BUCKETS), String.valueOf(value));
+        }
+        Assertions.assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.indexOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testSnapshot() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000L);
+        }
+        HistogramSnapshot snapshot = histogram.snapshot();
+        Assertions.assertEquals(100, snapshot.getCount());
+        Assertions.assertEquals(5_050_000, snapshot.getTotalNanos());
+        Assertions.assertEquals(100_000, snapshot.getMaxNanos());
+        long median = snapshot.getValueAtPercentile(50);
+        Assertions.assertTrue(median >= 50_000 && median < 50_000 * 1.125, String.valueOf(median));
+        Assertions.assertEquals(100_000, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testTimedMethod() throws Exception {
+        String greeter = Type.getInternalName(Greeter.class);
+        Modules.register(Collections.singletonList(new Endpoint(greeter, "count", "(Ljava/lang/String;I)",
+                Type.getInternalName(TimersTests.class), "count", "(Ljava/lang/String;I)V",
+                false, false, false, Behavior.TIMED)));
+        byte[] woven = TransformUtil.transform(greeter, WovenClassLoader.bytecodeOf(Greeter.class));
+        Class<?> klass = new WovenClassLoader().define(Greeter.class.getName(), woven).loadClass(Greeter.class.getName());
+        Method count = klass.getMethod("count", String.class, int.class);
+        Assertions.assertEquals(6, count.invoke(null, "abc", 2));
+        Assertions.assertEquals(0, count.invoke(null, "abc", 0));
+        Assertions.assertThrows(InvocationTargetException.class, () -> count.invoke(null, null, 1));
+
+        HistogramSnapshot snapshot = Timers.snapshot(HookDispatcher.endpointId(greeter, "count", "(Ljava/lang/String;I)I"));
+        Assertions.assertNotNull(snapshot);
+        Assertions.assertEquals(3, snapshot.getCount());
+        Assertions.assertTrue(snapshot.getTotalNanos() > 0);
+    }
+
+    public static void count(String name, int times) {
+    }
+}
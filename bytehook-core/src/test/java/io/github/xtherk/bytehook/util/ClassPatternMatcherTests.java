@@ -0,0 +1,54 @@
+package io.github.xtherk.bytehook.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author xtherk
+ */
+public class ClassPatternMatcherTests {
+
+    @Test
+    public void testWildcards() {
+        Assertions.assertTrue(Wildcards.matches("com/vendor/client/*Service", "com/vendor/client/UserService"));
+        Assertions.assertTrue(Wildcards.matches("com/vendor/client/*Service", "com/vendor/client/Service"));
+        Assertions.assertFalse(Wildcards.matches("com/vendor/client/*Service", "com/vendor/client/impl/UserService"));
+        Assertions.assertTrue(Wildcards.matches("com/vendor/**Service", "com/vendor/client/impl/UserService"));
+        Assertions.assertFalse(Wildcards.matches("com/vendor/client/*Service", "com/vendor/client/UserServiceImpl"));
+        Assertions.assertTrue(Wildcards.matches("com/*/client/*", "com/vendor/client/Api$1"));
+        Assertions.assertTrue(Wildcards.matches("get*", "getUser"));
+        Assertions.assertFalse(Wildcards.matches("get*", "isUser"));
+        Assertions.assertTrue(Wildcards.matches("*", ""));
+        Assertions.assertFalse(Wildcards.isPattern("com/vendor/Client"));
+    }
+
+    @Test
+    public void testMatch() {
+        ClassPatternMatcher matcher = ClassPatternMatcher.of(Arrays.asList(
+                "com/vendor/client/*Service", "com/vendor/**", "com/vendor/client/User*", "org/*/Api"));
+        Assertions.assertArrayEquals(new int[]{0, 1, 2}, matcher.match("com/vendor/client/UserService"));
+        Assertions.assertArrayEquals(new int[]{1}, matcher.match("com/vendor/client/impl/UserService"));
+        Assertions.assertArrayEquals(new int[]{3}, matcher.match("org/example/Api"));
+        Assertions.assertArrayEquals(new int[0], matcher.match("org/example/impl/Api"));
+        Assertions.assertTrue(matcher.matches("com/vendor/Client"));
+        Assertions.assertFalse(matcher.matches("com/vend"));
+        Assertions.assertFalse(matcher.matches(null));
+        Assertions.assertFalse(ClassPatternMatcher.EMPTY.matches("com/vendor/Client"));
+    }
+
+    @Test
+    public void testManyPatterns() {
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            patterns.add("com/vendor/lib" + i + "/client/*Service");
+        }
+        ClassPatternMatcher matcher = ClassPatternMatcher.of(patterns);
+        Assertions.assertArrayEquals(new int[]{4242}, matcher.match("com/vendor/lib4242/client/UserService"));
+        Assertions.assertFalse(matcher.matches("com/vendor/lib4242/client/UserServiceImpl"));
+        Assertions.assertFalse(matcher.matches("java/lang/String"));
+    }
+}
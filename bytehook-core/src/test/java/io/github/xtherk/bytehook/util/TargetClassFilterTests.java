@@ -0,0 +1,39 @@
+package io.github.xtherk.bytehook.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author xtherk
+ */
+public class TargetClassFilterTests {
+
+    @Test
+    public void testNoFalseNegatives() {
+        List<String> targets = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            targets.add("com/example/hooked/Target" + i);
+        }
+        targets.add("a");
+        targets.add("é/Unicode");
+        TargetClassFilter filter = TargetClassFilter.of(targets);
+        for (String target : targets) {
+            Assertions.assertTrue(filter.mightContain(new String(target.toCharArray())), target);
+        }
+    }
+
+    @Test
+    public void testRejects() {
+        TargetClassFilter filter = TargetClassFilter.of(Arrays.asList("com/example/Foo", "com/example/Service"));
+        Assertions.assertFalse(filter.mightContain(null));
+        Assertions.assertFalse(filter.mightContain(""));
+        Assertions.assertFalse(filter.mightContain("com/example/Fo"));
+        Assertions.assertFalse(filter.mightContain("org/example/Foo"));
+        Assertions.assertFalse(filter.mightContain("com/example/Services"));
+        Assertions.assertFalse(TargetClassFilter.EMPTY.mightContain("com/example/Foo"));
+    }
+}
@@ -0,0 +1,19 @@
+package io.github.xtherk.bytehook.weaver;
+
+/**
+ * Target class of the advice tests.
+ *
+ * @author xtherk
+ */
+public class Account {
+
+    private int balance;
+
+    public int deposit(int amount) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Illegal amount " + amount);
+        }
+        balance += amount;
+        return balance;
+    }
+}
@@ -0,0 +1,33 @@
+package io.github.xtherk.bytehook.weaver;
+
+import io.github.xtherk.bytehook.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Advice of {@link Account}, records its calls.
+ *
+ * @author xtherk
+ */
+@HookClass("io.github.xtherk.bytehook.weaver.Account")
+public class AccountAdvice {
+
+    static final List<String> EVENTS = new ArrayList<>();
+
+    @HookMethod(methodName = "deposit", behavior = Behavior.INSERT_BEFORE)
+    public static void enter(@TargetClass Object self, int amount) {
+        EVENTS.add("enter " + amount);
+    }
+
+    @HookMethod(methodName = "deposit", behavior = Behavior.INSERT_AFTER)
+    public static int exit(int amount, @ReturnValue int balance) {
+        EVENTS.add("exit " + amount + " " + balance);
+        return balance * 10;
+    }
+
+    @HookMethod(methodName = "deposit", behavior = Behavior.INSERT_AFTER)
+    public static void failed(int amount, @Thrown Throwable thrown) {
+        EVENTS.add("failed " + amount + " " + (null == thrown ? null : thrown.getClass().getSimpleName()));
+    }
+}
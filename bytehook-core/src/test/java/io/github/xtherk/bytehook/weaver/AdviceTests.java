@@ -0,0 +1,91 @@
+package io.github.xtherk.bytehook.weaver;
+
+import io.github.xtherk.bytehook.Behavior;
+import io.github.xtherk.bytehook.Endpoint;
+import io.github.xtherk.bytehook.Modules;
+import io.github.xtherk.bytehook.core.WovenClassLoader;
+import io.github.xtherk.bytehook.util.TransformUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * @author xtherk
+ */
+public class AdviceTests {
+
+    private static final String ACCOUNT = Type.getInternalName(Account.class);
+    private static final String ADVICE = Type.getInternalName(AccountAdvice.class);
+
+    @BeforeAll
+    public static void register() {
+        Modules.register(Arrays.asList(
+                new Endpoint(ACCOUNT, "deposit", "(I)", ADVICE, "enter", "(Ljava/lang/Object;I)V",
+                        true, false, false, Behavior.INSERT_BEFORE),
+                new Endpoint(ACCOUNT, "deposit", "(I)", ADVICE, "exit", "(II)I",
+                        false, false, false, Behavior.INSERT_AFTER, true, false),
+                new Endpoint(ACCOUNT, "deposit", "(I)", ADVICE, "failed", "(ILjava/lang/Throwable;)V",
+                        false, false, false, Behavior.INSERT_AFTER, false, true)));
+    }
+
+    @BeforeEach
+    public void clear() {
+        AccountAdvice.EVENTS.clear();
+    }
+
+    @Test
+    public void testAdviceOnReturn() throws Exception {
+        Class<?> account = loadWovenAccount();
+        Assertions.assertEquals(Account.class.getDeclaredMethods().length, account.getDeclaredMethods().length);
+        Object instance = account.getDeclaredConstructor().newInstance();
+        Method deposit = account.getMethod("deposit", int.class);
+        // The after advice replaces the returned value
+        Assertions.assertEquals(50, deposit.invoke(instance, 5));
+        Assertions.assertEquals(Arrays.asList("enter 5", "exit 5 5", "failed 5 null"), AccountAdvice.EVENTS);
+    }
+
+    @Test
+    public void testAdviceOnThrow() throws Exception {
+        Class<?> account = loadWovenAccount();
+        Object instance = account.getDeclaredConstructor().newInstance();
+        Method deposit = account.getMethod("deposit", int.class);
+        InvocationTargetException e = Assertions.assertThrows(InvocationTargetException.class,
+                () -> deposit.invoke(instance, -1));
+        Assertions.assertTrue(e.getCause() instanceof IllegalArgumentException);
+        Assertions.assertEquals(Arrays.asList("enter -1", "failed -1 IllegalArgumentException"), AccountAdvice.EVENTS);
+    }
+
+    @Test
+    public void testAdviceIntoTree() throws Exception {
+        // No MethodWriter directly downstream: the label offsets are unresolved while weaving
+        ClassReader reader = new ClassReader(WovenClassLoader.bytecodeOf(Account.class));
+        ClassNode node = new ClassNode();
+        reader.accept(new HookClassVisitor(Opcodes.ASM8, node, Modules.getClassEndpoints(ACCOUNT)), 0);
+        ClassHierarchy hierarchy = ClassHierarchy.of(null);
+        hierarchy.define(reader);
+        ClassWriter writer = new HookClassWriter(null, ClassWriter.COMPUTE_FRAMES, hierarchy);
+        node.accept(writer);
+
+        Class<?> account = new WovenClassLoader().define(Account.class.getName(), writer.toByteArray())
+                .loadClass(Account.class.getName());
+        Object instance = account.getDeclaredConstructor().newInstance();
+        Method deposit = account.getMethod("deposit", int.class);
+        Assertions.assertEquals(50, deposit.invoke(instance, 5));
+        Assertions.assertEquals(Arrays.asList("enter 5", "exit 5 5", "failed 5 null"), AccountAdvice.EVENTS);
+    }
+
+    private static Class<?> loadWovenAccount() throws ClassNotFoundException {
+        byte[] woven = TransformUtil.transform(ACCOUNT, WovenClassLoader.bytecodeOf(Account.class));
+        return new WovenClassLoader().define(Account.class.getName(), woven).loadClass(Account.class.getName());
+    }
+}
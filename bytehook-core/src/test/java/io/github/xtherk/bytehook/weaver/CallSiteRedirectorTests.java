@@ -0,0 +1,71 @@
+package io.github.xtherk.bytehook.weaver;
+
+import io.github.xtherk.bytehook.Behavior;
+import io.github.xtherk.bytehook.CallSites;
+import io.github.xtherk.bytehook.Endpoint;
+import io.github.xtherk.bytehook.core.WovenClassLoader;
+import io.github.xtherk.bytehook.util.TransformUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Type;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+
+/**
+ * @author xtherk
+ */
+public class CallSiteRedirectorTests {
+
+    private static final String HOOKS = Type.getInternalName(CallerHooks.class);
+    private static final CallSites CALL_SITES = CallSites.of(Arrays.asList(
+            new Endpoint("java/lang/Integer", "parseInt", "(Ljava/lang/String;)I",
+                    HOOKS, "parseInt", "(Ljava/lang/String;)I", false, false, true, Behavior.SET),
+            new Endpoint("java/lang/String", "length", "()I",
+                    HOOKS, "length", "(Ljava/lang/String;)I", true, false, true, Behavior.SET)));
+
+    @Test
+    public void testScreen() {
+        Assertions.assertTrue(CALL_SITES.isReferencedBy(WovenClassLoader.bytecodeOf(Caller.class)));
+        Assertions.assertFalse(CALL_SITES.isReferencedBy(WovenClassLoader.bytecodeOf(Account.class)));
+        Assertions.assertTrue(CALL_SITES.isFakeClass(HOOKS));
+        Assertions.assertTrue(CallSites.EMPTY.isEmpty());
+    }
+
+    @Test
+    public void testRedirect() throws Exception {
+        WovenClassLoader loader = new WovenClassLoader();
+        byte[] redirected = TransformUtil.redirectCallSites(loader, Type.getInternalName(Caller.class),
+                WovenClassLoader.bytecodeOf(Caller.class), CALL_SITES, WeaveOptions.DEFAULT);
+        Assertions.assertNotNull(redirected);
+
+        Class<?> caller = loader.define(Caller.class.getName(), redirected).loadClass(Caller.class.getName());
+        Object instance = caller.getDeclaredConstructor().newInstance();
+        Assertions.assertEquals(42, caller.getMethod("parse", String.class).invoke(instance, " 41 "));
+        Assertions.assertEquals(-3, caller.getMethod("length", String.class).invoke(instance, "abc"));
+        Assertions.assertEquals("ABC", caller.getMethod("upperCase", String.class).invoke(instance, "abc"));
+    }
+
+    @Test
+    public void testUnreferenced() {
+        Assertions.assertNull(TransformUtil.redirectCallSites(new WovenClassLoader(), Type.getInternalName(Account.class),
+                WovenClassLoader.bytecodeOf(Account.class), CALL_SITES, WeaveOptions.DEFAULT));
+        // Calls of the bootstrap classes and of the fake classes are left as is
+        Assertions.assertNull(TransformUtil.redirectCallSites(null, Type.getInternalName(Caller.class),
+                WovenClassLoader.bytecodeOf(Caller.class), CALL_SITES, WeaveOptions.DEFAULT));
+        Assertions.assertNull(TransformUtil.redirectCallSites(new WovenClassLoader(), HOOKS,
+                WovenClassLoader.bytecodeOf(CallerHooks.class), CALL_SITES, WeaveOptions.DEFAULT));
+    }
+
+    @Test
+    public void testIsolatedModules() {
+        WeaveOptions isolated = WeaveOptions.DEFAULT.withIsolatedModules(true);
+        byte[] caller = WovenClassLoader.bytecodeOf(Caller.class);
+        Assertions.assertNotNull(TransformUtil.redirectCallSites(new WovenClassLoader(),
+                Type.getInternalName(Caller.class), caller, CALL_SITES, isolated));
+        // The call sites would be bootstrapped by a dispatcher the loader can't resolve
+        Assertions.assertNull(TransformUtil.redirectCallSites(new URLClassLoader(new URL[0], null),
+                Type.getInternalName(Caller.class), caller, CALL_SITES, isolated));
+    }
+}
@@ -0,0 +1,21 @@
+package io.github.xtherk.bytehook.weaver;
+
+/**
+ * Calls JDK methods whose calls are redirected in {@link CallSiteRedirectorTests}.
+ *
+ * @author xtherk
+ */
+public class Caller {
+
+    public int parse(String value) {
+        return Integer.parseInt(value);
+    }
+
+    public int length(String value) {
+        return value.length();
+    }
+
+    public String upperCase(String value) {
+        return value.toUpperCase();
+    }
+}
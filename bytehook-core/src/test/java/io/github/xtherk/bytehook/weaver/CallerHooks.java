@@ -0,0 +1,15 @@
+package io.github.xtherk.bytehook.weaver;
+
+/**
+ * @author xtherk
+ */
+public class CallerHooks {
+
+    public static int parseInt(String value) {
+        return Integer.parseInt(value.trim()) + 1;
+    }
+
+    public static int length(String self) {
+        return -self.length();
+    }
+}
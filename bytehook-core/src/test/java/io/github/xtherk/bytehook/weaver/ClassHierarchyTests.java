@@ -0,0 +1,179 @@
+package io.github.xtherk.bytehook.weaver;
+
+import io.github.xtherk.bytehook.Behavior;
+import io.github.xtherk.bytehook.Endpoint;
+import io.github.xtherk.bytehook.EndpointRegistry;
+import io.github.xtherk.bytehook.HookClass;
+import io.github.xtherk.bytehook.Modules;
+import io.github.xtherk.bytehook.core.WovenClassLoader;
+import io.github.xtherk.bytehook.dispatch.HookDispatcher;
+import io.github.xtherk.bytehook.metrics.HistogramSnapshot;
+import io.github.xtherk.bytehook.metrics.Timers;
+import io.github.xtherk.bytehook.util.TransformUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Type;
+
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author xtherk
+ */
+public class ClassHierarchyTests {
+
+    @Test
+    public void testCommonSuperClass() {
+        ClassHierarchy hierarchy = ClassHierarchy.of(null);
+        Assertions.assertEquals("java/lang/Number", hierarchy.getCommonSuperClass("java/lang/Integer", "java/lang/Long"));
+        Assertions.assertEquals("java/util/AbstractList",
+                hierarchy.getCommonSuperClass("java/util/ArrayList", "java/util/LinkedList"));
+        Assertions.assertEquals("java/util/List", hierarchy.getCommonSuperClass("java/util/List", "java/util/ArrayList"));
+        Assertions.assertEquals(ClassHierarchy.OBJECT, hierarchy.getCommonSuperClass("java/lang/Runnable", "java/lang/Integer"));
+        Assertions.assertEquals(ClassHierarchy.OBJECT, hierarchy.getCommonSuperClass("does/not/Exist", "java/lang/Integer"));
+    }
+
+    @Test
+    public void testNoClassLoading() {
+        ClassLoader resourcesOnly = new ClassLoader(null) {
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                throw new AssertionError("Loaded " + name);
+            }
+
+            @Override
+            public InputStream getResourceAsStream(String name) {
+                return ClassHierarchyTests.class.getClassLoader().getResourceAsStream(name);
+            }
+        };
+        ClassHierarchy hierarchy = ClassHierarchy.of(resourcesOnly);
+        String greeter = Type.getInternalName(Greeter.class);
+        String hooks = Type.getInternalName(GreeterHooks.class);
+        Assertions.assertEquals(ClassHierarchy.OBJECT, hierarchy.getCommonSuperClass(greeter, hooks));
+        Assertions.assertTrue(hierarchy.isAssignableFrom(ClassHierarchy.OBJECT, greeter));
+        Assertions.assertFalse(hierarchy.isAssignableFrom(greeter, hooks));
+        Assertions.assertNotNull(hierarchy.get(greeter));
+    }
+
+    @Test
+    public void testLoaderNotRetained() throws Exception {
+        ClassLoader loader = new URLClassLoader(new URL[0], null);
+        ClassHierarchy.of(loader).get("does/not/Exist");
+        WeakReference<ClassLoader> reference = new WeakReference<>(loader);
+        loader = null;
+        for (int i = 0; i < 50 && null != reference.get(); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assertions.assertNull(reference.get());
+    }
+
+    @Test
+    public void testSupertypesAmong() {
+        ClassHierarchy hierarchy = ClassHierarchy.of(null);
+        Set<String> types = new HashSet<>(Arrays.asList("java/util/Collection", "java/util/AbstractList", "java/util/Map"));
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("java/util/Collection", "java/util/AbstractList")),
+                new HashSet<>(Arrays.asList(hierarchy.supertypesAmong("java/util/ArrayList", types))));
+        Assertions.assertEquals(0, hierarchy.supertypesAmong("java/util/AbstractList", Collections.singleton("java/util/AbstractList")).length);
+        Assertions.assertEquals(0, hierarchy.supertypesAmong("java/lang/Integer", types).length);
+        Assertions.assertEquals(0, hierarchy.supertypesAmong("does/not/Exist", types).length);
+        Assertions.assertEquals(new HashSet<>(Arrays.asList(hierarchy.supertypesAmong("java/util/ArrayList", types))),
+                new HashSet<>(Arrays.asList(ClassHierarchy.supertypesAmong(ArrayList.class, types))));
+        // Memoized per set of types
+        Assertions.assertSame(hierarchy.supertypesAmong("java/util/ArrayList", types),
+                hierarchy.supertypesAmong("java/util/ArrayList", types));
+        Assertions.assertEquals(1, hierarchy.supertypesAmong("java/util/ArrayList",
+                Collections.singleton("java/util/List")).length);
+    }
+
+    @Test
+    public void testSupertypesOfHeader() throws Exception {
+        ClassHierarchy hierarchy = ClassHierarchy.of(new URLClassLoader(new URL[0], null));
+        Set<String> types = new HashSet<>(Arrays.asList("java/util/AbstractList", "java/util/Map"));
+        String[] found = hierarchy.supertypesAmong(new ClassReader("java.util.ArrayList"), types);
+        Assertions.assertArrayEquals(new String[]{"java/util/AbstractList"}, found);
+        Assertions.assertSame(found, hierarchy.supertypesAmong("java/util/ArrayList", types));
+        Assertions.assertSame(ClassHierarchy.NO_SUPERTYPES,
+                hierarchy.supertypesAmong(new ClassReader("java.lang.Integer"), types));
+    }
+
+    @Test
+    public void testParentsReadOnce() {
+        Map<String, Integer> reads = new ConcurrentHashMap<>();
+        ClassLoader counting = new ClassLoader(null) {
+            @Override
+            public InputStream getResourceAsStream(String name) {
+                reads.merge(name, 1, Integer::sum);
+                return ClassHierarchyTests.class.getClassLoader().getResourceAsStream(name);
+            }
+        };
+        ClassHierarchy hierarchy = ClassHierarchy.of(counting);
+        String handler = Type.getInternalName(Handler.class);
+        String echo = Type.getInternalName(EchoHandler.class);
+        Set<String> types = new HashSet<>(Collections.singletonList(handler));
+        Assertions.assertArrayEquals(new String[]{handler}, hierarchy.supertypesAmong(echo, types));
+        // More classes than a startup loads, none of them evicts the parents
+        for (int i = 0; i < 50_000; i++) {
+            hierarchy.supertypesAmong("does/not/Exist" + i, types);
+        }
+        // The next snapshot of the registry has an equal set of supertypes
+        Assertions.assertArrayEquals(new String[]{handler}, hierarchy.supertypesAmong(echo, new HashSet<>(types)));
+        Assertions.assertEquals(1, reads.get(echo + ".class"));
+        Assertions.assertEquals(1, reads.get(handler + ".class"));
+        // Other supertypes are looked up again
+        Assertions.assertEquals(0, hierarchy.supertypesAmong(echo, Collections.singleton("java/lang/Runnable")).length);
+        Assertions.assertEquals(2, reads.get(echo + ".class"));
+    }
+
+    @Test
+    public void testSubtypeEndpoints() throws Exception {
+        String handler = Type.getInternalName(Handler.class);
+        String echo = Type.getInternalName(EchoHandler.class);
+        Modules.register(Collections.singletonList(new Endpoint(handler + HookClass.SUBTYPES, "handle",
+                Endpoint.ANY_DESCRIPTOR, Type.getInternalName(ClassHierarchyTests.class), "count", "()V",
+                false, false, false, Behavior.TIMED)));
+        try {
+            EndpointRegistry registry = Modules.registry();
+            Assertions.assertTrue(registry.supertypes().contains(handler));
+            ClassHierarchy hierarchy = ClassHierarchy.of(getClass().getClassLoader());
+            hierarchy.define(new ClassReader(WovenClassLoader.bytecodeOf(EchoHandler.class)));
+            String[] supertypes = hierarchy.supertypesAmong(echo, registry.supertypes());
+            Assertions.assertArrayEquals(new String[]{handler}, supertypes);
+            Assertions.assertEquals(0, hierarchy.supertypesAmong(Type.getInternalName(Greeter.class),
+                    registry.supertypes()).length);
+
+            byte[] woven = TransformUtil.transform(null, echo, WovenClassLoader.bytecodeOf(EchoHandler.class),
+                    registry.get(echo, supertypes), WeaveOptions.DEFAULT);
+            Class<?> klass = new WovenClassLoader().define(EchoHandler.class.getName(), woven)
+                    .loadClass(EchoHandler.class.getName());
+            Object instance = klass.getDeclaredConstructor().newInstance();
+            Assertions.assertEquals("echo", klass.getMethod("handle", String.class).invoke(instance, "echo"));
+            HistogramSnapshot snapshot = Timers.snapshot(HookDispatcher.endpointId(echo, "handle", "(Ljava/lang/String;)Ljava/lang/String;"));
+            Assertions.assertNotNull(snapshot);
+            Assertions.assertEquals(1, snapshot.getCount());
+        } finally {
+            Modules.unregister(Collections.singleton(handler + HookClass.SUBTYPES));
+        }
+        Assertions.assertFalse(Modules.registry().supertypes().contains(handler));
+    }
+
+    public static void count() {
+    }
+
+    public interface Handler {
+        String handle(String request);
+    }
+
+    public static class EchoHandler implements Handler {
+
+        @Override
+        public String handle(String request) {
+            return request;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package io.github.xtherk.bytehook.weaver;
+
+/**
+ * Target class of the inlining tests.
+ *
+ * @author xtherk
+ */
+public class Formatter {
+
+    private final char padding = '.';
+
+    public String pad(String text, int width) {
+        StringBuilder builder = new StringBuilder(text);
+        while (builder.length() < width) {
+            builder.append(padding);
+        }
+        return builder.toString();
+    }
+
+    public String parse(String text) {
+        try {
+            return String.valueOf(Long.parseLong(text));
+        } catch (NumberFormatException e) {
+            return "NaN";
+        }
+    }
+
+    public String upper(String text) {
+        return text.toUpperCase();
+    }
+
+    public static int digits(long value) {
+        int digits = 1;
+        while ((value /= 10) != 0) {
+            digits++;
+        }
+        return digits;
+    }
+}
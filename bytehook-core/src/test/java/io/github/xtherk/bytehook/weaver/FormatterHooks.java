@@ -0,0 +1,46 @@
+package io.github.xtherk.bytehook.weaver;
+
+import io.github.xtherk.bytehook.HookClass;
+import io.github.xtherk.bytehook.HookMethod;
+import io.github.xtherk.bytehook.OriginalMethods;
+import io.github.xtherk.bytehook.TargetClass;
+
+/**
+ * Fake class of {@link Formatter}, calling the original methods.
+ *
+ * @author xtherk
+ */
+@HookClass("io.github.xtherk.bytehook.weaver.Formatter")
+public class FormatterHooks {
+
+    @HookMethod(original = true)
+    public static String pad(@TargetClass Formatter self, String text, int width) {
+        if (width < 0) {
+            return text;
+        }
+        String padded = OriginalMethods.callWithReturnType();
+        return "[" + padded + "]";
+    }
+
+    @HookMethod(original = true)
+    public static String parse(@TargetClass Formatter self, String text) {
+        // The string builder is on the operand stack when the original method is called
+        return "[" + OriginalMethods.<String>callWithReturnType() + "]";
+    }
+
+    @HookMethod(original = true)
+    public static String upper(@TargetClass Formatter self, String text) {
+        // Only the JDK is visible from the copy of an isolated module, it can't be inlined
+        return OriginalMethods.<String>callWithReturnType() + Greeter.count(text, 1);
+    }
+
+    @HookMethod(original = true)
+    public static int digits(long value) {
+        try {
+            int digits = OriginalMethods.callWithReturnType();
+            return value < 0 ? digits + 1 : digits;
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package io.github.xtherk.bytehook.weaver;
+
+/**
+ * Target class of the weaver tests.
+ *
+ * @author xtherk
+ */
+public class Greeter {
+
+    public String greet(String name) {
+        return "Hello " + name;
+    }
+
+    public static int count(String name, int times) {
+        int count = 0;
+        for (int i = 0; i < times; i++) {
+            count += name.length();
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return greet("toString") + count("abc", 2);
+    }
+}
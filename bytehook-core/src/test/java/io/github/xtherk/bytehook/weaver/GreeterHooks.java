@@ -0,0 +1,19 @@
+package io.github.xtherk.bytehook.weaver;
+
+import io.github.xtherk.bytehook.HookClass;
+import io.github.xtherk.bytehook.HookMethod;
+import io.github.xtherk.bytehook.TargetClass;
+
+/**
+ * Fake class of {@link Greeter}.
+ *
+ * @author xtherk
+ */
+@HookClass("io.github.xtherk.bytehook.weaver.Greeter")
+public class GreeterHooks {
+
+    @HookMethod
+    public static String greet(@TargetClass Greeter self, String name) {
+        return "Hooked " + name;
+    }
+}
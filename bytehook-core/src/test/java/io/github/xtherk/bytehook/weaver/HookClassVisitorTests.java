@@ -0,0 +1,163 @@
+package io.github.xtherk.bytehook.weaver;
+
+import io.github.xtherk.bytehook.Behavior;
+import io.github.xtherk.bytehook.ClassEndpoints;
+import io.github.xtherk.bytehook.Endpoint;
+import io.github.xtherk.bytehook.Modules;
+import io.github.xtherk.bytehook.core.WovenClassLoader;
+import io.github.xtherk.bytehook.dispatch.HookDispatcher;
+import io.github.xtherk.bytehook.metrics.Timers;
+import io.github.xtherk.bytehook.util.TransformUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * @author xtherk
+ */
+public class HookClassVisitorTests {
+
+    private static final String GREETER = Type.getInternalName(Greeter.class);
+
+    @BeforeAll
+    public static void register() {
+        Modules.register(Collections.singletonList(new Endpoint(GREETER, "greet", "(Ljava/lang/String;)Ljava/lang/String;",
+                Type.getInternalName(GreeterHooks.class), "greet", "(L" + GREETER + ";Ljava/lang/String;)Ljava/lang/String;",
+                true, false, false, Behavior.SET)));
+    }
+
+    @Test
+    public void testReplaceMethod() throws ReflectiveOperationException {
+        byte[] woven = TransformUtil.transform(GREETER, WovenClassLoader.bytecodeOf(Greeter.class));
+        Class<?> greeter = new WovenClassLoader()
+                .define(Greeter.class.getName(), woven)
+                .define(GreeterHooks.class.getName(), WovenClassLoader.bytecodeOf(GreeterHooks.class))
+                .loadClass(Greeter.class.getName());
+        Object instance = greeter.getDeclaredConstructor().newInstance();
+        Assertions.assertEquals("Hooked world", greeter.getMethod("greet", String.class).invoke(instance, "world"));
+        Assertions.assertEquals("Hooked toString6", instance.toString());
+    }
+
+    @Test
+    public void testUnhookedMethodsAreCopied() {
+        byte[] original = WovenClassLoader.bytecodeOf(Greeter.class);
+        ClassNode before = read(original);
+        ClassNode after = read(TransformUtil.transform(GREETER, original));
+        for (int i = 0; i < before.methods.size(); i++) {
+            MethodNode expected = before.methods.get(i);
+            MethodNode actual = after.methods.get(i);
+            Assertions.assertEquals(expected.name, actual.name);
+            if (!"greet".equals(expected.name)) {
+                Assertions.assertEquals(expected.instructions.size(), actual.instructions.size(), expected.name);
+                Assertions.assertEquals(expected.maxStack, actual.maxStack, expected.name);
+            }
+        }
+    }
+
+    @Test
+    public void testEndpointIndex() throws ReflectiveOperationException {
+        Endpoint greet = new Endpoint(GREETER, "greet", "(Ljava/lang/String;)Ljava/lang/String;",
+                Type.getInternalName(GreeterHooks.class), "greet", "(L" + GREETER + ";Ljava/lang/String;)Ljava/lang/String;",
+                true, false, false, Behavior.SET);
+        // Matches count(String, int) whatever its return type
+        Endpoint count = new Endpoint(GREETER, "count", "(Ljava/lang/String;I)",
+                Type.getInternalName(HookClassVisitorTests.class), "before", "(Ljava/lang/String;I)V",
+                false, false, false, Behavior.INSERT_BEFORE);
+        Endpoint missing = new Endpoint(GREETER, "farewell", "(Ljava/lang/String;)Ljava/lang/String;",
+                Type.getInternalName(GreeterHooks.class), "greet", "(L" + GREETER + ";Ljava/lang/String;)Ljava/lang/String;",
+                true, false, false, Behavior.SET);
+        Modules.register(Arrays.asList(greet, count, missing));
+        try {
+            ClassEndpoints endpoints = Modules.registry().get(GREETER);
+            Assertions.assertEquals(Collections.singletonList(greet), endpoints.find("greet", "(Ljava/lang/String;)Ljava/lang/String;"));
+            Assertions.assertEquals(Collections.singletonList(count), endpoints.find("count", "(Ljava/lang/String;I)I"));
+            Assertions.assertEquals(Collections.emptyList(), endpoints.find("count", "(Ljava/lang/String;)I"));
+
+            byte[] woven = TransformUtil.transform(GREETER, WovenClassLoader.bytecodeOf(Greeter.class));
+            Class<?> greeter = new WovenClassLoader().define(Greeter.class.getName(), woven)
+                    .define(GreeterHooks.class.getName(), WovenClassLoader.bytecodeOf(GreeterHooks.class))
+                    .loadClass(Greeter.class.getName());
+            int before = beforeCalls;
+            Assertions.assertEquals(6, greeter.getMethod("count", String.class, int.class).invoke(null, "abc", 2));
+            Assertions.assertEquals(before + 1, beforeCalls);
+            Assertions.assertEquals("Hooked world", greeter.getMethod("greet", String.class)
+                    .invoke(greeter.getDeclaredConstructor().newInstance(), "world"));
+
+            // Reported while weaving, not again on the next load, even from a later snapshot
+            List<Endpoint> matched = Arrays.asList(greet, count);
+            Assertions.assertEquals(Collections.emptyList(), Modules.registry().get(GREETER).reportMisses(matched));
+            Modules.register(Collections.singletonList(new Endpoint("does/not/Exist", "run", "()V",
+                    Type.getInternalName(HookClassVisitorTests.class), "run", "()V", false, false, false, Behavior.SET)));
+            Assertions.assertNotSame(endpoints, Modules.registry().get(GREETER));
+            Assertions.assertEquals(Collections.emptyList(), Modules.registry().get(GREETER).reportMisses(matched));
+            // A registry of its own reports it
+            Assertions.assertEquals(Collections.singletonList(missing), new ClassEndpoints(GREETER,
+                    Arrays.asList(greet, count, missing)).reportMisses(new HashSet<>(matched)));
+        } finally {
+            Modules.unregister(Collections.singleton("does/not/Exist"));
+            register();
+        }
+    }
+
+    private static int beforeCalls;
+
+    public static void before(String name, int times) {
+        beforeCalls++;
+    }
+
+    @Test
+    public void testPatternEndpoint() throws ReflectiveOperationException {
+        String target = Type.getInternalName(PatternTarget.class);
+        String pattern = "io/github/xtherk/bytehook/weaver/HookClass*$Pattern*";
+        Modules.register(Collections.singletonList(new Endpoint(pattern, "*", Endpoint.ANY_DESCRIPTOR,
+                Type.getInternalName(HookClassVisitorTests.class), "count", "()V",
+                false, false, false, Behavior.TIMED)));
+        try {
+            Assertions.assertTrue(Modules.mayBeHooked(target));
+            Assertions.assertFalse(Modules.mayBeHooked("io/github/xtherk/bytehook/weaver/HookClass/Pattern"));
+            byte[] woven = TransformUtil.transform(target, WovenClassLoader.bytecodeOf(PatternTarget.class));
+            Class<?> klass = new WovenClassLoader().define(PatternTarget.class.getName(), woven)
+                    .loadClass(PatternTarget.class.getName());
+            Object instance = klass.getDeclaredConstructor().newInstance();
+            Assertions.assertEquals("target", klass.getMethod("name").invoke(instance));
+            Assertions.assertEquals(3, klass.getMethod("sum", int.class, int.class).invoke(null, 1, 2));
+
+            Assertions.assertEquals(1, Timers.snapshot(HookDispatcher.endpointId(target, "name", "()Ljava/lang/String;")).getCount());
+            Assertions.assertEquals(1, Timers.snapshot(HookDispatcher.endpointId(target, "sum", "(II)I")).getCount());
+            // Constructors are not matched by patterns
+            Assertions.assertNull(Timers.snapshot(HookDispatcher.endpointId(target, "<init>", "()V")));
+        } finally {
+            Modules.unregister(Collections.singleton(pattern));
+        }
+        Assertions.assertFalse(Modules.mayBeHooked(target));
+    }
+
+    public static void count() {
+    }
+
+    private static ClassNode read(byte[] bytecode) {
+        ClassNode node = new ClassNode();
+        new ClassReader(bytecode).accept(node, 0);
+        return node;
+    }
+
+    public static class PatternTarget {
+
+        public String name() {
+            return "target";
+        }
+
+        public static int sum(int a, int b) {
+            return a + b;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package io.github.xtherk.bytehook.weaver;
+
+import io.github.xtherk.bytehook.Behavior;
+import io.github.xtherk.bytehook.Endpoint;
+import io.github.xtherk.bytehook.Modules;
+import io.github.xtherk.bytehook.core.WovenClassLoader;
+import io.github.xtherk.bytehook.util.TransformUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.Arrays;
+
+/**
+ * @author xtherk
+ */
+public class InlineTests {
+
+    private static final String FORMATTER = Type.getInternalName(Formatter.class);
+    private static final String HOOKS = Type.getInternalName(FormatterHooks.class);
+
+    @BeforeAll
+    public static void register() {
+        Modules.register(Arrays.asList(
+                new Endpoint(FORMATTER, "pad", "(Ljava/lang/String;I)Ljava/lang/String;",
+                        HOOKS, "pad", "(L" + FORMATTER + ";Ljava/lang/String;I)Ljava/lang/String;",
+                        true, true, false, Behavior.SET),
+                new Endpoint(FORMATTER, "parse", "(Ljava/lang/String;)Ljava/lang/String;",
+                        HOOKS, "parse", "(L" + FORMATTER + ";Ljava/lang/String;)Ljava/lang/String;",
+                        true, true, false, Behavior.SET),
+                new Endpoint(FORMATTER, "upper", "(Ljava/lang/String;)Ljava/lang/String;",
+                        HOOKS, "upper", "(L" + FORMATTER + ";Ljava/lang/String;)Ljava/lang/String;",
+                        true, true, false, Behavior.SET),
+                new Endpoint(FORMATTER, "digits", "(J)I", HOOKS, "digits", "(J)I",
+                        false, true, false, Behavior.SET)));
+    }
+
+    @Test
+    public void testOriginalMethodIsInlined() throws Exception {
+        // Endpoints calling the original method are always inlined
+        byte[] woven = TransformUtil.transform(FORMATTER, WovenClassLoader.bytecodeOf(Formatter.class));
+        assertNoCalls(woven, HOOKS);
+        assertNoCalls(woven, "io/github/xtherk/bytehook/OriginalMethods");
+        // Unboxed straight away
+        assertNoCalls(woven, "java/lang/Integer");
+
+        Class<?> formatter = new WovenClassLoader().define(Formatter.class.getName(), woven)
+                .loadClass(Formatter.class.getName());
+        Assertions.assertEquals(Formatter.class.getDeclaredMethods().length, formatter.getDeclaredMethods().length);
+        Object instance = formatter.getDeclaredConstructor().newInstance();
+        Assertions.assertEquals("[ab...]", formatter.getMethod("pad", String.class, int.class).invoke(instance, "ab", 5));
+        Assertions.assertEquals("ab", formatter.getMethod("pad", String.class, int.class).invoke(instance, "ab", -1));
+        Assertions.assertEquals(3, formatter.getMethod("digits", long.class).invoke(null, 120L));
+        Assertions.assertEquals(4, formatter.getMethod("digits", long.class).invoke(null, -120L));
+    }
+
+    @Test
+    public void testOriginalMethodWithHandlerUnderStack() throws Exception {
+        // The handler of the original body clears the stack, the builder of the fake method must survive it
+        byte[] woven = TransformUtil.transform(FORMATTER, WovenClassLoader.bytecodeOf(Formatter.class));
+        assertNoCalls(woven, HOOKS);
+        Class<?> formatter = new WovenClassLoader().define(Formatter.class.getName(), woven)
+                .loadClass(Formatter.class.getName());
+        Object instance = formatter.getDeclaredConstructor().newInstance();
+        Assertions.assertEquals("[12]", formatter.getMethod("parse", String.class).invoke(instance, "12"));
+        Assertions.assertEquals("[NaN]", formatter.getMethod("parse", String.class).invoke(instance, "twelve"));
+    }
+
+    @Test
+    public void testOriginalMethodNotInlinable() throws Exception {
+        byte[] original = WovenClassLoader.bytecodeOf(Formatter.class);
+        byte[] woven = TransformUtil.transform(null, FORMATTER, original, WeaveOptions.DEFAULT.withIsolatedModules(true));
+        assertNoCalls(woven, HOOKS);
+        Class<?> formatter = new WovenClassLoader().define(Formatter.class.getName(), woven)
+                .loadClass(Formatter.class.getName());
+        Object instance = formatter.getDeclaredConstructor().newInstance();
+        // Left unhooked rather than calling a fake method whose original method calls return null
+        Assertions.assertEquals("AB", formatter.getMethod("upper", String.class).invoke(instance, "ab"));
+        Assertions.assertEquals("[12]", formatter.getMethod("parse", String.class).invoke(instance, "12"));
+        // Inlined the default way
+        woven = TransformUtil.transform(FORMATTER, original);
+        assertNoCalls(woven, "io/github/xtherk/bytehook/OriginalMethods");
+        formatter = new WovenClassLoader().define(Formatter.class.getName(), woven).loadClass(Formatter.class.getName());
+        instance = formatter.getDeclaredConstructor().newInstance();
+        Assertions.assertEquals("AB2", formatter.getMethod("upper", String.class).invoke(instance, "ab"));
+    }
+
+    @Test
+    public void testInlineAdvice() throws Exception {
+        Modules.register(Arrays.asList(
+                new Endpoint(Type.getInternalName(Account.class), "deposit", "(I)", Type.getInternalName(AccountAdvice.class),
+                        "exit", "(II)I", false, false, false, Behavior.INSERT_AFTER, true, false)));
+        byte[] woven = TransformUtil.transform(null, Type.getInternalName(Account.class),
+                WovenClassLoader.bytecodeOf(Account.class), WeaveOptions.DEFAULT.withInline(true));
+        // The advice records into a list of the fake class, it is not accessible from the target class
+        assertCalls(woven, Type.getInternalName(AccountAdvice.class));
+
+        Modules.register(Arrays.asList(
+                new Endpoint(FORMATTER, "digits", "(J)", Type.getInternalName(InlineTests.class),
+                        "twice", "(JI)I", false, false, false, Behavior.INSERT_AFTER, true, false)));
+        woven = TransformUtil.transform(null, FORMATTER, WovenClassLoader.bytecodeOf(Formatter.class),
+                WeaveOptions.DEFAULT.withInline(true));
+        assertNoCalls(woven, Type.getInternalName(InlineTests.class));
+        Class<?> formatter = new WovenClassLoader().define(Formatter.class.getName(), woven)
+                .loadClass(Formatter.class.getName());
+        Assertions.assertEquals(6, formatter.getMethod("digits", long.class).invoke(null, 120L));
+        register();
+    }
+
+    public static int twice(long value, int digits) {
+        return digits * 2;
+    }
+
+    private static void assertNoCalls(byte[] bytecode, String owner) {
+        Assertions.assertFalse(calls(bytecode, owner), owner);
+    }
+
+    private static void assertCalls(byte[] bytecode, String owner) {
+        Assertions.assertTrue(calls(bytecode, owner), owner);
+    }
+
+    private static boolean calls(byte[] bytecode, String owner) {
+        ClassNode node = new ClassNode();
+        new ClassReader(bytecode).accept(node, 0);
+        for (MethodNode method : node.methods) {
+            for (AbstractInsnNode insn : method.instructions) {
+                if (insn instanceof MethodInsnNode && owner.equals(((MethodInsnNode) insn).owner)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,58 @@
+package io.github.xtherk.bytehook.weaver;
+
+import io.github.xtherk.bytehook.Behavior;
+import io.github.xtherk.bytehook.ClassEndpoints;
+import io.github.xtherk.bytehook.Endpoint;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+/**
+ * @author xtherk
+ */
+public class WovenClassCacheTests {
+
+    private static final String TARGET = "com/example/Target";
+    private static final byte[] ORIGINAL = {1, 2, 3};
+    private static final byte[] WOVEN = {4, 5, 6, 7};
+
+    @Test
+    public void testHitAndInvalidation(@TempDir Path directory) throws IOException {
+        WovenClassCache cache = WovenClassCache.at(directory);
+        ClassEndpoints endpoints = endpoints("run");
+        Assertions.assertNull(cache.get(TARGET, endpoints, ORIGINAL));
+        cache.put(TARGET, endpoints, ORIGINAL, WOVEN);
+        Assertions.assertArrayEquals(WOVEN, cache.get(TARGET, endpoints("run"), ORIGINAL));
+
+        // Changed endpoints or changed class bytes miss
+        ClassEndpoints changed = endpoints("stop");
+        Assertions.assertNull(cache.get(TARGET, changed, ORIGINAL));
+        Assertions.assertNull(cache.get(TARGET, endpoints, new byte[]{1, 2, 4}));
+
+        // Only the latest entry of a class is kept
+        cache.put(TARGET, changed, ORIGINAL, WOVEN);
+        Assertions.assertNull(cache.get(TARGET, endpoints, ORIGINAL));
+        try (Stream<Path> entries = Files.list(directory.resolve("com.example.Target"))) {
+            Assertions.assertEquals(1, entries.count());
+        }
+    }
+
+    @Test
+    public void testDisabled() {
+        WovenClassCache cache = WovenClassCache.fromSystemProperties();
+        Assertions.assertFalse(cache.isEnabled());
+        cache.put(TARGET, endpoints("run"), ORIGINAL, WOVEN);
+        Assertions.assertNull(cache.get(TARGET, endpoints("run"), ORIGINAL));
+    }
+
+    private static ClassEndpoints endpoints(String method) {
+        return new ClassEndpoints(TARGET, Collections.singletonList(new Endpoint(TARGET, method, "()V",
+                "com/example/Hooks", method, "()V", false, false, false, Behavior.SET)));
+    }
+}
@@ -9,12 +9,32 @@ public enum Behavior {
      * Replace the target method
      */
     SET,
-    // No support for the time being
-    // Insert to the before of the target method
-    // INSERT_BEFORE,
-
-    //  No support for the time being
-    // Insert to the after of the target method
-    // INSERT_AFTER,
+    /**
+     * Call the fake method when entering the target method, the original body is kept.
+     * <p>
+     * The fake method returns {@code void} and receives the arguments of the target method,
+     * preceded by the instance when the first parameter is marked by {@link TargetClass}.
+     */
+    INSERT_BEFORE,
+    /**
+     * Call the fake method on every exit of the target method, the original body is kept.
+     * <p>
+     * The fake method receives the instance when the first parameter is marked by {@link TargetClass},
+     * the arguments of the target method, the returned value when a parameter is marked by {@link ReturnValue}
+     * and the thrown exception when the last parameter is marked by {@link Thrown}.
+     * Exceptions are only observed when a {@link Thrown} parameter is declared, they are rethrown afterwards.
+     * <p>
+     * A fake method returning the type of the target method replaces the returned value,
+     * a {@code void} fake method only observes it.
+     */
+    INSERT_AFTER,
+    /**
+     * Record the duration of every call of the target method into a latency histogram, including
+     * the calls ending with an exception. The fake method only marks the target method:
+     * it returns {@code void}, takes the arguments of the target method and its body is not used.
+     * <p>
+     * The histograms are read with {@code io.github.xtherk.bytehook.metrics.Timers}.
+     */
+    TIMED,
     ;
 }
@@ -10,12 +10,25 @@ import java.lang.annotation.*;
 @Documented
 public @interface HookClass {
 
+    /**
+     * Suffix of a {@link #value()} that also hooks the subtypes of the class, such as
+     * <code>javax.sql.DataSource+</code> for every data source.
+     */
+    String SUBTYPES = "+";
+
     /**
      * Class that needs to be hooked.
      *
      * <p>To obtain an inner class, use "$" instead of "." for separating
      * the enclosing class name and the inner class name.</p>
      *
+     * <p>May be a pattern: <code>*</code> matches any run of characters within a package,
+     * <code>**</code> also matches sub packages. <code>com.vendor.client.*Service</code> hooks every service
+     * of the <code>com.vendor.client</code> package, as they are loaded.</p>
+     *
+     * <p>Ending with {@link #SUBTYPES} hooks the class and every class extending or implementing it.
+     * Methods are hooked where they are declared with a body, abstract methods are skipped.</p>
+     *
      * @return a fully-qualified class name
      */
     String value();
@@ -10,9 +10,19 @@ import java.lang.annotation.*;
 @Documented
 public @interface HookMethod {
 
+    /**
+     * {@link #desc()} matching the target method whatever its descriptor, only for {@link Behavior#TIMED}
+     * endpoints: the other behaviors pass the arguments of the target method to the fake method.
+     */
+    String ANY_DESCRIPTOR = "*";
+
     /**
      * Method that need to be hooked.
      *
+     * <p>May be a pattern such as <code>get*</code>, <code>*</code> matching any run of characters.
+     * A pattern never matches constructors, methods without a body nor the bridge and synthetic methods
+     * generated by the compiler.</p>
+     *
      * @return name of method.
      */
     String methodName() default "";
@@ -23,16 +33,32 @@ public @interface HookMethod {
      * <p>If you do not specify the <code>desc()</code>,
      * We will find the descriptor of the same method as you define. </p>
      *
+     * <p>For {@link Behavior#INSERT_BEFORE} and {@link Behavior#INSERT_AFTER} the default descriptor only
+     * holds the arguments, such as <code>(I)</code>, it matches the target method whatever its return type.</p>
+     *
      * @return method descriptor.
      */
     String desc() default "";
 
     /**
-     * Whether to call the original method, similar to the around in AOP
+     * Whether to call the original method, similar to the around in AOP.
+     * <p>The fake method calls {@link OriginalMethods}, the weaver copies the fake method into the target method
+     * and the original body at each call, so the fake method must be inlinable.</p>
      * @return if you need call the original method then return true, else return false
      */
     boolean original() default false;
 
+    /**
+     * Whether the calls to the target method are replaced in the calling classes, instead of its body.
+     * <p>Reaches the methods of classes that can't be woven, such as the JDK classes. The fake method takes
+     * the operands of the call: the target instance first for an instance method, then the arguments.
+     * Only {@link Behavior#SET} endpoints of a named class and method can replace calls, the fake method calls
+     * the target method itself to run the original code.</p>
+     *
+     * @return if the calls are replaced then return true
+     */
+    boolean replaceCall() default false;
+
     /**
      * @return Hook target method behavior.
      */
@@ -0,0 +1,16 @@
+package io.github.xtherk.bytehook;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks the parameter of an {@link Behavior#INSERT_AFTER} fake method receiving the value returned by the
+ * target method. It follows the arguments of the target method, its value is the default value of its type
+ * when the target method threw.
+ *
+ * @author xtherk
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.PARAMETER})
+@Documented
+public @interface ReturnValue {
+}
@@ -0,0 +1,15 @@
+package io.github.xtherk.bytehook;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks the last parameter of an {@link Behavior#INSERT_AFTER} fake method, a {@link Throwable} receiving
+ * the exception thrown by the target method, or {@code null} when the target method returned normally.
+ *
+ * @author xtherk
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.PARAMETER})
+@Documented
+public @interface Thrown {
+}
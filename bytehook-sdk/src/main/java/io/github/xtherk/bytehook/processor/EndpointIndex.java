@@ -0,0 +1,59 @@
+package io.github.xtherk.bytehook.processor;
+
+/**
+ * Format of the endpoint index written by {@link EndpointIndexProcessor}.
+ * <p>
+ * The index is a UTF-8 text resource. The first line is {@link #HEADER},
+ * every other line describes one endpoint with tab separated fields:
+ * <pre>
+ * targetClass  targetMethod  targetMethodDesc  fakeClass  fakeMethod  fakeMethodDesc  flags  behavior
+ * </pre>
+ * Class names are internal names, flags is a combination of the {@code FLAG_} constants.
+ *
+ * @author xtherk
+ */
+public final class EndpointIndex {
+
+    /**
+     * Location of the index in a module
+     */
+    public static final String LOCATION = "META-INF/bytehook/endpoints.idx";
+
+    /**
+     * Versioned, bumped whenever a field or a flag is added.
+     * The loaders scan the classes of a module whose index has another version.
+     */
+    public static final String HEADER = "# bytehook endpoint index v2";
+
+    public static final char SEPARATOR = '\t';
+
+    public static final int FIELD_COUNT = 8;
+
+    /**
+     * The first parameter of the fake method is the target instance
+     */
+    public static final int FLAG_REQUIRE_INSTANCE = 1;
+
+    /**
+     * The fake method calls the original method
+     */
+    public static final int FLAG_ORIGINAL = 1 << 1;
+
+    /**
+     * The fake method receives the value returned by the target method
+     */
+    public static final int FLAG_RETURN_VALUE = 1 << 2;
+
+    /**
+     * The fake method receives the exception thrown by the target method
+     */
+    public static final int FLAG_THROWN = 1 << 3;
+
+    /**
+     * The calls to the target method are replaced, see {@link io.github.xtherk.bytehook.HookMethod#replaceCall()}
+     */
+    public static final int FLAG_REPLACE_CALL = 1 << 4;
+
+    private EndpointIndex() {
+    }
+}
@@ -0,0 +1,383 @@
+package io.github.xtherk.bytehook.processor;
+
+import io.github.xtherk.bytehook.*;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Writes the {@link EndpointIndex} of a module at build time,
+ * so that the module loader does not have to scan every class of the module.
+ * <p>
+ * Descriptors are validated while compiling: a malformed {@link HookMethod#desc()} or a non static
+ * hook method is an error, a target method that can't be found on the compile classpath is a warning.
+ * <p>
+ * An incremental compilation only sees the recompiled classes: the lines of the previous index are kept
+ * for the hook classes that were not recompiled and still exist. The processor runs for every compilation,
+ * so that the lines of the hook classes that lost their annotation are dropped as well.
+ *
+ * @author xtherk
+ */
+@SupportedAnnotationTypes("*")
+public class EndpointIndexProcessor extends AbstractProcessor {
+
+    private static final char WILDCARD = '*';
+    private static final String ANY_DESCRIPTOR = HookMethod.ANY_DESCRIPTOR;
+
+    /**
+     * Sorted, the index content must not depend on the compilation order
+     */
+    private final Set<String> lines = new TreeSet<>();
+    /**
+     * Internal names of the types of this compilation, their lines of the previous index are outdated
+     */
+    private final Set<String> compiledTypes = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeIndex();
+            return false;
+        }
+        for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+            addCompiledType(type);
+        }
+        for (TypeElement type : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(HookClass.class))) {
+            processHookClass(type);
+        }
+        return false;
+    }
+
+    private void addCompiledType(TypeElement type) {
+        compiledTypes.add(internalName(type));
+        for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+            addCompiledType(nested);
+        }
+    }
+
+    private void processHookClass(TypeElement type) {
+        String targetClass = type.getAnnotation(HookClass.class).value().replace('.', '/');
+        String fakeClass = internalName(type);
+        boolean subtypes = targetClass.endsWith(HookClass.SUBTYPES);
+        if (subtypes && targetClass.indexOf(WILDCARD) >= 0) {
+            error(type, "The subtypes of a class pattern can't be hooked.");
+            return;
+        }
+        // Patterns and subtypes match classes that are not known at compile time
+        TypeElement targetType = subtypes || targetClass.indexOf(WILDCARD) >= 0 ? null : findType(targetClass);
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            HookMethod hookMethod = method.getAnnotation(HookMethod.class);
+            if (null == hookMethod) {
+                continue;
+            }
+            if (!method.getModifiers().contains(Modifier.STATIC)) {
+                error(method, "The endpoint must have static modifier.");
+                continue;
+            }
+            List<? extends VariableElement> parameters = method.getParameters();
+            boolean requireInstance = !parameters.isEmpty() && null != parameters.get(0).getAnnotation(TargetClass.class);
+            Behavior behavior = hookMethod.behavior();
+            int thrownIndex = indexOf(parameters, Thrown.class);
+            int returnValueIndex = indexOf(parameters, ReturnValue.class);
+            if (!checkAdvice(method, behavior, parameters, thrownIndex, returnValueIndex)) {
+                continue;
+            }
+            boolean passThrown = thrownIndex >= 0;
+            boolean passReturnValue = returnValueIndex >= 0;
+            int argumentsEnd = parameters.size() - (passThrown ? 1 : 0) - (passReturnValue ? 1 : 0);
+            String fakeDesc = descriptor(method, 0, parameters.size());
+            String targetDesc = hookMethod.desc();
+            if (targetDesc.isEmpty()) {
+                targetDesc = descriptor(method, requireInstance ? 1 : 0, argumentsEnd);
+                if (behavior != Behavior.SET) {
+                    // Advice does not tell the return type, only the arguments are matched
+                    targetDesc = targetDesc.substring(0, targetDesc.indexOf(')') + 1);
+                }
+            } else if (ANY_DESCRIPTOR.equals(targetDesc)) {
+                if (behavior != Behavior.TIMED) {
+                    error(method, "Only TIMED endpoints may match any descriptor.");
+                    continue;
+                }
+            } else if (!isMethodDescriptor(targetDesc)) {
+                error(method, "Malformed method descriptor " + targetDesc);
+                continue;
+            }
+            String fakeMethod = method.getSimpleName().toString();
+            String targetMethod = hookMethod.methodName().isEmpty() ? fakeMethod : hookMethod.methodName();
+            if (hookMethod.replaceCall() && (behavior != Behavior.SET || hookMethod.original() || subtypes
+                    || targetClass.indexOf(WILDCARD) >= 0 || targetMethod.indexOf(WILDCARD) >= 0)) {
+                error(method, "Only SET endpoints of a named class and method can replace calls, without original().");
+                continue;
+            }
+            if (null != targetType && targetMethod.indexOf(WILDCARD) < 0 && !ANY_DESCRIPTOR.equals(targetDesc)
+                    && !hasMethod(targetType, targetMethod, targetDesc)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        "The target method " + targetClass + "." + targetMethod + targetDesc + " does not exist", method);
+            }
+            int flags = (requireInstance ? EndpointIndex.FLAG_REQUIRE_INSTANCE : 0)
+                    | (hookMethod.original() ? EndpointIndex.FLAG_ORIGINAL : 0)
+                    | (passReturnValue ? EndpointIndex.FLAG_RETURN_VALUE : 0)
+                    | (passThrown ? EndpointIndex.FLAG_THROWN : 0)
+                    | (hookMethod.replaceCall() ? EndpointIndex.FLAG_REPLACE_CALL : 0);
+            lines.add(String.join(String.valueOf(EndpointIndex.SEPARATOR), targetClass, targetMethod, targetDesc,
+                    fakeClass, fakeMethod, fakeDesc, String.valueOf(flags), behavior.name()));
+        }
+    }
+
+    /**
+     * Checks the parameters marked by {@link ReturnValue} and {@link Thrown}.
+     *
+     * @return {@code true} if the method is a valid fake method of its behavior
+     */
+    private boolean checkAdvice(ExecutableElement method, Behavior behavior, List<? extends VariableElement> parameters,
+                                int thrownIndex, int returnValueIndex) {
+        if ((behavior == Behavior.INSERT_BEFORE || behavior == Behavior.TIMED)
+                && method.getReturnType().getKind() != TypeKind.VOID) {
+            error(method, "An " + behavior + " endpoint must return void.");
+            return false;
+        }
+        if (behavior != Behavior.INSERT_AFTER && (thrownIndex >= 0 || returnValueIndex >= 0)) {
+            error(method, "@ReturnValue and @Thrown are only supported by INSERT_AFTER endpoints.");
+            return false;
+        }
+        int last = parameters.size() - 1;
+        if (thrownIndex >= 0) {
+            TypeMirror throwable = processingEnv.getElementUtils().getTypeElement("java.lang.Throwable").asType();
+            if (thrownIndex != last || !processingEnv.getTypeUtils().isSameType(parameters.get(thrownIndex).asType(), throwable)) {
+                error(method, "@Thrown must mark the last parameter, of type Throwable.");
+                return false;
+            }
+            last--;
+        }
+        if (returnValueIndex >= 0 && returnValueIndex != last) {
+            error(method, "@ReturnValue must follow the arguments of the target method.");
+            return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(List<? extends VariableElement> parameters, Class<? extends java.lang.annotation.Annotation> annotation) {
+        for (int i = 0; i < parameters.size(); i++) {
+            if (null != parameters.get(i).getAnnotation(annotation)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void writeIndex() {
+        List<String> previous = readPreviousIndex();
+        if (null == previous) {
+            // Rewriting it from the recompiled classes only would drop the others
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "The outdated " + EndpointIndex.LOCATION
+                    + " is left in place, the module is scanned until it is rebuilt from scratch");
+            return;
+        }
+        for (String line : previous) {
+            String fakeClass = line.split(String.valueOf(EndpointIndex.SEPARATOR))[3];
+            // Recompiled hook classes were processed again, deleted ones are gone
+            if (!compiledTypes.contains(fakeClass) && null != findType(fakeClass)) {
+                lines.add(line);
+            }
+        }
+        if (lines.isEmpty() && previous.isEmpty()) {
+            return;
+        }
+        try {
+            FileObject resource = processingEnv.getFiler()
+                    .createResource(StandardLocation.CLASS_OUTPUT, "", EndpointIndex.LOCATION);
+            try (Writer writer = new OutputStreamWriter(resource.openOutputStream(), StandardCharsets.UTF_8)) {
+                writer.write(EndpointIndex.HEADER);
+                writer.write('\n');
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Failed to write " + EndpointIndex.LOCATION + ": " + e);
+        }
+    }
+
+    /**
+     * @return lines of the index written by a previous compilation into the class output, empty if there is none,
+     * {@code null} if it has another version
+     */
+    private List<String> readPreviousIndex() {
+        String content;
+        try {
+            content = processingEnv.getFiler()
+                    .getResource(StandardLocation.CLASS_OUTPUT, "", EndpointIndex.LOCATION)
+                    .getCharContent(true).toString();
+        } catch (IOException | IllegalArgumentException e) {
+            return Collections.emptyList();
+        }
+        String[] indexLines = content.split("\n");
+        if (!EndpointIndex.HEADER.equals(indexLines[0].trim())) {
+            return null;
+        }
+        List<String> previous = new ArrayList<>();
+        for (int i = 1; i < indexLines.length; i++) {
+            String line = indexLines[i].trim();
+            if (!line.isEmpty() && line.charAt(0) != '#') {
+                previous.add(line);
+            }
+        }
+        return previous;
+    }
+
+    private TypeElement findType(String internalName) {
+        // Nested classes are written with '$', the element utilities expect canonical names
+        String name = internalName.replace('/', '.');
+        TypeElement type = processingEnv.getElementUtils().getTypeElement(name);
+        return null != type ? type : processingEnv.getElementUtils().getTypeElement(name.replace('$', '.'));
+    }
+
+    private boolean hasMethod(TypeElement type, String name, String desc) {
+        List<ExecutableElement> candidates = "<init>".equals(name) ?
+                ElementFilter.constructorsIn(type.getEnclosedElements()) :
+                ElementFilter.methodsIn(type.getEnclosedElements());
+        for (ExecutableElement candidate : candidates) {
+            boolean sameName = "<init>".equals(name) || candidate.getSimpleName().contentEquals(name);
+            // Descriptors of advice end with the arguments
+            if (sameName && descriptor(candidate, 0, candidate.getParameters().size()).startsWith(desc)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String descriptor(ExecutableElement method, int from, int to) {
+        StringBuilder builder = new StringBuilder("(");
+        List<? extends VariableElement> parameters = method.getParameters();
+        for (int i = from; i < to; i++) {
+            appendDescriptor(builder, parameters.get(i).asType());
+        }
+        builder.append(')');
+        appendDescriptor(builder, method.getReturnType());
+        return builder.toString();
+    }
+
+    private void appendDescriptor(StringBuilder builder, TypeMirror type) {
+        TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+        switch (erased.getKind()) {
+            case BOOLEAN:
+                builder.append('Z');
+                break;
+            case BYTE:
+                builder.append('B');
+                break;
+            case CHAR:
+                builder.append('C');
+                break;
+            case SHORT:
+                builder.append('S');
+                break;
+            case INT:
+                builder.append('I');
+                break;
+            case LONG:
+                builder.append('J');
+                break;
+            case FLOAT:
+                builder.append('F');
+                break;
+            case DOUBLE:
+                builder.append('D');
+                break;
+            case VOID:
+                builder.append('V');
+                break;
+            case ARRAY:
+                builder.append('[');
+                appendDescriptor(builder, ((ArrayType) erased).getComponentType());
+                break;
+            case DECLARED:
+                builder.append('L').append(internalName((TypeElement) ((DeclaredType) erased).asElement())).append(';');
+                break;
+            default:
+                builder.append("Ljava/lang/Object;");
+                break;
+        }
+    }
+
+    private String internalName(TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName(type).toString().replace('.', '/');
+    }
+
+    /**
+     * @param desc descriptor to check
+     * @return {@code true} if the descriptor follows the method descriptor grammar of the JVM specification
+     */
+    static boolean isMethodDescriptor(String desc) {
+        if (desc.isEmpty() || desc.charAt(0) != '(')
+            return false;
+        int index = 1;
+        while (index < desc.length() && desc.charAt(index) != ')') {
+            index = skipFieldDescriptor(desc, index);
+            if (index < 0)
+                return false;
+        }
+        if (index >= desc.length())
+            return false;
+        index++;
+        if (index < desc.length() && desc.charAt(index) == 'V')
+            return index + 1 == desc.length();
+        return skipFieldDescriptor(desc, index) == desc.length();
+    }
+
+    private static int skipFieldDescriptor(String desc, int index) {
+        while (index < desc.length() && desc.charAt(index) == '[') {
+            index++;
+        }
+        if (index >= desc.length())
+            return -1;
+        switch (desc.charAt(index)) {
+            case 'Z':
+            case 'B':
+            case 'C':
+            case 'S':
+            case 'I':
+            case 'J':
+            case 'F':
+            case 'D':
+                return index + 1;
+            case 'L':
+                int end = desc.indexOf(';', index);
+                if (end <= index + 1)
+                    return -1;
+                for (int i = index + 1; i < end; i++) {
+                    char c = desc.charAt(i);
+                    if (c == '.' || c == '[' || c == '(' || c == ')')
+                        return -1;
+                }
+                return end + 1;
+            default:
+                return -1;
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,105 @@
+package io.github.xtherk.bytehook.processor;
+
+import io.github.xtherk.bytehook.HookClass;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @author xtherk
+ */
+public class EndpointIndexProcessorTests {
+
+    private static final String TARGET = "package demo;\n"
+            + "public class Target {\n"
+            + "    public String first() { return \"first\"; }\n"
+            + "    public String second() { return \"second\"; }\n"
+            + "}\n";
+    private static final String FIRST_HOOKS = "package demo;\n"
+            + "@io.github.xtherk.bytehook.HookClass(\"demo.Target\")\n"
+            + "public class FirstHooks {\n"
+            + "    @io.github.xtherk.bytehook.HookMethod\n"
+            + "    public static String %s(@io.github.xtherk.bytehook.TargetClass Target self) { return null; }\n"
+            + "}\n";
+    private static final String SECOND_HOOKS = "package demo;\n"
+            + "%s\n"
+            + "public class SecondHooks {\n"
+            + "    @io.github.xtherk.bytehook.HookMethod\n"
+            + "    public static String second(@io.github.xtherk.bytehook.TargetClass Target self) { return null; }\n"
+            + "}\n";
+    private static final String SECOND_HOOK_CLASS = "@io.github.xtherk.bytehook.HookClass(\"demo.Target\")";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testIncrementalCompilation() throws Exception {
+        Path sources = tempDir.resolve("src");
+        Path classes = Files.createDirectories(tempDir.resolve("classes"));
+        Path target = write(sources, "Target", TARGET);
+        Path first = write(sources, "FirstHooks", String.format(FIRST_HOOKS, "first"));
+        Path second = write(sources, "SecondHooks", String.format(SECOND_HOOKS, SECOND_HOOK_CLASS));
+        compile(classes, target, first, second);
+        Assertions.assertEquals(Arrays.asList("demo/FirstHooks.first", "demo/SecondHooks.second"), fakeMethods(classes));
+
+        // Only the changed hook class is recompiled, the other one stays indexed
+        first = write(sources, "FirstHooks", String.format(FIRST_HOOKS, "second"));
+        compile(classes, first);
+        Assertions.assertEquals(Arrays.asList("demo/FirstHooks.second", "demo/SecondHooks.second"), fakeMethods(classes));
+
+        // A hook class that lost its annotation is dropped, even without any hook class left to process
+        second = write(sources, "SecondHooks", String.format(SECOND_HOOKS, ""));
+        compile(classes, second);
+        Assertions.assertEquals(Arrays.asList("demo/FirstHooks.second"), fakeMethods(classes));
+
+        // So is a deleted one
+        Files.delete(classes.resolve("demo/FirstHooks.class"));
+        compile(classes, target);
+        Assertions.assertEquals(Arrays.asList(EndpointIndex.HEADER),
+                Files.readAllLines(classes.resolve(EndpointIndex.LOCATION), StandardCharsets.UTF_8));
+    }
+
+    private static Path write(Path sources, String className, String source) throws IOException {
+        Path file = sources.resolve("demo").resolve(className + ".java");
+        Files.createDirectories(file.getParent());
+        Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static void compile(Path classes, Path... sources) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        String sdk = Paths.get(HookClass.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+        List<String> arguments = new ArrayList<>(Arrays.asList("-d", classes.toString(),
+                "-classpath", classes + File.pathSeparator + sdk,
+                "-processor", EndpointIndexProcessor.class.getName()));
+        for (Path source : sources) {
+            arguments.add(source.toString());
+        }
+        Assertions.assertEquals(0, compiler.run(null, null, null, arguments.toArray(new String[0])));
+    }
+
+    /**
+     * @return fake methods of the index, as {@code fakeClass.fakeMethod}
+     */
+    private static List<String> fakeMethods(Path classes) throws IOException {
+        List<String> lines = Files.readAllLines(classes.resolve(EndpointIndex.LOCATION), StandardCharsets.UTF_8);
+        Assertions.assertEquals(EndpointIndex.HEADER, lines.get(0));
+        return lines.stream().skip(1)
+                .map(line -> line.split(String.valueOf(EndpointIndex.SEPARATOR)))
+                .map(fields -> fields[3] + "." + fields[4])
+                .collect(Collectors.toList());
+    }
+}